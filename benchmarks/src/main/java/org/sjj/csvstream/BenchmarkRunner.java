@@ -0,0 +1,34 @@
+package org.sjj.csvstream;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the gc profiler, and saves the results as JSON so
+ * that two runs (e.g. before and after a change) can be compared.
+ *
+ * E.g.
+ *    java -cp target/benchmarks.jar org.sjj.csvstream.BenchmarkRunner ParserBenchmark results.json
+ *
+ * Both arguments are optional: the first is a regular expression selecting
+ * the benchmarks (all of them by default), the second is the result file
+ * (jmh-result.json by default).
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : ".*")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(args.length > 1 ? args[1] : "jmh-result.json")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,102 @@
+package org.sjj.csvstream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares binding rows with a CsvBinder against filling the same objects
+ * by hand from CsvRow, and against splitting the rows without binding.
+ * bind should score close to byHand.
+ *
+ * E.g.
+ *    java -jar target/benchmarks.jar BindBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BindBenchmark {
+    // Constants
+    private static final int      ROWS = 20000;
+
+    // Private bits
+    private String                csv;
+
+    public static class Trade {
+        long id;
+        String symbol;
+        int quantity;
+        double price;
+        boolean settled;
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(20161018L);
+        StringBuilder sb = new StringBuilder("id,symbol,quantity,price,settled\n");
+        for (int i = 0; i < ROWS; i++) {
+            sb.append(i).append(",SYM").append(random.nextInt(500)).append(',').append(random.nextInt(10000))
+                    .append(',').append(random.nextInt(100000) / 100.0).append(',').append(random.nextBoolean())
+                    .append('\n');
+        }
+        csv = sb.toString();
+    }
+
+    private CsvParser parser() {
+        return new CsvParser(CsvConfig.DEFAULTS, new StringReader(csv));
+    }
+
+    @Benchmark
+    public long split() {
+        CsvParser parser = parser();
+        long fields = 0;
+        String[] row;
+        while ((row = parser.split()) != null) {
+            fields += row.length;
+        }
+        return fields;
+    }
+
+    @Benchmark
+    public long byHand() {
+        CsvParser parser = parser();
+        long sum = 0;
+        CsvRow row;
+        while ((row = parser.nextRow()) != null) {
+            Trade trade = new Trade();
+            trade.id = row.getLong(0);
+            trade.symbol = row.getString(1);
+            trade.quantity = row.getInt(2);
+            trade.price = row.getDouble(3);
+            trade.settled = row.getBoolean(4);
+            sum += trade.quantity;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long bind() {
+        CsvParser parser = parser();
+        CsvBinder<Trade> binder = CsvBinder.of(Trade.class, parser);
+        long sum = 0;
+        CsvRow row;
+        while ((row = parser.nextRow()) != null) {
+            sum += binder.bind(row).quantity;
+        }
+        return sum;
+    }
+}
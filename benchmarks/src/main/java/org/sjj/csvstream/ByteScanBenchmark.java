@@ -0,0 +1,134 @@
+package org.sjj.csvstream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing byte input with the word-at-a-time (SWAR) scan of
+ * ByteBufferIterator against the same bytes read one at a time, and the
+ * delimiter scan on its own.
+ *
+ * E.g.
+ *    java -jar target/benchmarks.jar ByteScanBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ByteScanBenchmark {
+    // Constants
+    private static final int      ROWS = 20000;
+
+    @Param({"8", "64"})
+    public int fieldLength;
+
+    // Private bits
+    private ByteBuffer            data;
+
+    /**
+     * Hides the ByteBufferIterator from the parser, so every byte takes the
+     * per-char path.
+     */
+    private static final class PlainInput implements ParserInput {
+        private final ByteBufferIterator bytes;
+
+        PlainInput(ByteBuffer buffer) {
+            this.bytes = new ByteBufferIterator(buffer);
+        }
+
+        @Override
+        public int nextInt() {
+            return bytes.nextInt();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return bytes.hasNext();
+        }
+
+        @Override
+        public int peekNext() {
+            return bytes.peekNext();
+        }
+
+        @Override
+        public boolean isByteInput() {
+            return true;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < fieldLength; i++) {
+            field.append((char) ('a' + i % 26));
+        }
+        StringBuilder sb = new StringBuilder("a,b,c,d,e\n");
+        for (int i = 0; i < ROWS; i++) {
+            sb.append(i).append(',').append(field).append(',')
+                    .append('"').append(field).append(", quoted\",")
+                    .append(field).append(',').append(i % 97).append('\n');
+        }
+        data = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long drain(CsvParser parser) {
+        long fields = 0;
+        CsvRow row;
+        while ((row = parser.nextRow()) != null) {
+            fields += row.size();
+        }
+        return fields;
+    }
+
+    @Benchmark
+    public long swarParse() {
+        return drain(new CsvParser(CsvConfig.DEFAULTS, new ByteBufferIterator(data.duplicate()), null));
+    }
+
+    @Benchmark
+    public long perByteParse() {
+        return drain(new CsvParser(CsvConfig.DEFAULTS, new PlainInput(data.duplicate()), null));
+    }
+
+    @Benchmark
+    public long swarScan() {
+        long delimiters = 0;
+        long comma = Swar.pattern(',');
+        long lf = Swar.pattern('\n');
+        int limit = data.limit();
+        for (int i = Swar.indexOfAny(data, 0, limit, comma, lf, lf); i < limit;
+             i = Swar.indexOfAny(data, i + 1, limit, comma, lf, lf)) {
+            delimiters++;
+        }
+        return delimiters;
+    }
+
+    @Benchmark
+    public long perByteScan() {
+        long delimiters = 0;
+        int limit = data.limit();
+        for (int i = 0; i < limit; i++) {
+            byte b = data.get(i);
+            if (b == ',' || b == '\n') {
+                delimiters++;
+            }
+        }
+        return delimiters;
+    }
+}
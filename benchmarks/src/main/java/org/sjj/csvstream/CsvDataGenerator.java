@@ -0,0 +1,152 @@
+package org.sjj.csvstream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic CSV data for the benchmarks.  The data only depends on
+ * the settings and the seed, so every run (and every machine) benchmarks the
+ * same bytes and results can be compared.
+ *
+ * The settings vary the shape of the data: the number of columns, the
+ * average field length, the fraction of fields that need quotes (because
+ * they hold a delimiter or a quote), the fraction of quoted fields that also
+ * hold a line break, the fraction of comment lines and the line ending.
+ *
+ * E.g.
+ *    String csv = CsvDataGenerator.profile("quoted").csv();
+ */
+public final class CsvDataGenerator {
+    // Constants
+    public static final String[]  PROFILES = { "plain", "quoted", "multiline", "wide", "long", "commented" };
+    private static final long     SEED = 20161018L;
+    private static final String   LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ";
+
+    // Private bits
+    private final int             rows;
+    private final int             columns;
+    private final int             fieldLength;
+    private final double          quoteRate;
+    private final double          newlineRate;
+    private final double          commentRate;
+    private final String          lineEnding;
+
+    public CsvDataGenerator(int rows, int columns, int fieldLength, double quoteRate, double newlineRate,
+                            double commentRate, String lineEnding) {
+        this.rows = rows;
+        this.columns = columns;
+        this.fieldLength = fieldLength;
+        this.quoteRate = quoteRate;
+        this.newlineRate = newlineRate;
+        this.commentRate = commentRate;
+        this.lineEnding = lineEnding;
+    }
+
+    /**
+     * Returns one of the named data shapes in PROFILES, each about 1-2MB.
+     */
+    public static CsvDataGenerator profile(String name) {
+        switch (name) {
+            case "plain":
+                return new CsvDataGenerator(20000, 8, 8, 0, 0, 0, "\n");
+            case "quoted":
+                return new CsvDataGenerator(20000, 8, 8, 0.5, 0, 0, "\r\n");
+            case "multiline":
+                return new CsvDataGenerator(20000, 8, 8, 0.3, 0.3, 0, "\n");
+            case "wide":
+                return new CsvDataGenerator(2500, 64, 8, 0.05, 0, 0, "\n");
+            case "long":
+                return new CsvDataGenerator(2000, 8, 120, 0.1, 0, 0, "\n");
+            case "commented":
+                return new CsvDataGenerator(20000, 8, 8, 0.1, 0, 0.1, "\r");
+            default:
+                throw new IllegalArgumentException("Unknown data profile " + name);
+        }
+    }
+
+    /**
+     * Returns the header and the rows of fields, unquoted.
+     */
+    public String[][] rows() {
+        Random random = new Random(SEED);
+        String[][] data = new String[rows + 1][];
+        data[0] = new String[columns];
+        for (int c = 0; c < columns; c++) {
+            data[0][c] = "column" + c;
+        }
+        for (int r = 1; r <= rows; r++) {
+            String[] row = new String[columns];
+            for (int c = 0; c < columns; c++) {
+                row[c] = field(random, c);
+            }
+            data[r] = row;
+        }
+        return data;
+    }
+
+    private String field(Random random, int column) {
+        if (column % 4 == 0) {
+            return Integer.toString(random.nextInt(1000000));
+        }
+        int length = Math.max(1, fieldLength / 2 + random.nextInt(fieldLength + 1));
+        StringBuilder sb = new StringBuilder(length + 4);
+        for (int i = 0; i < length; i++) {
+            sb.append(LETTERS.charAt(random.nextInt(LETTERS.length() - 1)));
+        }
+        if (random.nextDouble() < quoteRate) {
+            int at = random.nextInt(length);
+            sb.insert(at, random.nextBoolean() ? "," : "\"");
+            if (random.nextDouble() < newlineRate) {
+                sb.insert(random.nextInt(sb.length()), "\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the data as CSV text, with comment lines mixed in.
+     */
+    public String csv() {
+        Random random = new Random(SEED + 1);
+        StringBuilder sb = new StringBuilder();
+        for (String[] row : rows()) {
+            if (random.nextDouble() < commentRate) {
+                sb.append("# a comment line").append(lineEnding);
+            }
+            appendRow(sb, row);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the rows as separate lines, with line breaks inside fields
+     * replaced by spaces, for splitting one line at a time.
+     */
+    public List<String> lines() {
+        List<String> lines = new ArrayList<>(rows);
+        StringBuilder sb = new StringBuilder();
+        for (String[] row : rows()) {
+            sb.setLength(0);
+            appendRow(sb, row);
+            sb.setLength(sb.length() - lineEnding.length());
+            lines.add(sb.toString().replace('\n', ' '));
+        }
+        return lines;
+    }
+
+    private void appendRow(StringBuilder sb, String[] row) {
+        for (int c = 0; c < row.length; c++) {
+            if (c > 0) {
+                sb.append(',');
+            }
+            String field = row[c];
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0) {
+                sb.append('"').append(field.replace("\"", "\"\"")).append('"');
+            } else {
+                sb.append(field);
+            }
+        }
+        sb.append(lineEnding);
+    }
+}
@@ -0,0 +1,196 @@
+package org.sjj.csvstream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats the rows of the CsvDataGenerator profiles, one String per row with
+ * CsvFormatter, streamed with CsvWriter, and as UTF-8 bytes both with a
+ * CsvWriter on an OutputStream and with CsvChannelWriter, to counting sinks
+ * and to a FileChannel on /dev/null.  Each invocation formats the whole
+ * data set.
+ *
+ * E.g.
+ *    java -jar target/benchmarks.jar FormatterBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormatterBenchmark {
+    @Param({"plain", "quoted", "multiline", "wide", "long"})
+    public String profile;
+
+    // Private bits
+    private String[][]            rows;
+
+    /**
+     * Counts the chars written, and drops them.
+     */
+    private static final class CountingWriter extends Writer {
+        long count;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Counts the bytes written, and drops them.
+     */
+    private static final class CountingStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * Counts the bytes written, and drops them.
+     */
+    private static final class CountingChannel implements GatheringByteChannel {
+        long count;
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                written += srcs[i].remaining();
+                srcs[i].position(srcs[i].limit());
+            }
+            count += written;
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return (int) write(new ByteBuffer[]{ src }, 0, 1);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Setup
+    public void setup() {
+        rows = CsvDataGenerator.profile(profile).rows();
+    }
+
+    @Benchmark
+    public long format() {
+        CsvFormatter formatter = new CsvFormatter(CsvConfig.DEFAULTS);
+        long chars = 0;
+        for (String[] row : rows) {
+            chars += formatter.format(row).length();
+        }
+        return chars;
+    }
+
+    @Benchmark
+    public long writer() {
+        CountingWriter out = new CountingWriter();
+        CsvWriter writer = new CsvWriter(out, CsvConfig.DEFAULTS);
+        for (String[] row : rows) {
+            writer.writeRow(row);
+        }
+        writer.flush();
+        return out.count;
+    }
+
+    @Benchmark
+    public long writerUtf8() {
+        CountingStream out = new CountingStream();
+        CsvWriter writer = new CsvWriter(out, CsvConfig.DEFAULTS, StandardCharsets.UTF_8);
+        for (String[] row : rows) {
+            writer.writeRow(row);
+        }
+        writer.flush();
+        return out.count;
+    }
+
+    @Benchmark
+    public long channelWriter() {
+        CountingChannel out = new CountingChannel();
+        CsvChannelWriter writer = new CsvChannelWriter(out, CsvConfig.DEFAULTS);
+        for (String[] row : rows) {
+            writer.writeRow(row);
+        }
+        writer.close();
+        return out.count;
+    }
+
+    @Benchmark
+    public long writerFile() throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get("/dev/null"), StandardOpenOption.WRITE);
+             CsvWriter writer = new CsvWriter(Channels.newOutputStream(channel), CsvConfig.DEFAULTS,
+                                              StandardCharsets.UTF_8)) {
+            for (String[] row : rows) {
+                writer.writeRow(row);
+            }
+            writer.flush();
+            return channel.position();
+        }
+    }
+
+    @Benchmark
+    public long channelWriterFile() throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get("/dev/null"), StandardOpenOption.WRITE);
+        try (CsvChannelWriter writer = new CsvChannelWriter(channel, CsvConfig.DEFAULTS)) {
+            for (String[] row : rows) {
+                writer.writeRow(row);
+            }
+            writer.flush();
+            return writer.getBytesWritten();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.sjj.csvstream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses the same data with metrics off and on.  With metrics off the parser
+ * only pays for a null check per row, so metricsOff should score the same as
+ * the parser did before metrics existed; metricsOn shows the cost of counting.
+ *
+ * E.g.
+ *    java -jar target/benchmarks.jar MetricsBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+    @Param({"plain", "quoted"})
+    public String profile;
+
+    @Param({"reader", "bytes"})
+    public String input;
+
+    // Private bits
+    private String                csv;
+    private ByteBuffer            bytes;
+
+    @Setup
+    public void setup() {
+        csv = CsvDataGenerator.profile(profile).csv();
+        bytes = ByteBuffer.wrap(csv.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private CsvParser parser() {
+        return "bytes".equals(input)
+                ? new CsvParser(CsvConfig.DEFAULTS, bytes)
+                : new CsvParser(CsvConfig.DEFAULTS, new StringReader(csv));
+    }
+
+    private static long drain(CsvParser parser) {
+        long fields = 0;
+        CsvRow row;
+        while ((row = parser.nextRow()) != null) {
+            fields += row.size();
+        }
+        return fields;
+    }
+
+    @Benchmark
+    public long metricsOff() {
+        return drain(parser());
+    }
+
+    @Benchmark
+    public long metricsOn() {
+        CsvParser parser = parser();
+        parser.setMetrics(new CsvMetrics());
+        return drain(parser) + parser.getMetrics().getPublished().getRows();
+    }
+}
@@ -0,0 +1,108 @@
+package org.sjj.csvstream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses each of the CsvDataGenerator profiles with the different parser
+ * entry points.  Each invocation parses the whole data set, so the score is
+ * data sets per second; run with -prof gc for the allocation rate.
+ *
+ * E.g.
+ *    java -jar target/benchmarks.jar ParserBenchmark -p profile=quoted -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"plain", "quoted", "multiline", "wide", "long", "commented"})
+    public String profile;
+
+    // Private bits
+    private String                csv;
+    private ByteBuffer            bytes;
+    private List<String>          lines;
+
+    @Setup
+    public void setup() {
+        CsvDataGenerator generator = CsvDataGenerator.profile(profile);
+        csv = generator.csv();
+        bytes = ByteBuffer.wrap(csv.getBytes(StandardCharsets.UTF_8));
+        lines = generator.lines();
+    }
+
+    @Benchmark
+    public long split() {
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS, new StringReader(csv));
+        long fields = 0;
+        String[] row;
+        while ((row = parser.split()) != null) {
+            fields += row.length;
+        }
+        return fields;
+    }
+
+    @Benchmark
+    public long splitBytes() {
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS, bytes);
+        long fields = 0;
+        String[] row;
+        while ((row = parser.split()) != null) {
+            fields += row.length;
+        }
+        return fields;
+    }
+
+    @Benchmark
+    public long splitLines() {
+        return new CsvParser(CsvConfig.DEFAULTS, new StringReader(csv)).splitLines()
+                .mapToLong(row -> row.length)
+                .sum();
+    }
+
+    @Benchmark
+    public long mappify() {
+        return new CsvParser(CsvConfig.DEFAULTS, new StringReader(csv)).mappify()
+                .map((Map<String, String> row) -> row.get("column1"))
+                .mapToLong(String::length)
+                .sum();
+    }
+
+    @Benchmark
+    public long staticSplit() {
+        long fields = 0;
+        for (String line : lines) {
+            fields += CsvParser.split(line).length;
+        }
+        return fields;
+    }
+
+    @Benchmark
+    public long lineSplitter() {
+        LineSplitter splitter = new LineSplitter();
+        long fields = 0;
+        for (String line : lines) {
+            fields += splitter.split(line).length;
+        }
+        return fields;
+    }
+}
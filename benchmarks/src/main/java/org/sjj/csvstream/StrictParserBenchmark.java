@@ -0,0 +1,79 @@
+package org.sjj.csvstream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses the same data with the default (lenient) config and with a config
+ * that states the line ending and rules out what the data doesn't have:
+ * the plain profile has LF line endings and no quotes or comments, the
+ * quoted profile has CRLF line endings and no comments.  Rows are read
+ * with nextRow(), so that the parse loop rather than making Strings is
+ * measured.
+ *
+ * E.g.
+ *    java -jar target/benchmarks.jar StrictParserBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StrictParserBenchmark {
+    @Param({"plain", "quoted"})
+    public String profile;
+
+    @Param({"lenient", "strict"})
+    public String mode;
+
+    // Private bits
+    private String                csv;
+    private ByteBuffer            bytes;
+    private CsvConfig             config;
+
+    @Setup
+    public void setup() {
+        csv = CsvDataGenerator.profile(profile).csv();
+        bytes = ByteBuffer.wrap(csv.getBytes(StandardCharsets.UTF_8));
+        config = CsvConfig.DEFAULTS;
+        if ("strict".equals(mode)) {
+            config = "plain".equals(profile)
+                    ? config.withNewLineType(NewLineType.LF).withQuotesEnabled(false).withCommentsEnabled(false)
+                    : config.withNewLineType(NewLineType.CRLF).withCommentsEnabled(false);
+        }
+    }
+
+    private static long drain(CsvParser parser) {
+        long fields = 0;
+        CsvRow row;
+        while ((row = parser.nextRow()) != null) {
+            fields += row.size();
+        }
+        return fields;
+    }
+
+    @Benchmark
+    public long nextRow() {
+        return drain(new CsvParser(config, new StringReader(csv)));
+    }
+
+    @Benchmark
+    public long nextRowBytes() {
+        return drain(new CsvParser(config, bytes));
+    }
+}
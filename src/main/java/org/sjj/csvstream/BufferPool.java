@@ -0,0 +1,102 @@
+package org.sjj.csvstream;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A thread-safe pool of char buffers, shared by parsers so that opening many
+ * small files doesn't allocate (and throw away) a new read buffer and row
+ * buffer for each one.  A parser borrows its buffers when it is created and
+ * returns them when it is closed.
+ *
+ * The pool is striped: each thread picks a stripe by its id, and a stripe is
+ * a small array of slots that are taken and filled with atomic swaps, so
+ * threads on different stripes never touch the same slots and nobody locks.
+ * When a thread's stripe is empty it tries the others before allocating;
+ * when its stripe is full a returned buffer is simply dropped.
+ *
+ * E.g.
+ *    BufferPool pool = new BufferPool();
+ *    CsvConfig config = CsvConfig.DEFAULTS.withBufferPool(pool);
+ *    for (Path file : files) {
+ *        try (CsvParser parser = new CsvParser(config, Files.newBufferedReader(file))) {
+ *            ...
+ *        }
+ *    }
+ */
+public final class BufferPool {
+    // Constants
+    public static final int       DEFAULT_BUFFERS_PER_STRIPE = 8;
+
+    // Private bits
+    private final AtomicReferenceArray<char[]>[] stripes;
+    private final int             mask;
+
+    public BufferPool() {
+        this(DEFAULT_BUFFERS_PER_STRIPE);
+    }
+
+    /**
+     * @param buffersPerStripe the most buffers each stripe keeps
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(int buffersPerStripe) {
+        if (buffersPerStripe <= 0) {
+            throw new IllegalArgumentException("Invalid buffers per stripe " + buffersPerStripe);
+        }
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        this.stripes = new AtomicReferenceArray[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new AtomicReferenceArray<>(buffersPerStripe);
+        }
+        this.mask = count - 1;
+    }
+
+    private int home() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & mask;
+    }
+
+    /**
+     * Returns a buffer of at least size chars, from the pool if it has one.
+     */
+    public char[] borrow(int size) {
+        int home = home();
+        for (int s = 0; s <= mask; s++) {
+            AtomicReferenceArray<char[]> stripe = stripes[(home + s) & mask];
+            for (int i = 0; i < stripe.length(); i++) {
+                char[] buffer = stripe.get(i);
+                if (buffer != null && buffer.length >= size && stripe.compareAndSet(i, buffer, null)) {
+                    return buffer;
+                }
+            }
+        }
+        return new char[size];
+    }
+
+    /**
+     * Gives a buffer back to the pool.  It must not be used afterwards.
+     */
+    public void release(char[] buffer) {
+        AtomicReferenceArray<char[]> stripe = stripes[home()];
+        for (int i = 0; i < stripe.length(); i++) {
+            if (stripe.get(i) == null && stripe.compareAndSet(i, null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of buffers waiting in the pool.
+     */
+    public int size() {
+        int size = 0;
+        for (AtomicReferenceArray<char[]> stripe : stripes) {
+            for (int i = 0; i < stripe.length(); i++) {
+                if (stripe.get(i) != null) {
+                    size++;
+                }
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,188 @@
+package org.sjj.csvstream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Iterates over the raw bytes of one or more ByteBuffers, one after the other,
+ * without decoding them.  Paired with CsvParser this skips the Reader and the
+ * char[] copy entirely; the parser only decodes the UTF-8 bytes of a field
+ * when the field actually contains non-ASCII bytes.
+ *
+ * A file larger than 2GB cannot be mapped into a single MappedByteBuffer, so
+ * map() splits it into several consecutive windows.
+ *
+ * The buffers can also be pulled one at a time from an Iterator, e.g. as
+ * blocks of a compressed file are decompressed (see GzipInput).  The next
+ * buffer is only asked for once the current one has been used up, so the
+ * source may reuse a buffer once it has handed out the one after it.
+ */
+class ByteBufferIterator implements ParserInput {
+    // Constants
+    static final long            MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    // Private bits that keep the state of the iterator
+    private final Iterator<ByteBuffer> source;
+    private ByteBuffer           buffer = EMPTY;
+    private int                  bufferStart;
+    private long                 consumed;
+    private CsvMetrics           metrics;
+
+    ByteBufferIterator(ByteBuffer... buffers) {
+        this(Arrays.asList(buffers).iterator());
+    }
+
+    ByteBufferIterator(Iterator<ByteBuffer> source) {
+        this.source = source;
+        if (source.hasNext()) {
+            this.buffer = source.next();
+            this.bufferStart = buffer.position();
+        }
+    }
+
+    /**
+     * Maps the byte range [start, end) of a file as read-only buffers.  The
+     * mappings stay valid after the channel is closed.
+     */
+    static ByteBuffer[] map(FileChannel channel, long start, long end) throws IOException {
+        int count = (int) ((end - start + MAX_WINDOW_SIZE - 1) / MAX_WINDOW_SIZE);
+        ByteBuffer[] windows = new ByteBuffer[count];
+        long pos = start;
+        for (int i = 0; i < count; i++) {
+            long size = Math.min(MAX_WINDOW_SIZE, end - pos);
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+            pos += size;
+        }
+        return windows;
+    }
+
+    static ByteBuffer[] map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return map(channel, 0, channel.size());
+        }
+    }
+
+    private boolean advance() {
+        if (metrics != null) {
+            long start = System.nanoTime();
+            ByteBuffer previous = buffer;
+            boolean more = nextBuffer();
+            if (buffer != previous) {
+                // not at the end of the input, where every call would count again
+                metrics.refill(0, System.nanoTime() - start);
+            }
+            return more;
+        }
+        return nextBuffer();
+    }
+
+    private boolean nextBuffer() {
+        while (!buffer.hasRemaining()) {
+            // before asking the source, which may recycle the buffer
+            consumed += buffer.position() - bufferStart;
+            bufferStart = buffer.position();
+            if (!source.hasNext()) {
+                return false;
+            }
+            buffer = source.next();
+            bufferStart = buffer.position();
+        }
+        return true;
+    }
+
+    @Override
+    public void setMetrics(CsvMetrics metrics) {
+        this.metrics = metrics;
+        if (metrics != null) {
+            metrics.inputPosition = this::position;
+        }
+    }
+
+    /**
+     * Returns the number of bytes consumed so far, across all of the buffers.
+     */
+    long position() {
+        return consumed + buffer.position() - bufferStart;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return buffer.hasRemaining() || advance();
+    }
+
+    @Override
+    public int nextInt() {
+        if (!buffer.hasRemaining() && !advance()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int peekNext() {
+        if (!buffer.hasRemaining() && !advance()) {
+            return -1;
+        }
+        return buffer.get(buffer.position()) & 0xff;
+    }
+
+    /**
+     * Copies bytes from the current buffer to the end of the row, up to (but
+     * not including) the first byte matching one of the patterns, or the end
+     * of the current buffer.  The stop bytes are found with Swar.indexOfAny(),
+     * so runs of plain bytes are not examined one at a time.
+     *
+     * @return the bitwise or of all of the copied bytes, to detect non-ASCII
+     */
+    int copyRun(CsvRow row, long p1, long p2, long p3) {
+        int from = buffer.position();
+        int to = Swar.indexOfAny(buffer, from, buffer.limit(), p1, p2, p3);
+        int n = to - from;
+        if (n == 0) {
+            return 0;
+        }
+        row.ensureCapacity(n);
+        char[] dst = row.buf;
+        int length = row.length;
+        int bits = 0;
+        for (int i = 0; i < n; i++) {
+            int b = buffer.get(from + i) & 0xff;
+            dst[length + i] = (char) b;
+            bits |= b;
+        }
+        row.length = length + n;
+        buffer.position(to);
+        return bits;
+    }
+
+    /**
+     * Like copyRun(), but only moves past the bytes without copying them.
+     */
+    void skipRun(long p1, long p2, long p3) {
+        int from = buffer.position();
+        buffer.position(Swar.indexOfAny(buffer, from, buffer.limit(), p1, p2, p3));
+    }
+
+    /**
+     * Closes the source of the buffers, if it needs closing (e.g. GzipInput).
+     */
+    @Override
+    public void close() throws IOException {
+        if (source instanceof Closeable) {
+            ((Closeable) source).close();
+        }
+    }
+
+    @Override
+    public boolean isByteInput() {
+        return true;
+    }
+}
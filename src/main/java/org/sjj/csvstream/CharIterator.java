@@ -1,40 +1,163 @@
 package org.sjj.csvstream;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.Reader;
-import java.util.PrimitiveIterator;
+import java.io.UncheckedIOException;
 
-public class CharIterator implements PrimitiveIterator.OfInt {
+/**
+ * Iterates over the chars of a Reader, reading it a chunk at a time.
+ *
+ * With a chunk count of 2 or more the chunks are read ahead on a background
+ * thread, so that a slow Reader (e.g. a file on a network volume) is read
+ * while the parser works through the chunk before.  An IOException from the
+ * Reader is thrown from nextInt() as an UncheckedIOException, in both modes.
+ *
+ * In synchronous mode the chunk can be borrowed from a BufferPool, and is
+ * given back on close().  reset() starts over on another Reader, keeping the
+ * chunk.
+ *
+ * E.g.
+ *    new CharIterator(reader, 64 * 1024, 2)   // double buffered
+ */
+public class CharIterator implements ParserInput, Closeable {
     // Constants
-    private static final int DEFAULT_CHUNK_SIZE = 8192;
+    static final int DEFAULT_CHUNK_SIZE = 8192;
+    private static final char[] CLOSED = new char[1];
+
+    // Private bits
+    private final int        chunkSize;
+    private final int        chunkCount;
+    private final BufferPool pool;
 
     // Private bits that keep the state of the iterator
     private Reader     reader;
+    private ReadAhead  readAhead;
     private char[]     chunk;
     private int        position = 0;
     private int        chunkLength;
     private int        prevInt = -1;
+    private UncheckedIOException failure;   // thrown by the nextInt() after the last good char
+    private CsvMetrics metrics;
 
     public CharIterator(Reader reader) {
+        this(reader, DEFAULT_CHUNK_SIZE, 1);
+    }
+
+    /**
+     * @param chunkSize the number of chars read at a time
+     * @param chunkCount 1 to read synchronously, or the number of chunks to
+     *                   cycle through when reading ahead on a background thread
+     */
+    public CharIterator(Reader reader, int chunkSize, int chunkCount) {
+        this(reader, chunkSize, chunkCount, null);
+    }
+
+    CharIterator(Reader reader, int chunkSize, int chunkCount, BufferPool pool) {
+        if (chunkSize <= 0 || chunkCount <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size " + chunkSize + " or count " + chunkCount);
+        }
+        this.chunkSize = chunkSize;
+        this.chunkCount = chunkCount;
+        this.pool = pool;
+        start(reader);
+    }
+
+    private void start(Reader reader) {
         this.reader = reader;
-        this.chunk = new char[DEFAULT_CHUNK_SIZE];
+        this.failure = null;
+        this.prevInt = -1;
+        if (chunkCount == 1) {
+            if (chunk == null || chunk == CLOSED) {
+                this.chunk = pool != null ? pool.borrow(chunkSize) : new char[chunkSize];
+            }
+        } else {
+            this.readAhead = new ReadAhead(reader, chunkSize, chunkCount);
+            this.readAhead.start();
+        }
         readNextChunk(); // initialize the first chunk.
     }
 
+    /**
+     * Closes the current Reader and starts reading from another one.
+     */
+    void reset(Reader reader) throws IOException {
+        closeInput();
+        start(reader);
+    }
+
+    @Override
+    public void setMetrics(CsvMetrics metrics) {
+        this.metrics = metrics;
+        if (metrics != null && chunkLength > 0) {
+            metrics.inputChars += chunkLength - position;
+        }
+    }
+
     private void readNextChunk() {
+        if (metrics == null) {
+            fillChunk();
+        } else {
+            long start = System.nanoTime();
+            fillChunk();
+            metrics.refill(chunkLength, System.nanoTime() - start);
+        }
+    }
+
+    private void fillChunk() {
         position = 0;
+        chunkLength = -1;    // stays at the end if the read fails
+        if (readAhead != null) {
+            try {
+                chunkLength = readAhead.next();
+            } catch (UncheckedIOException e) {
+                failure = e;
+            }
+            chunk = readAhead.buffer();
+            return;
+        }
         try {
-            chunkLength = reader.read(chunk);
+            do {
+                chunkLength = reader.read(chunk);
+            } while (chunkLength == 0);
         } catch (IOException e) {
-            // TODO cleanup this exception
-            e.printStackTrace();
+            failure = new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stops any read-ahead and closes the Reader.  A pooled chunk goes back
+     * to the pool.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            closeInput();
+        } finally {
+            if (pool != null && chunkCount == 1 && chunk != null && chunk != CLOSED) {
+                pool.release(chunk);
+            }
+            chunk = CLOSED;
+            readAhead = null;
+            position = 0;
+            chunkLength = -1;
+        }
+    }
+
+    private void closeInput() throws IOException {
+        if (readAhead != null) {
+            readAhead.close();
+            readAhead = null;
+        } else {
+            reader.close();
         }
     }
 
     @Override
     public boolean hasNext() {
         if (chunkLength == -1) {
-            return false;
+            // let nextInt() throw the failure
+            return failure != null;
         }
         return true;
     }
@@ -44,6 +167,11 @@ public class CharIterator implements PrimitiveIterator.OfInt {
         prevInt = chunk[position];
 
         if (position == 0 && chunkLength == -1) {
+            if (failure != null) {
+                UncheckedIOException e = failure;
+                failure = null;
+                throw e;
+            }
             return -1;
         }
         int ret_val = chunk[position++];
@@ -58,11 +186,13 @@ public class CharIterator implements PrimitiveIterator.OfInt {
         return prevInt;
     }
 
+    @Override
     public int peekNext() {
-        int ret_val = nextInt();
-        if (position > 0) {
-            position--;
+        // nextInt() always refills the chunk once it is used up, so the next
+        // char (if any) is at the current position.
+        if (chunkLength == -1) {
+            return -1;
         }
-        return ret_val;
+        return chunk[position];
     }
 }
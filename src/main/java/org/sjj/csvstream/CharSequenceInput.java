@@ -0,0 +1,33 @@
+package org.sjj.csvstream;
+
+/**
+ * Iterates over the chars of a CharSequence, and can be pointed at another
+ * one, so one parser can be reused line after line (see LineSplitter).
+ */
+final class CharSequenceInput implements ParserInput {
+    // Private bits - Mutable state
+    private CharSequence          chars = "";
+    private int                   position;
+    private int                   length;
+
+    void reset(CharSequence chars) {
+        this.chars = chars;
+        this.position = 0;
+        this.length = chars.length();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < length;
+    }
+
+    @Override
+    public int nextInt() {
+        return position < length ? chars.charAt(position++) : -1;
+    }
+
+    @Override
+    public int peekNext() {
+        return position < length ? chars.charAt(position) : -1;
+    }
+}
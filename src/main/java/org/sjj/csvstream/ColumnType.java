@@ -0,0 +1,15 @@
+package org.sjj.csvstream;
+
+/**
+ * The type of a column in a RecordBatch, which decides how its values are stored.
+ */
+public enum ColumnType {
+    /** 64 bit integers, stored in a long[]. */
+    LONG,
+    /** Floating point numbers, stored in a double[]. */
+    DOUBLE,
+    /** Strings, packed into one char[] with an offset per row. */
+    STRING,
+    /** Strings with few distinct values, stored as an int code per row plus a dictionary. */
+    DICTIONARY
+}
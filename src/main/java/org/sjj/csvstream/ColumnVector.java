@@ -0,0 +1,206 @@
+package org.sjj.csvstream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The storage of one column of a RecordBatch.  Only the arrays for the
+ * column's type are allocated, and they are reused from batch to batch.
+ */
+final class ColumnVector {
+    // Constants
+    private static final int      INITIAL_CHARS_PER_ROW = 16;
+
+    // Package bits
+    final ColumnType              type;
+    long[]                        longs;
+    double[]                      doubles;
+    int[]                         codes;
+    char[]                        chars;
+    int[]                         offsets;
+    long[]                        nulls;
+    int                           size;
+
+    // Private bits - the dictionary is shared by all batches of a reader, so codes stay stable
+    private final Dictionary      dictionary;
+
+    ColumnVector(ColumnType type, int capacity, Dictionary dictionary) {
+        this.type = type;
+        this.nulls = new long[(capacity + 63) >>> 6];
+        switch (type) {
+            case LONG:
+                longs = new long[capacity];
+                break;
+            case DOUBLE:
+                doubles = new double[capacity];
+                break;
+            case STRING:
+                chars = new char[capacity * INITIAL_CHARS_PER_ROW];
+                offsets = new int[capacity + 1];
+                break;
+            case DICTIONARY:
+                codes = new int[capacity];
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown column type " + type);
+        }
+        this.dictionary = dictionary;
+    }
+
+    void clear() {
+        size = 0;
+        Arrays.fill(nulls, 0L);
+    }
+
+    boolean isNull(int row) {
+        return (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    void addNull() {
+        nulls[size >>> 6] |= 1L << size;
+        switch (type) {
+            case LONG:
+                longs[size] = 0;
+                break;
+            case DOUBLE:
+                doubles[size] = 0;
+                break;
+            case STRING:
+                offsets[size + 1] = offsets[size];
+                break;
+            default:
+                codes[size] = -1;
+                break;
+        }
+        size++;
+    }
+
+    /**
+     * Adds a value from a range of a char[], storing a null if it is empty
+     * or cannot be parsed as the column's type.
+     */
+    void add(char[] buf, int offset, int length) {
+        if (length == 0) {
+            addNull();
+            return;
+        }
+        try {
+            switch (type) {
+                case LONG:
+                    longs[size] = FieldParsers.parseLong(buf, offset, length);
+                    break;
+                case DOUBLE:
+                    doubles[size] = FieldParsers.parseDouble(buf, offset, length);
+                    break;
+                case STRING:
+                    int start = offsets[size];
+                    if (start + length > chars.length) {
+                        char[] bigger = new char[Math.max(chars.length * 2, start + length)];
+                        System.arraycopy(chars, 0, bigger, 0, start);
+                        chars = bigger;
+                    }
+                    System.arraycopy(buf, offset, chars, start, length);
+                    offsets[size + 1] = start + length;
+                    break;
+                default:
+                    codes[size] = dictionary.code(buf, offset, length);
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            addNull();
+            return;
+        }
+        size++;
+    }
+
+    String getString(int row) {
+        if (isNull(row)) {
+            return null;
+        }
+        if (type == ColumnType.DICTIONARY) {
+            return dictionary.get(codes[row]);
+        }
+        return new String(chars, offsets[row], offsets[row + 1] - offsets[row]);
+    }
+
+    Dictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Maps distinct strings to dense int codes.  Lookups hash the chars in
+     * place, so no String is created for a value that is already known.
+     */
+    static final class Dictionary {
+        private final List<String> values = new ArrayList<>();
+        private int[]              table = new int[64];   // code + 1, 0 is empty
+
+        int size() {
+            return values.size();
+        }
+
+        String get(int code) {
+            return values.get(code);
+        }
+
+        int code(char[] buf, int offset, int length) {
+            int hash = hash(buf, offset, length);
+            int mask = table.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int entry = table[slot];
+                if (entry == 0) {
+                    int code = values.size();
+                    values.add(new String(buf, offset, length));
+                    table[slot] = code + 1;
+                    if (values.size() * 2 > table.length) {
+                        rehash();
+                    }
+                    return code;
+                }
+                if (matches(values.get(entry - 1), buf, offset, length)) {
+                    return entry - 1;
+                }
+            }
+        }
+
+        private void rehash() {
+            int[] bigger = new int[table.length * 2];
+            int mask = bigger.length - 1;
+            for (int code = 0; code < values.size(); code++) {
+                String value = values.get(code);
+                int slot = hash(value) & mask;
+                while (bigger[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                bigger[slot] = code + 1;
+            }
+            table = bigger;
+        }
+
+        static int hash(char[] buf, int offset, int length) {
+            int h = 0;
+            for (int i = offset; i < offset + length; i++) {
+                h = 31 * h + buf[i];
+            }
+            return h ^ (h >>> 16);
+        }
+
+        static int hash(String s) {
+            int h = s.hashCode();
+            return h ^ (h >>> 16);
+        }
+
+        static boolean matches(String value, char[] buf, int offset, int length) {
+            if (value.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (value.charAt(i) != buf[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
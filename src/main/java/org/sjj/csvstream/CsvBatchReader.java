@@ -0,0 +1,224 @@
+package org.sjj.csvstream;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the rows of a CsvParser in batches into column-oriented RecordBatch
+ * objects, for code that works on whole columns at a time.  Numeric columns
+ * are parsed straight from the parser's row buffer into long[] or double[]
+ * arrays, without creating any Strings.
+ *
+ * The schema can be declared up front, or inferred from the first batch of
+ * rows: a column whose non-empty values all parse as longs becomes LONG, then
+ * DOUBLE, and otherwise STRING (or DICTIONARY if the values repeat a lot).
+ *
+ * E.g.
+ *    CsvBatchReader reader = new CsvBatchReader(CsvParser.open(CsvConfig.DEFAULTS, path), 4096);
+ *    RecordBatch batch;
+ *    while ((batch = reader.next()) != null) {
+ *        double[] price = batch.getDoubles(1);
+ *        ...
+ *    }
+ */
+public class CsvBatchReader {
+    // Constants
+    public static final int       DEFAULT_BATCH_SIZE = 4096;
+    private static final int      DICTIONARY_RATIO = 4;
+
+    // Private bits
+    private final CsvParser                  parser;
+    private final CsvSchema                  schema;
+    private final int                        batchSize;
+    private final int[]                      sourceColumns;
+    private final ColumnVector.Dictionary[]  dictionaries;
+
+    // Private bits - Mutable state
+    private List<String[]>                   pending;
+    private int                              pendingIndex;
+    private RecordBatch                      batch;
+
+    public CsvBatchReader(CsvParser parser) {
+        this(parser, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a reader that infers the schema from the first batchSize rows.
+     * Columns are named after the header fields, or col0, col1, ... if the
+     * parser has no header.
+     */
+    public CsvBatchReader(CsvParser parser, int batchSize) {
+        this(parser, null, batchSize);
+    }
+
+    /**
+     * Creates a reader with a declared schema.  If the parser has a header
+     * the schema's columns are looked up by name, and a column whose name is
+     * not in the header is all nulls; otherwise they are taken in order.
+     */
+    public CsvBatchReader(CsvParser parser, CsvSchema schema, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.parser = parser;
+        this.batchSize = batchSize;
+        this.schema = schema != null ? schema : inferSchema();
+
+        String[] header = parser.getHeaderFields();
+        this.sourceColumns = new int[this.schema.size()];
+        this.dictionaries = new ColumnVector.Dictionary[this.schema.size()];
+        for (int i = 0; i < sourceColumns.length; i++) {
+            // by name if there is a header, and a name not in it reads as nulls
+            sourceColumns[i] = header != null ? -1 : i;
+            if (header != null) {
+                for (int h = 0; h < header.length; h++) {
+                    if (header[h].equals(this.schema.getName(i))) {
+                        sourceColumns[i] = h;
+                        break;
+                    }
+                }
+            }
+            if (this.schema.getType(i) == ColumnType.DICTIONARY) {
+                dictionaries[i] = new ColumnVector.Dictionary();
+            }
+        }
+    }
+
+    private CsvSchema inferSchema() {
+        pending = new ArrayList<>(batchSize);
+        String[] fields;
+        while (pending.size() < batchSize && (fields = parser.split()) != null) {
+            pending.add(fields);
+        }
+
+        String[] header = parser.getHeaderFields();
+        int width = header != null ? header.length : 0;
+        for (String[] row : pending) {
+            width = Math.max(width, row.length);
+        }
+
+        String[] names = new String[width];
+        ColumnType[] types = new ColumnType[width];
+        for (int c = 0; c < width; c++) {
+            names[c] = header != null && c < header.length ? header[c] : "col" + c;
+            types[c] = inferType(c);
+        }
+        return new CsvSchema(names, types);
+    }
+
+    private ColumnType inferType(int column) {
+        boolean allLongs = true;
+        boolean allDoubles = true;
+        int values = 0;
+        Set<String> distinct = new HashSet<>();
+        for (String[] row : pending) {
+            if (column >= row.length || row[column].isEmpty()) {
+                continue;
+            }
+            String value = row[column];
+            char[] chars = value.toCharArray();
+            values++;
+            distinct.add(value);
+            if (allLongs) {
+                try {
+                    FieldParsers.parseLong(chars, 0, chars.length);
+                } catch (NumberFormatException e) {
+                    allLongs = false;
+                }
+            }
+            if (allDoubles && !allLongs) {
+                try {
+                    FieldParsers.parseDouble(chars, 0, chars.length);
+                } catch (NumberFormatException e) {
+                    allDoubles = false;
+                }
+            }
+        }
+        if (values > 0 && allLongs) {
+            return ColumnType.LONG;
+        } else if (values > 0 && allDoubles) {
+            return ColumnType.DOUBLE;
+        } else if (values > 0 && distinct.size() * DICTIONARY_RATIO <= values) {
+            return ColumnType.DICTIONARY;
+        }
+        return ColumnType.STRING;
+    }
+
+    public CsvSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Creates an empty batch for this reader's schema and batch size, to use
+     * with read(RecordBatch), e.g. to fill one batch while another is processed.
+     */
+    public RecordBatch newBatch() {
+        return new RecordBatch(schema, batchSize, dictionaries);
+    }
+
+    /**
+     * Reads the next rows into a batch owned by this reader, which is reused
+     * by every call.
+     *
+     * @return the batch, or null if there are no more rows
+     */
+    public RecordBatch next() {
+        if (batch == null) {
+            batch = newBatch();
+        }
+        return read(batch) ? batch : null;
+    }
+
+    /**
+     * Reads up to capacity() rows into the given batch, replacing its contents.
+     *
+     * @return false if there were no more rows
+     */
+    public boolean read(RecordBatch target) {
+        if (target.getSchema() != schema && !target.getSchema().equals(schema)) {
+            throw new IllegalArgumentException("The batch was not created for this reader's schema");
+        }
+        target.clear();
+        int rows = 0;
+        int limit = Math.min(target.capacity(), batchSize);
+
+        // Rows that were read ahead to infer the schema come first.
+        while (pending != null && rows < limit) {
+            if (pendingIndex == pending.size()) {
+                pending = null;
+                break;
+            }
+            String[] fields = pending.get(pendingIndex++);
+            for (int c = 0; c < sourceColumns.length; c++) {
+                ColumnVector vector = target.column(c);
+                int source = sourceColumns[c];
+                if (source >= 0 && source < fields.length) {
+                    char[] chars = fields[source].toCharArray();
+                    vector.add(chars, 0, chars.length);
+                } else {
+                    vector.addNull();
+                }
+            }
+            rows++;
+        }
+
+        CsvRow row;
+        while (rows < limit && (row = parser.nextRow()) != null) {
+            char[] buf = row.getBuffer();
+            for (int c = 0; c < sourceColumns.length; c++) {
+                ColumnVector vector = target.column(c);
+                int source = sourceColumns[c];
+                if (source >= 0 && source < row.size()) {
+                    vector.add(buf, row.getOffset(source), row.getLength(source));
+                } else {
+                    vector.addNull();
+                }
+            }
+            rows++;
+        }
+        target.setSize(rows);
+        return rows > 0;
+    }
+}
@@ -0,0 +1,488 @@
+package org.sjj.csvstream;
+
+import java.beans.ConstructorProperties;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Binds rows to objects of a class, matching the header fields to the
+ * class's properties once and then filling in each row straight from the
+ * parser's row buffer, without splitting it into Strings first.
+ *
+ * The properties are, in order of preference:
+ *  - the components of a record (Java 16 and later)
+ *  - the parameters of a constructor annotated with @ConstructorProperties,
+ *    or of the longest constructor whose parameter names were compiled in
+ *    (javac -parameters), if the class has no no-arg constructor
+ *  - otherwise the non-static, non-final fields, set after the no-arg
+ *    constructor, including inherited ones
+ * A property matches the header field with the same name, or else the one
+ * that differs only in case, spaces, underscores and dashes (so "last_name"
+ * fills lastName).  Header fields without a property are ignored, and so are
+ * fields without a header field; a constructor parameter without a header
+ * field is an error.
+ *
+ * The plan is a MethodHandle per property, made when the binder is created,
+ * with a conversion picked for its type.  Binders are cached by class and
+ * header, so every parser of the same kind of file shares one plan, which the
+ * JIT compiles once.
+ *
+ * Primitives and their wrappers are parsed with the same allocation free
+ * parsers as CsvRow.getInt() and friends.  Strings, enums (by name),
+ * BigDecimal, LocalDate and Instant (see CsvRow.getEpochMillis()) are also
+ * supported.  An empty or missing field gives 0 or false for a primitive,
+ * and null for anything else except a String, which is only null for a
+ * missing field.
+ *
+ * E.g.
+ *    CsvParser parser = CsvParser.open(CsvConfig.DEFAULTS, path);
+ *    try (Stream<Trade> trades = parser.bind(Trade.class)) {
+ *        trades.forEach(book::add);
+ *    }
+ */
+public final class CsvBinder<T> {
+    // Constants
+    private static final int      MAX_CACHED_HEADERS = 64;     // per class
+    private static final ClassValue<Map<List<String>, CsvBinder<?>>> BINDERS =
+            new ClassValue<Map<List<String>, CsvBinder<?>>>() {
+                @Override
+                protected Map<List<String>, CsvBinder<?>> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    // Private bits
+    private final Class<T>        type;
+    private final String[]        headerFields;
+    private final MethodHandle    factory;          // ()Object, or (Object[])Object for a constructor
+    private final Setter[]        setters;          // for fields, or null
+    private final Converter[]     arguments;        // for constructor parameters, or null
+    private final int[]           columns;
+    private final String[]        names;
+
+    /**
+     * Sets one field of the target from one column of the row.
+     */
+    private interface Setter {
+        void set(Object target, CsvRow row, int column) throws Throwable;
+    }
+
+    /**
+     * Reads one column of the row as an argument for the constructor.
+     */
+    private interface Converter {
+        Object read(CsvRow row, int column);
+    }
+
+    private CsvBinder(Class<T> type, String[] headerFields) {
+        this.type = type;
+        this.headerFields = headerFields.clone();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Constructor<?> constructor = findConstructor(type);
+            if (constructor != null) {
+                String[] parameterNames = parameterNames(constructor);
+                Class<?>[] parameterTypes = constructor.getParameterTypes();
+                columns = new int[parameterNames.length];
+                names = parameterNames;
+                arguments = new Converter[parameterNames.length];
+                for (int i = 0; i < parameterNames.length; i++) {
+                    columns[i] = column(parameterNames[i]);
+                    if (columns[i] < 0) {
+                        throw new IllegalArgumentException("No header field for " + type.getName() + "."
+                                + parameterNames[i] + " in " + String.join(",", headerFields));
+                    }
+                    arguments[i] = converter(parameterTypes[i], parameterNames[i]);
+                }
+                constructor.setAccessible(true);
+                factory = lookup.unreflectConstructor(constructor)
+                        .asSpreader(Object[].class, parameterNames.length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+                setters = null;
+            } else {
+                Constructor<T> noArgs = type.getDeclaredConstructor();
+                noArgs.setAccessible(true);
+                factory = lookup.unreflectConstructor(noArgs).asType(MethodType.methodType(Object.class));
+                List<Integer> found = new ArrayList<>();
+                List<String> foundNames = new ArrayList<>();
+                List<Setter> foundSetters = new ArrayList<>();
+                for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || field.isSynthetic()
+                                || foundNames.contains(field.getName())) {
+                            continue;
+                        }
+                        int column = column(field.getName());
+                        if (column >= 0) {
+                            field.setAccessible(true);
+                            found.add(column);
+                            foundNames.add(field.getName());
+                            foundSetters.add(setter(lookup.unreflectSetter(field), field.getType(), field.getName()));
+                        }
+                    }
+                }
+                columns = new int[found.size()];
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = found.get(i);
+                }
+                names = foundNames.toArray(new String[0]);
+                setters = foundSetters.toArray(new Setter[0]);
+                arguments = null;
+            }
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " has no no-arg constructor, and no constructor"
+                    + " with @ConstructorProperties or compiled in parameter names", e);
+        } catch (IllegalAccessException | RuntimeException e) {
+            if (e instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e;
+            }
+            throw new IllegalArgumentException("Can't bind to " + type.getName() + ": " + e, e);
+        }
+    }
+
+    /**
+     * Returns a binder for a class, matched to the given header fields.
+     *
+     * @throws IllegalArgumentException if the class can't be bound
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CsvBinder<T> of(Class<T> type, String[] headerFields) {
+        Map<List<String>, CsvBinder<?>> binders = BINDERS.get(type);
+        List<String> key = Arrays.asList(headerFields.clone());
+        CsvBinder<?> binder = binders.get(key);
+        if (binder == null) {
+            binder = new CsvBinder<>(type, headerFields);
+            if (binders.size() < MAX_CACHED_HEADERS) {
+                binders.putIfAbsent(key, binder);
+            }
+        }
+        return (CsvBinder<T>) binder;
+    }
+
+    /**
+     * Returns a binder for a class, matched to the header fields of the parser.
+     *
+     * @throws IllegalArgumentException if the parser has no header fields, or
+     *         the class can't be bound
+     */
+    public static <T> CsvBinder<T> of(Class<T> type, CsvParser parser) {
+        String[] headerFields = parser.getHeaderFields();
+        if (headerFields == null) {
+            throw new IllegalArgumentException("Binding needs header fields, from the input or the CsvConfig");
+        }
+        return of(type, headerFields);
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public String[] getHeaderFields() {
+        return headerFields.clone();
+    }
+
+    /**
+     * Makes an object from the row.
+     *
+     * @throws IllegalArgumentException if a field can't be converted to its property's type
+     */
+    public T bind(CsvRow row) {
+        int i = 0;
+        try {
+            if (arguments != null) {
+                Object[] values = new Object[arguments.length];
+                for (; i < values.length; i++) {
+                    values[i] = arguments[i].read(row, columns[i]);
+                }
+                return type.cast((Object) factory.invokeExact(values));
+            }
+            Object target = (Object) factory.invokeExact();
+            for (; i < setters.length; i++) {
+                setters[i].set(target, row, columns[i]);
+            }
+            return type.cast(target);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new IllegalArgumentException("Can't bind " + (i < names.length ? names[i] : type.getName())
+                    + ": " + e.getMessage(), e);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Can't make a " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Returns a stream of the remaining rows of the parser as objects.
+     */
+    public Stream<T> stream(CsvParser parser) {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                CsvRow row = parser.nextRow();
+                if (row == null) {
+                    return false;
+                }
+                action.accept(bind(row));
+                return true;
+            }
+        }, false).onClose(parser::close);
+    }
+
+    /**
+     * Returns the index of the header field for a property, or -1.
+     */
+    private int column(String name) {
+        for (int i = 0; i < headerFields.length; i++) {
+            if (name.equals(headerFields[i])) {
+                return i;
+            }
+        }
+        String normal = normalize(name);
+        for (int i = 0; i < headerFields.length; i++) {
+            if (headerFields[i] != null && normal.equals(normalize(headerFields[i]))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String normalize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (ch != ' ' && ch != '_' && ch != '-') {
+                sb.append(ch);
+            }
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the constructor to bind to, or null to use the no-arg
+     * constructor and the fields.
+     */
+    private static Constructor<?> findConstructor(Class<?> type) throws NoSuchMethodException {
+        Object[] components = recordComponents(type);
+        if (components != null) {
+            Class<?>[] types = new Class<?>[components.length];
+            for (int i = 0; i < components.length; i++) {
+                types[i] = (Class<?>) invoke(components[i], "getType");
+            }
+            return type.getDeclaredConstructor(types);
+        }
+        Constructor<?> best = null;
+        boolean hasNoArgs = false;
+        for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+            if (constructor.isAnnotationPresent(ConstructorProperties.class)) {
+                return constructor;
+            }
+            Parameter[] parameters = constructor.getParameters();
+            if (parameters.length == 0) {
+                hasNoArgs = true;
+            } else if (parameters[0].isNamePresent() && !constructor.isSynthetic()
+                    && (best == null || parameters.length > best.getParameterCount())) {
+                best = constructor;
+            }
+        }
+        if (hasNoArgs) {
+            return null;
+        }
+        if (best == null) {
+            throw new NoSuchMethodException(type.getName() + ".<init>()");
+        }
+        return best;
+    }
+
+    private static String[] parameterNames(Constructor<?> constructor) {
+        Object[] components = recordComponents(constructor.getDeclaringClass());
+        String[] names = new String[constructor.getParameterCount()];
+        ConstructorProperties properties = constructor.getAnnotation(ConstructorProperties.class);
+        if (components != null) {
+            for (int i = 0; i < names.length; i++) {
+                names[i] = (String) invoke(components[i], "getName");
+            }
+        } else if (properties != null) {
+            if (properties.value().length != names.length) {
+                throw new IllegalArgumentException("@ConstructorProperties of " + constructor + " has "
+                        + properties.value().length + " names for " + names.length + " parameters");
+            }
+            System.arraycopy(properties.value(), 0, names, 0, names.length);
+        } else {
+            Parameter[] parameters = constructor.getParameters();
+            for (int i = 0; i < names.length; i++) {
+                names[i] = parameters[i].getName();
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Returns the record components of a class, or null if it isn't a record
+     * (or this is Java 15 or earlier, which has no records).
+     */
+    private static Object[] recordComponents(Class<?> type) {
+        try {
+            Method method = Class.class.getMethod("getRecordComponents");
+            return (Object[]) method.invoke(type);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static Object invoke(Object target, String method) {
+        try {
+            return target.getClass().getMethod(method).invoke(target);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't call " + method + " on " + target, e);
+        }
+    }
+
+    private static boolean isEmpty(CsvRow row, int column) {
+        return column >= row.size() || row.isEmpty(column);
+    }
+
+    /**
+     * Returns a Setter for a field, which converts the column straight into
+     * the field's type and sets it with invokeExact(), so that primitives are
+     * never boxed.
+     */
+    private static Setter setter(MethodHandle handle, Class<?> type, String name) {
+        if (type == int.class) {
+            MethodHandle mh = handle.asType(MethodType.methodType(void.class, Object.class, int.class));
+            return (target, row, column) -> {
+                mh.invokeExact(target, isEmpty(row, column) ? 0 : row.getInt(column));
+            };
+        }
+        if (type == long.class) {
+            MethodHandle mh = handle.asType(MethodType.methodType(void.class, Object.class, long.class));
+            return (target, row, column) -> {
+                mh.invokeExact(target, isEmpty(row, column) ? 0L : row.getLong(column));
+            };
+        }
+        if (type == double.class) {
+            MethodHandle mh = handle.asType(MethodType.methodType(void.class, Object.class, double.class));
+            return (target, row, column) -> {
+                mh.invokeExact(target, isEmpty(row, column) ? 0.0 : row.getDouble(column));
+            };
+        }
+        if (type == boolean.class) {
+            MethodHandle mh = handle.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+            return (target, row, column) -> {
+                mh.invokeExact(target, !isEmpty(row, column) && row.getBoolean(column));
+            };
+        }
+        if (type == float.class) {
+            MethodHandle mh = handle.asType(MethodType.methodType(void.class, Object.class, float.class));
+            return (target, row, column) -> {
+                mh.invokeExact(target, isEmpty(row, column) ? 0.0f : (float) row.getDouble(column));
+            };
+        }
+        Converter converter = converter(type, name);
+        MethodHandle mh = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        return (target, row, column) -> {
+            mh.invokeExact(target, converter.read(row, column));
+        };
+    }
+
+    /**
+     * Returns a Converter from a column to the given type, which boxes
+     * primitives.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Converter converter(Class<?> type, String name) {
+        if (type == String.class || type == CharSequence.class || type == Object.class) {
+            return (row, column) -> column < row.size() ? row.getString(column) : null;
+        }
+        if (type == int.class || type == Integer.class) {
+            Object empty = type.isPrimitive() ? 0 : null;
+            return (row, column) -> isEmpty(row, column) ? empty : (Object) row.getInt(column);
+        }
+        if (type == long.class || type == Long.class) {
+            Object empty = type.isPrimitive() ? 0L : null;
+            return (row, column) -> isEmpty(row, column) ? empty : (Object) row.getLong(column);
+        }
+        if (type == double.class || type == Double.class) {
+            Object empty = type.isPrimitive() ? 0.0 : null;
+            return (row, column) -> isEmpty(row, column) ? empty : (Object) row.getDouble(column);
+        }
+        if (type == float.class || type == Float.class) {
+            Object empty = type.isPrimitive() ? 0.0f : null;
+            return (row, column) -> isEmpty(row, column) ? empty : (Object) (float) row.getDouble(column);
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            Object empty = type.isPrimitive() ? false : null;
+            return (row, column) -> isEmpty(row, column) ? empty : (Object) row.getBoolean(column);
+        }
+        if (type == short.class || type == Short.class) {
+            Object empty = type.isPrimitive() ? (short) 0 : null;
+            return (row, column) -> isEmpty(row, column) ? empty : (Object) toShort(row.getInt(column));
+        }
+        if (type == byte.class || type == Byte.class) {
+            Object empty = type.isPrimitive() ? (byte) 0 : null;
+            return (row, column) -> isEmpty(row, column) ? empty : (Object) toByte(row.getInt(column));
+        }
+        if (type == char.class || type == Character.class) {
+            Object empty = type.isPrimitive() ? (char) 0 : null;
+            return (row, column) -> isEmpty(row, column) ? empty : (Object) toChar(row.get(column));
+        }
+        if (type == BigDecimal.class) {
+            return (row, column) -> isEmpty(row, column) ? null
+                    : new BigDecimal(row.getBuffer(), row.getOffset(column), row.getLength(column));
+        }
+        if (type == LocalDate.class) {
+            return (row, column) -> isEmpty(row, column) ? null : LocalDate.parse(row.get(column));
+        }
+        if (type == Instant.class) {
+            return (row, column) -> isEmpty(row, column) ? null : Instant.ofEpochMilli(row.getEpochMillis(column));
+        }
+        if (type.isEnum()) {
+            Class<? extends Enum> enumType = (Class<? extends Enum>) type;
+            return (row, column) -> isEmpty(row, column) ? null : Enum.valueOf(enumType, row.getString(column));
+        }
+        throw new IllegalArgumentException("Can't bind " + name + ", of unsupported type " + type.getName());
+    }
+
+    private static short toShort(int value) {
+        if (value != (short) value) {
+            throw new NumberFormatException("Out of range for a short: " + value);
+        }
+        return (short) value;
+    }
+
+    private static byte toByte(int value) {
+        if (value != (byte) value) {
+            throw new NumberFormatException("Out of range for a byte: " + value);
+        }
+        return (byte) value;
+    }
+
+    private static char toChar(CharSequence field) {
+        if (field.length() != 1) {
+            throw new IllegalArgumentException("Not a single char: \"" + field + "\"");
+        }
+        return field.charAt(0);
+    }
+}
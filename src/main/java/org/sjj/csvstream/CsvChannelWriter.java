@@ -0,0 +1,447 @@
+package org.sjj.csvstream;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Writes CSV rows as UTF-8 bytes to a GatheringByteChannel (e.g. a
+ * FileChannel or a SocketChannel).  Unlike a CsvWriter on an OutputStream
+ * there is no char buffer and no CharsetEncoder in between: each field is
+ * encoded to UTF-8 as it is copied into a block, quoting included, and ASCII
+ * Strings (the usual case) are copied with one array copy.  Full blocks are
+ * handed to the channel several at a time, with one gathering write per
+ * batch, and then reused.  The blocks are plain byte[]s: a FileChannel or
+ * SocketChannel copies them into its own cached direct buffers as it writes
+ * them, which is cheaper than encoding byte by byte into direct memory.
+ *
+ * Fields are quoted with the same rules as CsvWriter, and the field methods
+ * are the same too.
+ *
+ * The channel should be in blocking mode.  IOExceptions from the channel are
+ * thrown as UncheckedIOExceptions, as in CsvWriter.
+ *
+ * E.g.
+ *    try (CsvChannelWriter writer = new CsvChannelWriter(FileChannel.open(path, CREATE, WRITE), CsvConfig.DEFAULTS)) {
+ *        writer.writeRow("id", "name", "price");
+ *        for (Item item : items) {
+ *            writer.field(item.id).field(item.name).field(item.price).endRow();
+ *        }
+ *    }
+ */
+public final class CsvChannelWriter implements Closeable, Flushable {
+    // Constants
+    public static final int       DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int       DEFAULT_BATCH_SIZE = 16;
+    private static final int      MAX_CHAR_BYTES = 4;       // a surrogate pair is 4 bytes, any other char at most 3
+    private static final byte     REPLACEMENT = '?';        // for an unpaired surrogate, as the UTF-8 encoder writes
+    private static final byte[]   TRUE = { 't', 'r', 'u', 'e' };
+    private static final byte[]   FALSE = { 'f', 'a', 'l', 's', 'e' };
+    private static final int      WRITTEN = 0;              // results of putPlainAscii()
+    private static final int      NEEDS_QUOTES = 1;
+    private static final int      NOT_ASCII = 2;
+
+    // Private bits - immutable
+    private final GatheringByteChannel channel;
+    private final char            quote;
+    private final char            delimiter;
+    private final char            comment;
+    private final boolean         commentsEnabled;
+    private final int             bufferSize;
+    private final ByteBuffer[]    batch;              // full blocks, wrapped, waiting to be written
+    private final ArrayDeque<byte[]> spares = new ArrayDeque<>();   // written blocks, for reuse
+    private final char[]          number = new char[CsvWriter.MAX_NUMBER_LENGTH];
+
+    // Private bits - Mutable state
+    private char[]                chars = new char[256];
+    private byte[]                bytes;              // the block being encoded, at pos
+    private int                   pos;
+    private int                   batched;
+    private int                   fieldIndex;
+    private byte[]                newLine = { '\r', '\n' };
+    private long                  bytesWritten;
+    private boolean               closed;
+
+    public CsvChannelWriter(GatheringByteChannel channel, CsvConfig config) {
+        this(channel, config, DEFAULT_BUFFER_SIZE, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param bufferSize the size of each block, which must hold the longest
+     *                   number, so at least 32
+     * @param batchSize  the number of full blocks written by each gathering write
+     */
+    public CsvChannelWriter(GatheringByteChannel channel, CsvConfig config, int bufferSize, int batchSize) {
+        if (bufferSize < CsvWriter.MAX_NUMBER_LENGTH || batchSize <= 0) {
+            throw new IllegalArgumentException("Invalid buffer size " + bufferSize + " or batch size " + batchSize);
+        }
+        this.channel = channel;
+        this.quote = ascii(config.getQuote());
+        this.delimiter = ascii(config.getDelimiter());
+        this.comment = config.getComment();
+        this.commentsEnabled = config.getCommentsEnabled();
+        this.bufferSize = bufferSize;
+        this.bytes = new byte[bufferSize];
+        this.batch = new ByteBuffer[batchSize];
+    }
+
+    private static char ascii(char ch) {
+        if (ch > 0x7f) {
+            throw new IllegalArgumentException("Byte output requires an ASCII delimiter and quote: " + ch);
+        }
+        return ch;
+    }
+
+    /**
+     * Sets the line break written at the end of each row, CRLF by default
+     * as in RFC 4180.
+     */
+    public CsvChannelWriter setNewLineType(NewLineType type) {
+        newLine = type.second() < 0
+                ? new byte[]{ (byte) type.first() }
+                : new byte[]{ (byte) type.first(), (byte) type.second() };
+        return this;
+    }
+
+    /**
+     * The number of bytes handed to the channel so far.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Writes a whole row.  A null field is written as an empty field.
+     */
+    public void writeRow(CharSequence... fields) {
+        for (CharSequence field : fields) {
+            field(field);
+        }
+        endRow();
+    }
+
+    public CsvChannelWriter field(CharSequence value) {
+        startField();
+        if (value == null) {
+            return this;
+        }
+        int length = value.length();
+        int result = value instanceof String && length <= bytes.length - pos
+                ? putPlainAscii((String) value, length)
+                : NOT_ASCII;
+        if (result == WRITTEN) {
+            return this;
+        }
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        if (value instanceof String) {
+            ((String) value).getChars(0, length, chars, 0);
+        } else {
+            for (int i = 0; i < length; i++) {
+                chars[i] = value.charAt(i);
+            }
+        }
+        encode(chars, 0, length, result == NEEDS_QUOTES || needsQuotes(chars, 0, length));
+        return this;
+    }
+
+    /**
+     * Writes a field from a range of a char[], e.g. one passed to a CsvHandler.
+     */
+    public CsvChannelWriter field(char[] value, int offset, int length) {
+        startField();
+        encode(value, offset, length, needsQuotes(value, offset, length));
+        return this;
+    }
+
+    public CsvChannelWriter field(long value) {
+        startField();
+        putAscii(number, CsvWriter.formatLong(value, number, 0));
+        return this;
+    }
+
+    public CsvChannelWriter field(int value) {
+        return field((long) value);
+    }
+
+    /**
+     * Writes a double in a form that reads back as the same value, see
+     * CsvWriter.field(double).
+     */
+    public CsvChannelWriter field(double value) {
+        startField();
+        putAscii(number, CsvWriter.formatDouble(value, number, 0));
+        return this;
+    }
+
+    public CsvChannelWriter field(boolean value) {
+        startField();
+        byte[] text = value ? TRUE : FALSE;
+        ensure(text.length);
+        System.arraycopy(text, 0, bytes, pos, text.length);
+        pos += text.length;
+        return this;
+    }
+
+    /**
+     * Ends the current row.
+     */
+    public void endRow() {
+        ensure(newLine.length);
+        for (byte b : newLine) {
+            bytes[pos++] = b;
+        }
+        fieldIndex = 0;
+    }
+
+    private void startField() {
+        if (fieldIndex++ > 0) {
+            put(delimiter);
+        }
+    }
+
+    private boolean isSpecial(char ch) {
+        return ch == delimiter || ch == quote || ch == '\n' || ch == '\r';
+    }
+
+    /**
+     * Copies a String that fits in the block, if it is all ASCII and doesn't
+     * need quotes, which is the usual case.  The low bytes of its chars are
+     * its UTF-8 bytes, and with compact strings getBytes() copies them with
+     * one array copy.
+     *
+     * @return WRITTEN, or else NEEDS_QUOTES or NOT_ASCII for the first reason
+     *         it was not written
+     */
+    @SuppressWarnings("deprecation")
+    private int putPlainAscii(String value, int length) {
+        if (commentsEnabled && length > 0 && value.charAt(0) == comment) {
+            return NEEDS_QUOTES;
+        }
+        for (int i = 0; i < length; i++) {
+            char ch = value.charAt(i);
+            if (ch >= 0x80) {
+                return NOT_ASCII;
+            } else if (isSpecial(ch)) {
+                return NEEDS_QUOTES;
+            }
+        }
+        value.getBytes(0, length, bytes, pos);
+        pos += length;
+        return WRITTEN;
+    }
+
+    /**
+     * True if CsvWriter would quote the field.
+     */
+    private boolean needsQuotes(char[] value, int offset, int length) {
+        if (commentsEnabled && length > 0 && value[offset] == comment) {
+            // would be read back as a comment line
+            return true;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            if (isSpecial(value[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes a field as UTF-8, in quotes if needed.
+     */
+    private void encode(char[] value, int offset, int length, boolean needsQuotes) {
+        int end = offset + length;
+        int worstCase = 3 * length + 2;
+        if (worstCase <= bytes.length) {
+            ensure(worstCase);
+            encodeInPlace(value, offset, end, needsQuotes);
+            return;
+        }
+        // a long field, that spans blocks
+        if (needsQuotes) {
+            put(quote);
+        }
+        for (int i = offset; i < end; i++) {
+            char ch = value[i];
+            if (ch == quote) {
+                put(quote);
+            }
+            i = ch < 0x80 ? put(ch, i) : putEncoded(value, i, end);
+        }
+        if (needsQuotes) {
+            put(quote);
+        }
+    }
+
+    /**
+     * Encodes a field that fits in the rest of the block even if every char
+     * takes 3 bytes, so there are no checks for room.  Only a quoted field
+     * can contain the quote char, so quotes are doubled without checking.
+     */
+    private void encodeInPlace(char[] value, int offset, int end, boolean quoted) {
+        byte[] out = bytes;
+        int p = pos;
+        if (quoted) {
+            out[p++] = (byte) quote;
+        }
+        for (int i = offset; i < end; i++) {
+            char ch = value[i];
+            if (ch < 0x80) {
+                if (ch == quote) {
+                    out[p++] = (byte) ch;
+                }
+                out[p++] = (byte) ch;
+            } else if (ch < 0x800) {
+                out[p++] = (byte) (0xc0 | ch >> 6);
+                out[p++] = (byte) (0x80 | ch & 0x3f);
+            } else if (!Character.isSurrogate(ch)) {
+                out[p++] = (byte) (0xe0 | ch >> 12);
+                out[p++] = (byte) (0x80 | ch >> 6 & 0x3f);
+                out[p++] = (byte) (0x80 | ch & 0x3f);
+            } else if (Character.isHighSurrogate(ch) && i + 1 < end && Character.isLowSurrogate(value[i + 1])) {
+                int codePoint = Character.toCodePoint(ch, value[++i]);
+                out[p++] = (byte) (0xf0 | codePoint >> 18);
+                out[p++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                out[p++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                out[p++] = (byte) (0x80 | codePoint & 0x3f);
+            } else {
+                out[p++] = REPLACEMENT;
+            }
+        }
+        if (quoted) {
+            out[p++] = (byte) quote;
+        }
+        pos = p;
+    }
+
+    private void put(char ascii) {
+        if (pos == bytes.length) {
+            nextBuffer();
+        }
+        bytes[pos++] = (byte) ascii;
+    }
+
+    private int put(char ascii, int i) {
+        put(ascii);
+        return i;
+    }
+
+    private void putAscii(char[] value, int length) {
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            bytes[pos++] = (byte) value[i];
+        }
+    }
+
+    /**
+     * Encodes the non-ASCII char at index i of value as UTF-8.  A surrogate
+     * pair is encoded as one code point, and uses up the next char as well.
+     *
+     * @return the index of the last char used
+     */
+    private int putEncoded(char[] value, int i, int end) {
+        ensure(MAX_CHAR_BYTES);
+        byte[] out = bytes;
+        char ch = value[i];
+        if (ch < 0x800) {
+            out[pos++] = (byte) (0xc0 | ch >> 6);
+            out[pos++] = (byte) (0x80 | ch & 0x3f);
+        } else if (!Character.isSurrogate(ch)) {
+            out[pos++] = (byte) (0xe0 | ch >> 12);
+            out[pos++] = (byte) (0x80 | ch >> 6 & 0x3f);
+            out[pos++] = (byte) (0x80 | ch & 0x3f);
+        } else if (Character.isHighSurrogate(ch) && i + 1 < end && Character.isLowSurrogate(value[i + 1])) {
+            int codePoint = Character.toCodePoint(ch, value[i + 1]);
+            out[pos++] = (byte) (0xf0 | codePoint >> 18);
+            out[pos++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+            out[pos++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+            out[pos++] = (byte) (0x80 | codePoint & 0x3f);
+            return i + 1;
+        } else {
+            out[pos++] = REPLACEMENT;
+        }
+        return i;
+    }
+
+    private void ensure(int length) {
+        if (bytes.length - pos < length) {
+            nextBuffer();
+        }
+    }
+
+    /**
+     * Queues the current block for writing, writing the batch if it is full,
+     * and starts a new block.
+     */
+    private void nextBuffer() {
+        batch[batched++] = ByteBuffer.wrap(bytes, 0, pos);
+        bytes = spares.isEmpty() ? new byte[bufferSize] : spares.pop();
+        pos = 0;
+        if (batched == batch.length) {
+            writeBatch();
+        }
+    }
+
+    /**
+     * Writes the queued blocks with gathering writes, and keeps them for
+     * reuse.
+     */
+    private void writeBatch() {
+        try {
+            int first = 0;
+            while (first < batched) {
+                bytesWritten += channel.write(batch, first, batched - first);
+                while (first < batched && !batch[first].hasRemaining()) {
+                    first++;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (int i = 0; i < batched; i++) {
+                spares.push(batch[i].array());
+                batch[i] = null;
+            }
+            batched = 0;
+        }
+    }
+
+    /**
+     * Writes out everything buffered so far.
+     */
+    @Override
+    public void flush() {
+        if (pos > 0) {
+            nextBuffer();
+        }
+        if (batched > 0) {
+            writeBatch();
+        }
+    }
+
+    /**
+     * Flushes and closes the channel.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
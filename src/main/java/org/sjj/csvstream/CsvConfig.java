@@ -15,6 +15,7 @@ package org.sjj.csvstream;
  *   a hash # as the comment character
  *   a double-quote " as the quote character
  *   and expects the first non-comment line to be the header
+ *   any CR or LF ends a record, see withNewLineType()
  *
  *
  */
@@ -25,6 +26,9 @@ public class CsvConfig {
     static final char               DEFAULT_QUOTE = '"';
     static final boolean            DEFAULT_HEADER_FLAG = true;
     static final boolean            DEFAULT_COMMENT_ENABLED = true;
+    static final boolean            DEFAULT_QUOTES_ENABLED = true;
+    static final int                DEFAULT_BUFFER_SIZE = CharIterator.DEFAULT_CHUNK_SIZE;
+    static final int                DEFAULT_BUFFER_COUNT = 1;
 
     public static final CsvConfig DEFAULTS =
             new CsvConfig(
@@ -49,12 +53,81 @@ public class CsvConfig {
     private final char               comment;
     private final char               quote;
     private final boolean            commentsEnabled;
+    private final boolean            quotesEnabled;
+    private final NewLineType        newLineType;       // null for any CR or LF
+    private final int[]              projection;
+    private final String[]           projectionNames;
+    private final int                bufferSize;
+    private final int                bufferCount;
+    private final int                stringCacheSize;
+    private final int[]              stringCacheColumns;
+    private final BufferPool         bufferPool;
+
+    /**
+     * A mutable copy of the settings, used by the with... methods to make a
+     * new config that differs in just one or two settings.
+     */
+    private static final class Settings {
+        boolean   headerFlag;
+        char      delimiter;
+        char      comment;
+        char      quote;
+        boolean   commentsEnabled;
+        boolean   quotesEnabled = DEFAULT_QUOTES_ENABLED;
+        NewLineType newLineType;
+        int[]     projection;
+        String[]  projectionNames;
+        int       bufferSize = DEFAULT_BUFFER_SIZE;
+        int       bufferCount = DEFAULT_BUFFER_COUNT;
+        int       stringCacheSize;
+        int[]     stringCacheColumns;
+        BufferPool bufferPool;
+    }
+
     public CsvConfig(boolean headerFlag, char delimiter, char comment, char quote, boolean commentsEnabled) {
-        this.headerFlag = headerFlag;
-        this.delimiter = delimiter;
-        this.comment = comment;
-        this.quote = quote;
-        this.commentsEnabled = commentsEnabled;
+        this(settings(headerFlag, delimiter, comment, quote, commentsEnabled));
+    }
+
+    private static Settings settings(boolean headerFlag, char delimiter, char comment, char quote,
+                                     boolean commentsEnabled) {
+        Settings settings = new Settings();
+        settings.headerFlag = headerFlag;
+        settings.delimiter = delimiter;
+        settings.comment = comment;
+        settings.quote = quote;
+        settings.commentsEnabled = commentsEnabled;
+        return settings;
+    }
+
+    private CsvConfig(Settings settings) {
+        this.headerFlag = settings.headerFlag;
+        this.delimiter = settings.delimiter;
+        this.comment = settings.comment;
+        this.quote = settings.quote;
+        this.commentsEnabled = settings.commentsEnabled;
+        this.quotesEnabled = settings.quotesEnabled;
+        this.newLineType = settings.newLineType;
+        this.projection = settings.projection;
+        this.projectionNames = settings.projectionNames;
+        this.bufferSize = settings.bufferSize;
+        this.bufferCount = settings.bufferCount;
+        this.stringCacheSize = settings.stringCacheSize;
+        this.stringCacheColumns = settings.stringCacheColumns;
+        this.bufferPool = settings.bufferPool;
+    }
+
+    private Settings settings() {
+        Settings settings = settings(headerFlag, delimiter, comment, quote, commentsEnabled);
+        settings.quotesEnabled = quotesEnabled;
+        settings.newLineType = newLineType;
+        settings.projection = projection;
+        settings.projectionNames = projectionNames;
+        settings.bufferSize = bufferSize;
+        settings.bufferCount = bufferCount;
+        settings.stringCacheSize = stringCacheSize;
+        settings.stringCacheColumns = stringCacheColumns;
+        settings.bufferPool = bufferPool;
+        return settings;
     }
 
     public final boolean isHeaderFlag() {
@@ -75,23 +148,250 @@ public class CsvConfig {
 
     public final boolean getCommentsEnabled() { return commentsEnabled; }
 
+    /**
+     * Returns false if the input is known to have no quoted fields, see
+     * withQuotesEnabled().
+     */
+    public final boolean getQuotesEnabled() {
+        return quotesEnabled;
+    }
+
+    /**
+     * Returns the line ending that ends a record, or null if any CR or LF
+     * does, see withNewLineType().
+     */
+    public final NewLineType getNewLineType() {
+        return newLineType;
+    }
+
+    /**
+     * Returns the indexes of the columns selected with withProjection(int...),
+     * or null if the parser returns all of the columns.
+     */
+    public final int[] getProjection() {
+        return projection == null ? null : projection.clone();
+    }
+
+    /**
+     * Returns the header names of the columns selected with
+     * withProjection(String...), or null.
+     */
+    public final String[] getProjectionNames() {
+        return projectionNames == null ? null : projectionNames.clone();
+    }
+
+    /**
+     * The number of chars read from a Reader at a time.
+     */
+    public final int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * The number of buffers a Reader is read into; more than 1 means they are
+     * read ahead on a background thread.
+     */
+    public final int getBufferCount() {
+        return bufferCount;
+    }
+
     public final CsvConfig withDelimiter(char delimiter) {
-        return new CsvConfig(this.headerFlag, delimiter, this.comment, this.quote, this.commentsEnabled);
+        Settings settings = settings();
+        settings.delimiter = delimiter;
+        return new CsvConfig(settings);
     }
 
     public final CsvConfig withComment(char comment) {
-        return new CsvConfig(this.headerFlag, this.delimiter, comment, this.quote, this.commentsEnabled);
+        Settings settings = settings();
+        settings.comment = comment;
+        return new CsvConfig(settings);
     }
 
     public final CsvConfig withQuote(char quote) {
-        return new CsvConfig(this.headerFlag, this.delimiter, this.comment, quote, this.commentsEnabled);
+        Settings settings = settings();
+        settings.quote = quote;
+        return new CsvConfig(settings);
     }
 
     public final CsvConfig withCommentsEnabled(boolean enabled) {
-        return new CsvConfig(this.headerFlag, this.delimiter, this.comment, quote, enabled);
+        Settings settings = settings();
+        settings.commentsEnabled = enabled;
+        return new CsvConfig(settings);
+    }
+
+    /**
+     * Tell the parser whether the input can have quoted fields.  With quotes
+     * disabled the quote character is ordinary data, and the parser can use
+     * a simpler loop.  Quotes are enabled by default.
+     */
+    public final CsvConfig withQuotesEnabled(boolean enabled) {
+        Settings settings = settings();
+        settings.quotesEnabled = enabled;
+        return new CsvConfig(settings);
+    }
+
+    /**
+     * Only end records at the given line ending, and treat any other CR or LF
+     * as ordinary data (which is trimmed off the ends of fields like other
+     * whitespace).  Every line ending ends exactly one record, so a blank
+     * line is a record with one empty field.  This lets the parser match one
+     * char per record instead of checking every CR and LF, and looking past
+     * it.
+     *
+     * With null (the default) any CR or LF ends a record, and up to two more
+     * CR or LF chars right after it are taken as part of the same line
+     * ending, so CRLF, LFCR and blank lines are all handled.
+     *
+     * E.g.
+     *    CsvConfig.DEFAULTS.withNewLineType(NewLineType.LF).withQuotesEnabled(false).withCommentsEnabled(false)
+     */
+    public final CsvConfig withNewLineType(NewLineType type) {
+        Settings settings = settings();
+        settings.newLineType = type;
+        return new CsvConfig(settings);
     }
 
     public final CsvConfig withHeaderFlag(boolean headerFlag) {
-        return new CsvConfig(headerFlag, this.delimiter, this.comment, this.quote, this.commentsEnabled);
+        Settings settings = settings();
+        settings.headerFlag = headerFlag;
+        return new CsvConfig(settings);
+    }
+
+    /**
+     * Only parse the given columns (0 based).  The fields of the other columns
+     * are skipped over without being copied, and every row contains just the
+     * selected columns, in the order given here.  A selected column that is
+     * missing from a short row comes back as an empty field.  Each column
+     * can only be selected once.
+     */
+    public final CsvConfig withProjection(int... columns) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] < 0) {
+                throw new IllegalArgumentException("Invalid column index " + columns[i]);
+            }
+            for (int j = 0; j < i; j++) {
+                if (columns[j] == columns[i]) {
+                    throw new IllegalArgumentException("Duplicate column in projection: " + columns[i]);
+                }
+            }
+        }
+        Settings settings = settings();
+        settings.projection = columns.length == 0 ? null : columns.clone();
+        settings.projectionNames = null;
+        return new CsvConfig(settings);
+    }
+
+    /**
+     * Only parse the columns with the given header names, see withProjection(int...).
+     * The names are looked up in the header when the parser is created.
+     */
+    public final CsvConfig withProjection(String... names) {
+        for (int i = 0; i < names.length; i++) {
+            for (int j = 0; j < i; j++) {
+                if (names[j].equals(names[i])) {
+                    throw new IllegalArgumentException("Duplicate column in projection: " + names[i]);
+                }
+            }
+        }
+        Settings settings = settings();
+        settings.projection = null;
+        settings.projectionNames = names.length == 0 ? null : names.clone();
+        return new CsvConfig(settings);
+    }
+
+    final CsvConfig withoutProjection() {
+        Settings settings = settings();
+        settings.projection = null;
+        settings.projectionNames = null;
+        return new CsvConfig(settings);
+    }
+
+    /**
+     * Read a Reader on a background thread, bufferCount buffers of bufferSize
+     * chars at a time, so the parser doesn't wait on every refill.  Use a
+     * bufferCount of 1 to read on the parsing thread (the default).
+     *
+     * E.g.
+     *    CsvConfig.DEFAULTS.withReadAhead(64 * 1024, 2)   // double buffered
+     */
+    public final CsvConfig withReadAhead(int bufferSize, int bufferCount) {
+        if (bufferSize <= 0 || bufferCount <= 0) {
+            throw new IllegalArgumentException("Invalid buffer size " + bufferSize + " or count " + bufferCount);
+        }
+        Settings settings = settings();
+        settings.bufferSize = bufferSize;
+        settings.bufferCount = bufferCount;
+        return new CsvConfig(settings);
+    }
+
+    /**
+     * Read bufferSize chars from a Reader at a time.  A small file is
+     * better served by a small buffer, a large file on slow storage by a
+     * large one.
+     */
+    public final CsvConfig withBufferSize(int bufferSize) {
+        return withReadAhead(bufferSize, this.bufferCount);
+    }
+
+    /**
+     * The pool that parsers borrow their buffers from, or null if each
+     * parser allocates its own.
+     */
+    public final BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Borrow the read buffer and row buffer of each parser from a shared
+     * pool, and give them back when the parser is closed.  Buffers of
+     * read-ahead threads (see withReadAhead()) are not pooled.  Use null to
+     * stop pooling.
+     */
+    public final CsvConfig withBufferPool(BufferPool pool) {
+        Settings settings = settings();
+        settings.bufferPool = pool;
+        return new CsvConfig(settings);
+    }
+
+    /**
+     * The size of the string cache of each column, or 0 if fields are not
+     * cached, see withStringCache().
+     */
+    public final int getStringCacheSize() {
+        return stringCacheSize;
+    }
+
+    /**
+     * The columns that have a string cache, or null for all of them.
+     */
+    public final int[] getStringCacheColumns() {
+        return stringCacheColumns == null ? null : stringCacheColumns.clone();
+    }
+
+    /**
+     * Give each of the given columns (of the rows as returned, so after any
+     * projection), or every column if none are given, a cache of up to size
+     * Strings.  When a field's chars match a String already in its column's
+     * cache, split() and CsvRow.getString() return that String instead of a
+     * new one, so repeated values such as country or currency codes share one
+     * instance.  A column that turns out to have too many distinct values
+     * stops caching by itself.  Use a size of 0 to turn caching off.
+     *
+     * E.g.
+     *    CsvConfig.DEFAULTS.withStringCache(1024, 3, 4)
+     */
+    public final CsvConfig withStringCache(int size, int... columns) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Invalid string cache size " + size);
+        }
+        for (int column : columns) {
+            if (column < 0) {
+                throw new IllegalArgumentException("Invalid column index " + column);
+            }
+        }
+        Settings settings = settings();
+        settings.stringCacheSize = size;
+        settings.stringCacheColumns = columns.length == 0 ? null : columns.clone();
+        return new CsvConfig(settings);
     }
 }
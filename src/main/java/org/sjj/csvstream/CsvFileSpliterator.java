@@ -0,0 +1,247 @@
+package org.sjj.csvstream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A Spliterator over the records of a CSV file that can be split for parallel
+ * processing.  Instead of handing out batches of already parsed rows, trySplit()
+ * cuts the remaining byte range of the file in half and moves the cut forward
+ * to the start of the next record, so each half is parsed by its own CsvParser.
+ *
+ * Finding the next record from an arbitrary byte offset has to take quoted
+ * fields into account, since a newline inside quotes does not end a record.
+ * The cut point is resynchronised by tracking every possible quote state from
+ * the middle of the range until they agree (see RecordScanner).  If that does
+ * not happen within a small look-ahead window, the state at the middle is
+ * worked out from the start of the range instead.
+ *
+ * Rows are reported in file order (ORDERED), so a parallel stream still gives
+ * encounter order to forEachOrdered() or collect(); call unordered() on the
+ * stream if the order does not matter.  The number of rows is not known up
+ * front, so the size is an estimate based on the average length of the first
+ * records of the file rather than an exact SIZED count.
+ *
+ * The file must use an ASCII compatible encoding (e.g. UTF-8 or ISO-8859-1).
+ *
+ * E.g.
+ *    try (Stream<String[]> records = CsvParser.splitLines(CsvConfig.DEFAULTS, path)) {
+ *        long count = records.parallel().count();
+ *    }
+ */
+public class CsvFileSpliterator implements Spliterator<String[]> {
+    // Constants
+    static final long             DEFAULT_MIN_SPLIT_SIZE = 1024 * 1024;
+    private static final int      SAMPLE_SIZE = 64 * 1024;
+
+    // Private bits - shared between all of the splits of a file
+    private final FileChannel     channel;
+    private final CsvConfig       config;
+    private final CsvConfig       rangeConfig;
+    private final Charset         charset;
+    private final long            minSplitSize;
+    private final double          bytesPerRecord;
+    private final String[]        headerFields;
+
+    // Private bits - Mutable state
+    private long                  start;
+    private long                  end;
+    private CsvParser             parser;
+
+    public static CsvFileSpliterator open(CsvConfig config, Path path) throws IOException {
+        return open(config, path, StandardCharsets.UTF_8);
+    }
+
+    public static CsvFileSpliterator open(CsvConfig config, Path path, Charset charset) throws IOException {
+        return new CsvFileSpliterator(config, path, charset, DEFAULT_MIN_SPLIT_SIZE);
+    }
+
+    CsvFileSpliterator(CsvConfig config, Path path, Charset charset, long minSplitSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.config = config;
+        this.charset = charset;
+        this.minSplitSize = minSplitSize;
+
+        try {
+            long size = channel.size();
+            RecordScanner scanner = new RecordScanner(config);
+            long dataStart = 0;
+            String[] header = null;
+            if (config.isHeaderFlag()) {
+                dataStart = scanner.skipRecord(channel, 0, size);
+                CsvConfig headerConfig = config.withHeaderFlag(false).withoutProjection();
+                header = newParser(0, dataStart, headerConfig).split();
+            }
+
+            // Each range is parsed without a header, so a projection by name is
+            // turned into one by index here.
+            int[] projection = CsvParser.resolveProjection(config, header);
+            this.rangeConfig = projection == null
+                    ? config.withHeaderFlag(false)
+                    : config.withHeaderFlag(false).withProjection(projection);
+            this.headerFields = CsvParser.projectHeader(header, projection);
+            this.bytesPerRecord = sampleRecordLength(scanner, dataStart, size);
+            this.start = dataStart;
+            this.end = size;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private CsvFileSpliterator(CsvFileSpliterator parent, long start, long end) {
+        this.channel = parent.channel;
+        this.config = parent.config;
+        this.rangeConfig = parent.rangeConfig;
+        this.charset = parent.charset;
+        this.minSplitSize = parent.minSplitSize;
+        this.bytesPerRecord = parent.bytesPerRecord;
+        this.headerFields = parent.headerFields;
+        this.start = start;
+        this.end = end;
+    }
+
+    private double sampleRecordLength(RecordScanner scanner, long from, long size) throws IOException {
+        long sampleEnd = Math.min(size, from + SAMPLE_SIZE);
+        long pos = from;
+        int records = 0;
+        while (pos < sampleEnd) {
+            pos = scanner.skipRecord(channel, pos, sampleEnd);
+            records++;
+        }
+        return records == 0 ? 1.0 : Math.max(1.0, (double) (pos - from) / records);
+    }
+
+    private CsvParser newParser(long from, long to, CsvConfig parserConfig) {
+        if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)) {
+            // Parse the mapped bytes directly, no need for a decoding Reader.
+            try {
+                ByteBuffer[] windows = ByteBufferIterator.map(channel, from, to);
+                return new CsvParser(parserConfig, new ByteBufferIterator(windows), null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        Reader reader = new InputStreamReader(new RangeInputStream(channel, from, to), charset);
+        return new CsvParser(parserConfig, reader);
+    }
+
+    public String[] getHeaderFields() {
+        return headerFields;
+    }
+
+    /**
+     * Returns a stream over the records of the file.  The stream owns the
+     * underlying FileChannel, so it should be closed when done with it
+     * (e.g. with try-with-resources).
+     */
+    public Stream<String[]> stream() {
+        return StreamSupport.stream(this, false)
+                .onClose(() -> {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String[]> action) {
+        if (parser == null) {
+            if (start >= end) {
+                return false;
+            }
+            parser = newParser(start, end, rangeConfig);
+        }
+        String[] fields = parser.split();
+        if (fields == null) {
+            start = end;
+            return false;
+        }
+        action.accept(fields);
+        return true;
+    }
+
+    @Override
+    public Spliterator<String[]> trySplit() {
+        // Once parsing of this range has begun, its start offset is no longer accurate.
+        if (parser != null || end - start < 2 * minSplitSize) {
+            return null;
+        }
+        long mid = start + (end - start) / 2;
+        long boundary;
+        try {
+            boundary = new RecordScanner(config).resync(channel, start, mid, end);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (boundary <= start || boundary >= end) {
+            return null;
+        }
+        CsvFileSpliterator prefix = new CsvFileSpliterator(this, start, boundary);
+        this.start = boundary;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        if (start >= end) {
+            return 0;
+        }
+        return Math.max(1, (long) ((end - start) / bytesPerRecord));
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * Reads a fixed byte range of a FileChannel with positional reads, so
+     * that several ranges of the same channel can be read concurrently.
+     */
+    private static class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long        end;
+        private long              position;
+
+        RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int n = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, n), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
+}
@@ -20,6 +20,8 @@ package org.sjj.csvstream;
  * header, you can format it as you would any other line and insert it as
  * the first non-comment line.
  *
+ * A CsvFormatter reuses one StringBuilder, so it must not be shared between
+ * threads.  To write a parallel stream of rows, use CsvWriter.writeAll().
  */
 public class CsvFormatter {
     // Private bits - immutable
@@ -30,6 +32,8 @@ public class CsvFormatter {
     // Private bits - Mutable state
     // (for performance: try to avoid creating lots of StringBuilder objects)
     private StringBuilder stringBuilder = new StringBuilder();
+    private CsvMetrics metrics;
+    private int quotedFields;
 
     public CsvFormatter() {
         this(CsvConfig.DEFAULTS);
@@ -60,16 +64,30 @@ public class CsvFormatter {
             // wrap with quotes
             stringBuilder.insert(startPos, '"');
             stringBuilder.append(quote);
+            quotedFields++;
         }
     }
 
+    /**
+     * Starts counting the formatted rows and fields into the metrics, or
+     * stops counting if metrics is null.  The input count is the number of
+     * chars formatted.
+     */
+    public void setMetrics(CsvMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public String format(String[] fields) {
         this.stringBuilder.setLength(0);
+        this.quotedFields = 0;
         for (int i = 0; i < fields.length; i++) {
             formatField(fields[i]);
             if (i < fields.length - 1)
                 this.stringBuilder.append(delimiter);
         }
+        if (metrics != null) {
+            metrics.formatted(fields, quotedFields, stringBuilder.length());
+        }
         return this.stringBuilder.toString();
     }
 }
@@ -0,0 +1,38 @@
+package org.sjj.csvstream;
+
+/**
+ * Receives the rows and fields of a CsvParser as they are parsed, see
+ * CsvParser.parse(CsvHandler).  No String or array is created for the
+ * fields; each field is handed over as a range of the parser's row buffer,
+ * which is only valid for the duration of the call.
+ *
+ * E.g. summing the second column:
+ *    parser.parse(new CsvHandler() {
+ *        public void field(int index, char[] buffer, int offset, int length, boolean quoted) {
+ *            if (index == 1) {
+ *                total += length;
+ *            }
+ *        }
+ *    });
+ */
+public interface CsvHandler {
+    /**
+     * Called before the first field of a row.
+     *
+     * @param rowNum the number of the row, starting at 0 for the first row after the header
+     */
+    default void startRow(long rowNum) {
+    }
+
+    /**
+     * Called for each field of the row, in order.  The field has already been
+     * trimmed and, if it was quoted, unescaped.
+     */
+    void field(int index, char[] buffer, int offset, int length, boolean quoted);
+
+    /**
+     * Called after the last field of a row.
+     */
+    default void endRow() {
+    }
+}
@@ -0,0 +1,363 @@
+package org.sjj.csvstream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * An index of the byte offsets of the records of a CSV file, for jumping
+ * straight to a given row instead of parsing every row before it.
+ *
+ * The index holds the offset of (at least) every interval-th record, found
+ * with the same quote aware rules as the parser (see RecordScanner), so
+ * opening a parser at row N only has to scan past fewer than interval records.
+ * Large files are indexed in parallel: the file is cut into chunks at record
+ * boundaries, and each chunk is scanned on its own thread.
+ *
+ * The index can be saved in a sidecar file next to the CSV file (foo.csv.idx),
+ * along with the file's size and modification time, so that a stale index is
+ * detected and rebuilt instead of used.
+ *
+ * Rows are numbered from 0, not counting the header.  The file must be UTF-8
+ * (or another ASCII compatible encoding, see openAt(long, Charset)).
+ *
+ * E.g.
+ *    CsvIndex index = CsvIndex.open(CsvConfig.DEFAULTS, path);   // loads or builds foo.csv.idx
+ *    CsvParser parser = index.openAt(50000000);
+ *    for (int i = 0; i < 1000; i++) {
+ *        String[] row = parser.split();
+ *        ...
+ *    }
+ */
+public final class CsvIndex {
+    // Constants
+    public static final int       DEFAULT_INTERVAL = 1024;
+    private static final int      MAGIC = 0x43535649;          // "CSVI"
+    private static final int      VERSION = 2;
+    private static final long     MIN_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final String   SUFFIX = ".idx";
+
+    // Private bits
+    private final CsvConfig       config;
+    private final Path            path;
+    private final long            fileSize;
+    private final long            lastModified;
+    private final int             interval;
+    private final long            dataStart;
+    private final long            rowCount;
+    private final long[]          rows;        // ascending row numbers ...
+    private final long[]          offsets;     // ... and where those rows start
+
+    private CsvIndex(CsvConfig config, Path path, long fileSize, long lastModified, int interval,
+                     long dataStart, long rowCount, long[] rows, long[] offsets) {
+        this.config = config;
+        this.path = path;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.interval = interval;
+        this.dataStart = dataStart;
+        this.rowCount = rowCount;
+        this.rows = rows;
+        this.offsets = offsets;
+    }
+
+    /**
+     * A growable list of (row, offset) entries found in one chunk.
+     */
+    private static final class Chunk {
+        long[]  offsets = new long[64];
+        int     size;
+        long    records;
+
+        void add(long offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = offset;
+        }
+    }
+
+    /**
+     * Returns the sidecar file for a CSV file, e.g. foo.csv.idx for foo.csv.
+     */
+    public static Path indexPath(Path path) {
+        return path.resolveSibling(path.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Loads the saved index of the file if it is still current, otherwise
+     * builds a new one with DEFAULT_INTERVAL and saves it.
+     */
+    public static CsvIndex open(CsvConfig config, Path path) throws IOException {
+        CsvIndex index = load(config, path);
+        if (index == null) {
+            index = build(config, path, DEFAULT_INTERVAL);
+            index.save();
+        }
+        return index;
+    }
+
+    /**
+     * Builds the index of a file, recording the offset of every interval-th row.
+     */
+    public static CsvIndex build(CsvConfig config, Path path, int interval) throws IOException {
+        return build(config, path, interval, MIN_CHUNK_SIZE);
+    }
+
+    static CsvIndex build(CsvConfig config, Path path, int interval, long minChunkSize) throws IOException {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Invalid index interval " + interval);
+        }
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            RecordScanner scanner = new RecordScanner(config);
+            long dataStart = config.isHeaderFlag() ? scanner.skipRecord(channel, 0, size) : 0;
+
+            // cut the file into chunks at record boundaries
+            List<Long> bounds = new ArrayList<>();
+            bounds.add(dataStart);
+            int chunks = (int) Math.min(4L * Runtime.getRuntime().availableProcessors(),
+                    Math.max(1, (size - dataStart) / minChunkSize));
+            for (int i = 1; i < chunks; i++) {
+                long boundary = scanner.resync(channel, bounds.get(bounds.size() - 1),
+                        dataStart + i * ((size - dataStart) / chunks), size);
+                if (boundary > bounds.get(bounds.size() - 1)) {
+                    bounds.add(boundary);
+                }
+            }
+            bounds.add(size);
+
+            Chunk[] scanned = IntStream.range(0, bounds.size() - 1).parallel()
+                    .mapToObj(i -> {
+                        Chunk chunk = new Chunk();
+                        try {
+                            chunk.records = new RecordScanner(config)
+                                    .scan(channel, bounds.get(i), bounds.get(i + 1), interval, chunk::add);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return chunk;
+                    })
+                    .toArray(Chunk[]::new);
+
+            int entries = 0;
+            for (Chunk chunk : scanned) {
+                entries += chunk.size;
+            }
+            long[] rows = new long[entries];
+            long[] offsets = new long[entries];
+            long base = 0;
+            int e = 0;
+            for (Chunk chunk : scanned) {
+                for (int i = 0; i < chunk.size; i++, e++) {
+                    rows[e] = base + (long) i * interval;
+                    offsets[e] = chunk.offsets[i];
+                }
+                base += chunk.records;
+            }
+            return new CsvIndex(config, path, size, lastModified, interval, dataStart, base, rows, offsets);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Loads the saved index of a file.
+     *
+     * @return the index, or null if there is none, if it is out of date
+     *         with the file or was built with different CsvConfig settings,
+     *         or if it is truncated or corrupt
+     */
+    public static CsvIndex load(CsvConfig config, Path path) throws IOException {
+        Path indexPath = indexPath(path);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long fileSize = in.readLong();
+            long lastModified = in.readLong();
+            if (in.readChar() != config.getDelimiter()
+                    || in.readChar() != config.getQuote()
+                    || in.readChar() != config.getComment()
+                    || in.readBoolean() != config.getCommentsEnabled()
+                    || in.readBoolean() != config.getQuotesEnabled()
+                    || in.readByte() != newLineCode(config)
+                    || in.readBoolean() != config.isHeaderFlag()) {
+                return null;
+            }
+            int interval = in.readInt();
+            long dataStart = in.readLong();
+            long rowCount = in.readLong();
+            int entries = in.readInt();
+            if (interval <= 0 || entries < 0 || entries > Files.size(indexPath) / (2 * Long.BYTES)) {
+                return null;
+            }
+            long[] rows = new long[entries];
+            long[] offsets = new long[entries];
+            for (int i = 0; i < entries; i++) {
+                rows[i] = in.readLong();
+                offsets[i] = in.readLong();
+            }
+            CsvIndex index = new CsvIndex(config, path, fileSize, lastModified, interval,
+                    dataStart, rowCount, rows, offsets);
+            return index.isCurrent() ? index : null;
+        } catch (NoSuchFileException | EOFException e) {
+            return null;
+        }
+    }
+
+    private static int newLineCode(CsvConfig config) {
+        return config.getNewLineType() == null ? -1 : config.getNewLineType().ordinal();
+    }
+
+    /**
+     * Saves the index next to the file, see indexPath().
+     */
+    public void save() throws IOException {
+        Path indexPath = indexPath(path);
+        Path temp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeChar(config.getDelimiter());
+            out.writeChar(config.getQuote());
+            out.writeChar(config.getComment());
+            out.writeBoolean(config.getCommentsEnabled());
+            out.writeBoolean(config.getQuotesEnabled());
+            out.writeByte(newLineCode(config));
+            out.writeBoolean(config.isHeaderFlag());
+            out.writeInt(interval);
+            out.writeLong(dataStart);
+            out.writeLong(rowCount);
+            out.writeInt(rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                out.writeLong(rows[i]);
+                out.writeLong(offsets[i]);
+            }
+        }
+        // readers never see a half written index
+        Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Returns true if the file still has the size and modification time it
+     * had when the index was built.
+     */
+    public boolean isCurrent() throws IOException {
+        return Files.size(path) == fileSize && Files.getLastModifiedTime(path).toMillis() == lastModified;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Returns the byte offset at which a row starts.
+     */
+    public long offsetOf(long row) throws IOException {
+        if (row < 0 || row > rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+        if (row == rowCount) {
+            return fileSize;
+        }
+        int entry = Arrays.binarySearch(rows, row);
+        if (entry >= 0) {
+            return offsets[entry];
+        }
+        entry = -entry - 2;    // the last entry before the row
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new RecordScanner(config).skipRecords(channel, offsets[entry], fileSize, row - rows[entry]);
+        }
+    }
+
+    /**
+     * Opens a parser at the given row of a UTF-8 file, so that its first
+     * split() returns that row.  The parser has the file's header fields.
+     */
+    public CsvParser openAt(long row) throws IOException {
+        return openAt(row, StandardCharsets.UTF_8);
+    }
+
+    public CsvParser openAt(long row, Charset charset) throws IOException {
+        if (!isCurrent()) {
+            throw new IllegalStateException("The file has changed since it was indexed: " + path);
+        }
+        long offset = offsetOf(row);
+        CsvConfig rangeConfig = config.withHeaderFlag(false);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            String[] header = null;
+            if (config.isHeaderFlag()) {
+                header = parser(channel, 0, dataStart, rangeConfig.withoutProjection(), null, charset).split();
+            }
+            return parser(channel, offset, fileSize, rangeConfig, header, charset);
+        }
+    }
+
+    private static CsvParser parser(FileChannel channel, long from, long to, CsvConfig config, String[] header,
+                                    Charset charset) throws IOException {
+        ByteBuffer[] windows = ByteBufferIterator.map(channel, from, to);
+        if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)) {
+            return new CsvParser(config, new ByteBufferIterator(windows), header);
+        }
+        // the mapping stays valid once the channel is closed
+        return new CsvParser(config, new InputStreamReader(new MappedInputStream(windows), charset), header);
+    }
+
+    /**
+     * Reads the mapped windows of a file in order.
+     */
+    private static class MappedInputStream extends InputStream {
+        private final ByteBuffer[] windows;
+        private int                index;
+
+        MappedInputStream(ByteBuffer[] windows) {
+            this.windows = windows;
+        }
+
+        @Override
+        public int read() {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            while (index < windows.length && !windows[index].hasRemaining()) {
+                index++;
+            }
+            if (index == windows.length) {
+                return -1;
+            }
+            int n = Math.min(len, windows[index].remaining());
+            windows[index].get(b, off, n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package org.sjj.csvstream;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts what a CsvParser or CsvFormatter has been doing, to tell e.g.
+ * whether a slow job spends its time waiting for input (refill time) or
+ * parsing (lots of rows, long or quoted fields).
+ *
+ * Metrics are off unless a CsvMetrics is set on the parser or formatter;
+ * when off, the only cost is a null check per row.  When on, the counters
+ * are plain fields updated by the thread doing the parsing, so snapshot()
+ * must be called from that thread.  Every publishInterval rows, and at the
+ * end of the input, a snapshot is published: it is then available to any
+ * thread from getPublished(), to the listeners and through JMX.
+ *
+ * For byte input the input is counted in bytes, otherwise in chars.
+ *
+ * E.g.
+ *    CsvMetrics metrics = new CsvMetrics();
+ *    metrics.addListener(snapshot -> log.info("{}", snapshot));
+ *    metrics.registerMBean("orders-import");
+ *    CsvParser parser = CsvParser.open(config, path);
+ *    parser.setMetrics(metrics);
+ */
+public final class CsvMetrics {
+    // Constants
+    public static final int       DEFAULT_PUBLISH_INTERVAL = 10000;
+    private static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+    // Private bits
+    private final int             publishInterval;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Private bits - Mutable state, updated by the parsing (or formatting) thread
+    long                          rows;
+    long                          fields;
+    long                          quotedFields;
+    long                          inputChars;
+    long                          maxFieldLength;
+    long                          maxRowLength;
+    long                          refills;
+    long                          refillNanos;
+    long                          commentLines;
+    LongSupplier                  inputPosition;   // for inputs that know how much they have consumed
+    private int                   unpublished;
+    private volatile Snapshot     published = EMPTY;
+
+    /**
+     * Receives each published snapshot, on the thread that is parsing.
+     */
+    public interface Listener {
+        void published(Snapshot snapshot);
+    }
+
+    /**
+     * The values of the metrics at one point in time.
+     */
+    public static final class Snapshot {
+        private final long        rows;
+        private final long        fields;
+        private final long        quotedFields;
+        private final long        inputChars;
+        private final long        maxFieldLength;
+        private final long        maxRowLength;
+        private final long        refills;
+        private final long        refillNanos;
+        private final long        commentLines;
+
+        Snapshot(long rows, long fields, long quotedFields, long inputChars, long maxFieldLength,
+                 long maxRowLength, long refills, long refillNanos, long commentLines) {
+            this.rows = rows;
+            this.fields = fields;
+            this.quotedFields = quotedFields;
+            this.inputChars = inputChars;
+            this.maxFieldLength = maxFieldLength;
+            this.maxRowLength = maxRowLength;
+            this.refills = refills;
+            this.refillNanos = refillNanos;
+            this.commentLines = commentLines;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getFields() {
+            return fields;
+        }
+
+        public long getQuotedFields() {
+            return quotedFields;
+        }
+
+        /**
+         * The fraction of the fields that were quoted, or 0 if there were none.
+         */
+        public double getQuotedRatio() {
+            return fields == 0 ? 0 : (double) quotedFields / fields;
+        }
+
+        /**
+         * The chars (or bytes, for byte input) read from the input, or written
+         * by a formatter.
+         */
+        public long getInputChars() {
+            return inputChars;
+        }
+
+        public long getMaxFieldLength() {
+            return maxFieldLength;
+        }
+
+        /**
+         * The length of the longest row, in chars, not counting delimiters,
+         * quotes and line endings.
+         */
+        public long getMaxRowLength() {
+            return maxRowLength;
+        }
+
+        /**
+         * The number of times the parser had to wait for the next chunk or
+         * buffer of input.
+         */
+        public long getRefills() {
+            return refills;
+        }
+
+        /**
+         * The total time spent waiting for input, in nanoseconds.
+         */
+        public long getRefillNanos() {
+            return refillNanos;
+        }
+
+        public long getCommentLines() {
+            return commentLines;
+        }
+
+        @Override
+        public String toString() {
+            return "CsvMetrics{rows=" + rows + ", fields=" + fields + ", quotedRatio="
+                    + String.format("%.3f", getQuotedRatio()) + ", inputChars=" + inputChars
+                    + ", maxFieldLength=" + maxFieldLength + ", maxRowLength=" + maxRowLength
+                    + ", refills=" + refills + ", refillMillis=" + TimeUnit.NANOSECONDS.toMillis(refillNanos)
+                    + ", commentLines=" + commentLines + "}";
+        }
+    }
+
+    public CsvMetrics() {
+        this(DEFAULT_PUBLISH_INTERVAL);
+    }
+
+    /**
+     * @param publishInterval the number of rows between published snapshots
+     */
+    public CsvMetrics(int publishInterval) {
+        if (publishInterval <= 0) {
+            throw new IllegalArgumentException("Invalid publish interval " + publishInterval);
+        }
+        this.publishInterval = publishInterval;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the current values.  Only call this from the thread that is
+     * parsing; other threads should use getPublished().
+     */
+    public Snapshot snapshot() {
+        long input = inputPosition != null ? inputPosition.getAsLong() : inputChars;
+        return new Snapshot(rows, fields, quotedFields, input, maxFieldLength, maxRowLength,
+                refills, refillNanos, commentLines);
+    }
+
+    /**
+     * Returns the last published snapshot.  Safe to call from any thread.
+     */
+    public Snapshot getPublished() {
+        return published;
+    }
+
+    /**
+     * Publishes a snapshot now, e.g. when stopping part way through the input.
+     */
+    public void publish() {
+        unpublished = 0;
+        Snapshot snapshot = snapshot();
+        published = snapshot;
+        for (Listener listener : listeners) {
+            listener.published(snapshot);
+        }
+    }
+
+    /**
+     * Registers an MXBean for these metrics with the platform MBeanServer,
+     * as org.sjj.csvstream:type=CsvMetrics,name=(name).
+     *
+     * @return the name it was registered under, for unregistering it
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("org.sjj.csvstream:type=CsvMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(this), objectName);
+        return objectName;
+    }
+
+    /**
+     * Counts one parsed row.
+     */
+    void row(CsvRow row) {
+        int count = row.size();
+        long rowLength = 0;
+        for (int i = 0; i < count; i++) {
+            int length = row.getLength(i);
+            rowLength += length;
+            if (length > maxFieldLength) {
+                maxFieldLength = length;
+            }
+            if (row.isQuoted(i)) {
+                quotedFields++;
+            }
+        }
+        endRow(count, rowLength);
+    }
+
+    /**
+     * Counts one formatted row.
+     */
+    void formatted(String[] row, int quoted, int formattedLength) {
+        long rowLength = 0;
+        for (String field : row) {
+            rowLength += field.length();
+            if (field.length() > maxFieldLength) {
+                maxFieldLength = field.length();
+            }
+        }
+        quotedFields += quoted;
+        inputChars += formattedLength;
+        endRow(row.length, rowLength);
+    }
+
+    private void endRow(int count, long rowLength) {
+        rows++;
+        fields += count;
+        if (rowLength > maxRowLength) {
+            maxRowLength = rowLength;
+        }
+        if (++unpublished == publishInterval) {
+            publish();
+        }
+    }
+
+    void refill(int length, long nanos) {
+        refills++;
+        refillNanos += nanos;
+        if (length > 0) {
+            inputChars += length;
+        }
+    }
+
+    /**
+     * Publishes the final values once the input has run out.
+     */
+    void end() {
+        if (unpublished > 0 || published == EMPTY) {
+            publish();
+        }
+    }
+
+    private static final class MXBean implements CsvMetricsMXBean {
+        private final CsvMetrics  metrics;
+
+        MXBean(CsvMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public long getRows() {
+            return metrics.getPublished().getRows();
+        }
+
+        @Override
+        public long getFields() {
+            return metrics.getPublished().getFields();
+        }
+
+        @Override
+        public long getQuotedFields() {
+            return metrics.getPublished().getQuotedFields();
+        }
+
+        @Override
+        public double getQuotedRatio() {
+            return metrics.getPublished().getQuotedRatio();
+        }
+
+        @Override
+        public long getInputChars() {
+            return metrics.getPublished().getInputChars();
+        }
+
+        @Override
+        public long getMaxFieldLength() {
+            return metrics.getPublished().getMaxFieldLength();
+        }
+
+        @Override
+        public long getMaxRowLength() {
+            return metrics.getPublished().getMaxRowLength();
+        }
+
+        @Override
+        public long getRefills() {
+            return metrics.getPublished().getRefills();
+        }
+
+        @Override
+        public long getRefillMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(metrics.getPublished().getRefillNanos());
+        }
+
+        @Override
+        public long getCommentLines() {
+            return metrics.getPublished().getCommentLines();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.sjj.csvstream;
+
+/**
+ * The JMX view of a CsvMetrics, see CsvMetrics.registerMBean().  The values
+ * are those of the last published snapshot.
+ */
+public interface CsvMetricsMXBean {
+    long getRows();
+
+    long getFields();
+
+    long getQuotedFields();
+
+    double getQuotedRatio();
+
+    long getInputChars();
+
+    long getMaxFieldLength();
+
+    long getMaxRowLength();
+
+    long getRefills();
+
+    long getRefillMillis();
+
+    long getCommentLines();
+}
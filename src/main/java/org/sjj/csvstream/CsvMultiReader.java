@@ -0,0 +1,360 @@
+package org.sjj.csvstream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads many CSV files (e.g. the daily partitions of one dataset) as one
+ * stream of rows, parsing several files at a time.
+ *
+ * Each file is parsed by a task on a pool of at most threads threads.  The
+ * tasks hand their rows over in batches through one bounded queue, so a
+ * consumer that falls behind blocks the parsers instead of letting parsed
+ * rows pile up: at most about (queueSize + threads) * batchSize rows are in
+ * memory at once.  Rows of one file keep their order, but rows of different
+ * files are interleaved.
+ *
+ * With a header, every file must have the same header fields as the first
+ * file, otherwise the stream fails with an IllegalStateException naming the
+ * file.  Each row can also be tagged with its file and its row number there,
+ * see rows().
+ *
+ * E.g.
+ *    try (CsvMultiReader reader = new CsvMultiReader(CsvConfig.DEFAULTS, CsvMultiReader.list(dir, "*.csv"));
+ *         Stream<String[]> rows = reader.stream()) {
+ *        long count = rows.filter(row -> row[2].equals("GBP")).count();
+ *    }
+ */
+public final class CsvMultiReader implements Closeable {
+    // Constants
+    public static final int       DEFAULT_BATCH_SIZE = 256;
+    public static final int       DEFAULT_QUEUE_SIZE = 64;
+
+    // Private bits
+    private final CsvConfig       config;
+    private final List<Path>      files;
+    private final Charset         charset;
+    private final String[]        headerFields;
+
+    // Private bits - Mutable state
+    private int                   threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private int                   batchSize = DEFAULT_BATCH_SIZE;
+    private int                   queueSize = DEFAULT_QUEUE_SIZE;
+    private ExecutorService       executor;
+    private BlockingQueue<Batch>  queue;
+    private int                   running;           // files not finished yet, seen by the consumer
+    private Iterator<Row>         current = Collections.emptyIterator();
+    private volatile boolean      closed;
+
+    /**
+     * A row tagged with where it came from.
+     */
+    public static final class Row {
+        private final Path        source;
+        private final long        rowNumber;
+        private final String[]    fields;
+
+        Row(Path source, long rowNumber, String[] fields) {
+            this.source = source;
+            this.rowNumber = rowNumber;
+            this.fields = fields;
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        /**
+         * The number of the row in its file, from 0, not counting the header.
+         */
+        public long getRowNumber() {
+            return rowNumber;
+        }
+
+        public String[] getFields() {
+            return fields;
+        }
+
+        @Override
+        public String toString() {
+            return source + ":" + rowNumber + " " + Arrays.toString(fields);
+        }
+    }
+
+    /**
+     * A batch of rows from one file, or the end of a file, or a failure.
+     */
+    private static final class Batch {
+        final List<Row>           rows;
+        final RuntimeException    failure;
+
+        Batch(List<Row> rows, RuntimeException failure) {
+            this.rows = rows;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Reads UTF-8 files.
+     */
+    public CsvMultiReader(CsvConfig config, List<Path> files) throws IOException {
+        this(config, files, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads files in the given charset.  The header of the first file is read
+     * straight away, as the header of the whole set.
+     */
+    public CsvMultiReader(CsvConfig config, List<Path> files, Charset charset) throws IOException {
+        this.config = config;
+        this.files = new ArrayList<>(files);
+        this.charset = charset;
+        String[] header = null;
+        if (config.isHeaderFlag() && !files.isEmpty()) {
+            try (CsvParser parser = open(files.get(0))) {
+                header = parser.getHeaderFields();
+            }
+        }
+        this.headerFields = header;
+    }
+
+    /**
+     * Lists the files of a directory that match a glob pattern (e.g.
+     * "2016-*.csv"), sorted by name.
+     */
+    public static List<Path> list(Path dir, String glob) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(dir, glob)) {
+            for (Path path : paths) {
+                if (Files.isRegularFile(path)) {
+                    files.add(path);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Parses at most this many files at a time.  The default is the number
+     * of processors.
+     */
+    public CsvMultiReader setThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Invalid thread count " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Hands rows over batchSize at a time, through a queue of at most
+     * queueSize batches.
+     */
+    public CsvMultiReader setQueue(int batchSize, int queueSize) {
+        if (batchSize <= 0 || queueSize <= 0) {
+            throw new IllegalArgumentException("Invalid batch size " + batchSize + " or queue size " + queueSize);
+        }
+        this.batchSize = batchSize;
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    /**
+     * Returns the header fields of the first file, which all of the files
+     * must share, or null if there is no header.
+     */
+    public String[] getHeaderFields() {
+        return headerFields;
+    }
+
+    public List<Path> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * Returns all of the rows of all of the files.  Closing the stream stops
+     * the parsing.
+     */
+    public Stream<String[]> stream() {
+        return rows().map(Row::getFields);
+    }
+
+    /**
+     * Returns all of the rows of all of the files, tagged with their file
+     * and row number.  Closing the stream stops the parsing.
+     */
+    public Stream<Row> rows() {
+        start();
+        Iterator<Row> iterator = new Iterator<Row>() {
+            @Override
+            public boolean hasNext() {
+                return advance();
+            }
+
+            @Override
+            public Row next() {
+                if (!advance()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Passes the rows to the consumer a batch at a time, on the calling
+     * thread, and returns once every file has been read.  The rows of a batch
+     * all come from the same file, in order.
+     */
+    public void forEachBatch(Consumer<List<Row>> consumer) {
+        start();
+        try {
+            Batch batch;
+            while ((batch = nextBatch()) != null) {
+                consumer.accept(batch.rows);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private synchronized void start() {
+        if (executor != null || closed) {
+            throw new IllegalStateException("A CsvMultiReader can only be read once");
+        }
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())), r -> {
+            Thread thread = new Thread(r, "csv-multi-reader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        queue = new ArrayBlockingQueue<>(queueSize);
+        running = files.size();
+        for (Path file : files) {
+            executor.execute(() -> read(file));
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Parses one file into the queue, followed by an empty batch to mark its
+     * end, or by a failure.
+     */
+    private void read(Path file) {
+        try {
+            RuntimeException failure = null;
+            try (CsvParser parser = open(file)) {
+                if (headerFields != null && !Arrays.equals(headerFields, parser.getHeaderFields())) {
+                    throw new IllegalStateException("The header of " + file + " is "
+                            + Arrays.toString(parser.getHeaderFields()) + ", not " + Arrays.toString(headerFields));
+                }
+                List<Row> rows = new ArrayList<>(batchSize);
+                long rowNumber = 0;
+                String[] fields;
+                while (!closed && (fields = parser.split()) != null) {
+                    rows.add(new Row(file, rowNumber++, fields));
+                    if (rows.size() == batchSize) {
+                        queue.put(new Batch(rows, null));
+                        rows = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!rows.isEmpty()) {
+                    queue.put(new Batch(rows, null));
+                }
+            } catch (IOException e) {
+                failure = new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            queue.put(new Batch(Collections.<Row>emptyList(), failure));
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private CsvParser open(Path file) throws IOException {
+        if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)) {
+            return CsvParser.open(config, file);
+        }
+        return new CsvParser(config, Files.newBufferedReader(file, charset));
+    }
+
+    /**
+     * Returns the next batch with rows, or null once every file is done.
+     */
+    private Batch nextBatch() {
+        while (running > 0) {
+            if (closed) {
+                throw new IllegalStateException("The CsvMultiReader has been closed");
+            }
+            Batch batch;
+            try {
+                batch = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new IllegalStateException("Interrupted while waiting for rows", e);
+            }
+            if (batch.failure != null) {
+                close();
+                throw batch.failure;
+            }
+            if (batch.rows.isEmpty()) {
+                running--;
+            } else {
+                return batch;
+            }
+        }
+        return null;
+    }
+
+    private boolean advance() {
+        while (!current.hasNext()) {
+            Batch batch = nextBatch();
+            if (batch == null) {
+                return false;
+            }
+            current = batch.rows.iterator();
+        }
+        return true;
+    }
+
+    /**
+     * Stops parsing.  Parsers blocked on the full queue are interrupted.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,35 +1,65 @@
 package org.sjj.csvstream;
 
-import java.io.FileReader;
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Spliterator;
 import java.util.Spliterators;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
-public class CsvParser {
+public class CsvParser implements Closeable {
     // Constants
     private static final char     LF_CHAR = '\n';
     private static final char     CR_CHAR = '\r';
+    private static final long     LF_PATTERN = Swar.pattern(LF_CHAR);
+    private static final long     CR_PATTERN = Swar.pattern(CR_CHAR);
+    // Short fields are cheaper to read a byte at a time, so the word-at-a-time
+    // scan only kicks in once a field has this many chars.
+    private static final int      SWAR_MIN_RUN = 8;
+    // Stands in for a char that is disabled in the config, and never matches.
+    private static final int      NO_CHAR = -2;
+    // Returned by the strict field parsers when the line ending has been read.
+    private static final int      END_OF_RECORD = -3;
+    private static final int      SKIP = -2;        // the slot of a column outside the projection
 
     // Private bits
-    private final CharIterator    iter;
+    private final ParserInput     iter;
+    private final boolean         byteInput;
+    private final ByteBufferIterator bytes;         // non-null if runs can be scanned in bulk
+    private final long            delimPattern;
+    private final long            quotePattern;
     private final char            quote;
+    private final int             openQuote;        // the quote, or NO_CHAR if quotes are disabled
     private final char            delim;
     private final char            comment;
     private final boolean         enableComments;
-    private final List<String>    fields = new ArrayList<>();
-    private final StringBuilder   sb = new StringBuilder();
-    private final String[]        headerFields;
+    private final int             eol;              // the char that ends a record, or NO_CHAR for any CR or LF
+    private final int             eol2;             // the char that must follow eol, or NO_CHAR
+    private final long            eolPattern;
+    private final boolean         simple;           // one char line ending, no quotes and no comments
+    private final CsvRow          row;
+    private final CsvConfig       config;
+    private final String[]        givenHeaderFields;
+    private final BufferPool      pool;
+
+    // Private bits - Mutable state
+    private String[]              headerFields;
+    private boolean               closed;
+    private int                   highBits;
+    private long                  rowCount;
+    private CsvHandler            handler;
+    private int[]                 slots;            // source column -> projected position, or -1
+    private int                   projectedCount;
+    private CsvMetrics            metrics;
 
     public static CsvParser defaultParser(Reader reader) {
         return new CsvParser(CsvConfig.DEFAULTS, reader);
@@ -40,35 +70,253 @@ public class CsvParser {
     }
 
     public CsvParser(CsvConfig config, Reader r, String[] headerFields) {
-        this.iter = new CharIterator(r);
+        this(config, new CharIterator(r, config.getBufferSize(), config.getBufferCount(), config.getBufferPool()),
+                headerFields);
+    }
+
+    /**
+     * Parses UTF-8 (or plain ASCII) encoded bytes straight from a ByteBuffer,
+     * from its position to its limit.  The position of the given buffer is
+     * left untouched.  As with the other byte inputs (open, openGzip), the
+     * delimiter, quote and comment chars must be ASCII.
+     *
+     * @throws IllegalArgumentException if one of them is not
+     */
+    public CsvParser(CsvConfig config, ByteBuffer buffer) {
+        this(config, new ByteBufferIterator(buffer.duplicate()), null);
+    }
+
+    /**
+     * Memory maps a UTF-8 (or plain ASCII) encoded file and parses its bytes
+     * directly, without going through a Reader.  This is usually a lot faster
+     * than a FileReader for large files.
+     */
+    public static CsvParser open(CsvConfig config, Path path) throws IOException {
+        return new CsvParser(config, new ByteBufferIterator(ByteBufferIterator.map(path)), null);
+    }
+
+    /**
+     * Parses a gzip compressed UTF-8 (or plain ASCII) file.  Block gzip (BGZF)
+     * files are decompressed in parallel on the common ForkJoinPool, and any
+     * other gzip file is decompressed on a thread of its own, so the caller's
+     * thread only has to parse.
+     */
+    public static CsvParser openGzip(CsvConfig config, Path path) throws IOException {
+        return openGzip(config, path, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Like openGzip(CsvConfig, Path), with the BGZF blocks decompressed on the
+     * given Executor.
+     */
+    public static CsvParser openGzip(CsvConfig config, Path path, Executor executor) throws IOException {
+        GzipInput input = GzipInput.open(path, executor);
+        try {
+            return new CsvParser(config, new ByteBufferIterator(input), null);
+        } catch (UncheckedIOException e) {
+            // while reading the header
+            input.close();
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    CsvParser(CsvConfig config, ParserInput input, String[] headerFields) {
+        if (input.isByteInput()) {
+            // the bytes are matched one at a time, so these must be single byte UTF-8 chars
+            ascii(config.getDelimiter());
+            ascii(config.getQuote());
+            ascii(config.getComment());
+        }
+        this.iter = input;
+        this.byteInput = input.isByteInput();
+        this.bytes = input instanceof ByteBufferIterator ? (ByteBufferIterator) input : null;
         this.quote = config.getQuote();
+        this.openQuote = config.getQuotesEnabled() ? quote : NO_CHAR;
         this.delim = config.getDelimiter();
+        this.delimPattern = Swar.pattern(delim);
+        this.quotePattern = Swar.pattern(quote);
         this.comment = config.getComment();
         this.enableComments = config.getCommentsEnabled();
+        NewLineType newLineType = config.getNewLineType();
+        this.eol = newLineType == null ? NO_CHAR : newLineType.first();
+        this.eol2 = newLineType == null || newLineType.second() < 0 ? NO_CHAR : newLineType.second();
+        this.eolPattern = newLineType == null ? LF_PATTERN : Swar.pattern(newLineType.first());
+        this.simple = newLineType != null && eol2 == NO_CHAR && openQuote == NO_CHAR && !enableComments;
+        this.config = config;
+        this.givenHeaderFields = headerFields;
+        this.pool = config.getBufferPool();
+        this.row = pool != null ? new CsvRow(pool.borrow(CsvRow.INITIAL_BUFFER_SIZE)) : new CsvRow();
+        if (config.getStringCacheSize() > 0) {
+            row.enableStringCache(config.getStringCacheSize(), config.getStringCacheColumns());
+        }
+        readHeader();
+    }
+
+    private static void ascii(char ch) {
+        if (ch > 0x7f) {
+            throw new IllegalArgumentException("Byte input requires ASCII delimiter, quote and comment chars: " + ch);
+        }
+    }
 
+    /**
+     * Reads the header (if the config says there is one) and sets up the
+     * projection, which may depend on the header.
+     */
+    private void readHeader() {
+        String[] headerFields = givenHeaderFields;
+        String[] header;
+        this.slots = null;
         if (config.isHeaderFlag()) {
             // If the user configuration is setup to read in a header,
             // read it in.  Get the first non-comment row.
-            String[] headersFromFile = split();
+            CsvMetrics rowMetrics = metrics;
+            metrics = null;    // the header is not a row
+            String[] headersFromFile = readRow() ? row.toUncachedArray() : null;
+            metrics = rowMetrics;
 
             if (headerFields == null) {
-                this.headerFields = headersFromFile;
+                header = headersFromFile;
             } else {
                 // If the user specified the headerFields directly, this takes precedence
                 // the header that may have been in the file.
                 // The subtle side effect here is that the header has been consumed from the file
                 // by the split() above.
-                this.headerFields = headerFields;
+                header = headerFields;
             }
         } else {
-            this.headerFields = headerFields;
+            header = headerFields;
         }
+
+        // The header itself is never projected, so the projection is set up after reading it.
+        int[] projection = resolveProjection(config, header);
+        if (projection != null) {
+            this.projectedCount = projection.length;
+            int width = 0;
+            for (int column : projection) {
+                width = Math.max(width, column + 1);
+            }
+            this.slots = new int[width];
+            Arrays.fill(slots, -1);
+            for (int i = 0; i < projection.length; i++) {
+                slots[projection[i]] = i;
+            }
+            header = projectHeader(header, projection);
+        }
+        this.headerFields = header;
+        this.rowCount = 0;
+    }
+
+    /**
+     * Starts over on another Reader, e.g. the next of many small files, with
+     * the same config, buffers and string caches.  The current Reader is
+     * closed, and the header (if any) is read from the new one.
+     *
+     * @throws IllegalStateException if the parser doesn't read from a Reader,
+     *         or has been closed
+     */
+    public void reset(Reader reader) {
+        if (!(iter instanceof CharIterator)) {
+            throw new IllegalStateException("Only a parser reading from a Reader can be reset");
+        }
+        if (closed) {
+            throw new IllegalStateException("The parser has been closed");
+        }
+        try {
+            ((CharIterator) iter).reset(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        row.clear();
+        readHeader();
+    }
+
+    /**
+     * Closes the input (e.g. the Reader), and gives any pooled buffers back
+     * to the pool (see CsvConfig.withBufferPool()).  Rows returned by
+     * nextRow() must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            iter.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (pool != null) {
+                pool.release(row.buf);
+                row.buf = null;
+            }
+        }
+    }
+
+    static String[] projectHeader(String[] header, int[] projection) {
+        if (header == null || projection == null) {
+            return header;
+        }
+        String[] projectedHeader = new String[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            projectedHeader[i] = projection[i] < header.length ? header[projection[i]] : "";
+        }
+        return projectedHeader;
+    }
+
+    static int[] resolveProjection(CsvConfig config, String[] header) {
+        String[] names = config.getProjectionNames();
+        if (names == null) {
+            return config.getProjection();
+        }
+        if (header == null) {
+            throw new IllegalArgumentException("A projection by name requires header fields");
+        }
+        int[] projection = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            projection[i] = -1;
+            for (int h = 0; h < header.length; h++) {
+                if (header[h].equals(names[i])) {
+                    projection[i] = h;
+                    break;
+                }
+            }
+            if (projection[i] == -1) {
+                throw new IllegalArgumentException("Unknown column in projection: " + names[i]);
+            }
+        }
+        return projection;
     }
 
     public String[] getHeaderFields() {
         return this.headerFields;
     }
 
+    /**
+     * Returns the string cache of a column (of the rows as returned, so after
+     * any projection), e.g. to check its hit rate, or null if the column isn't
+     * cached or hasn't been seen yet.
+     */
+    public StringCache getStringCache(int column) {
+        return row.getStringCache(column);
+    }
+
+    /**
+     * Starts counting rows, fields, input and refill time into the metrics,
+     * or stops counting if metrics is null.  The header is not counted.
+     */
+    public void setMetrics(CsvMetrics metrics) {
+        this.metrics = metrics;
+        iter.setMetrics(metrics);
+    }
+
+    public CsvMetrics getMetrics() {
+        return metrics;
+    }
+
     private boolean isNewline(int ch) {
         if (ch == LF_CHAR || ch == CR_CHAR) {
             if (iter.hasNext()) {
@@ -80,16 +328,6 @@ public class CsvParser {
             return true;
         }
         return false;
-//
-//        NewLineType nlt = NewLineType.LF;
-//        if (nlt == NewLineType.LF)
-//            return ch == LF_CHAR;
-//        else if (nlt == NewLineType.CR)
-//            return ch == CR_CHAR;
-//        else if (nlt == NewLineType.CRLF)
-//            return (ch == CR_CHAR && iter.getPrevInt() == LF_CHAR);
-//        else
-//            return (ch == LF_CHAR && iter.getPrevInt() == CR_CHAR);
     }
 
     public Stream<String[]> splitLines() {
@@ -109,8 +347,52 @@ public class CsvParser {
     }
 
 
-    private int parseQuotedField() {
-        this.sb.setLength(0);
+    /**
+     * Streams the records of a file using a CsvFileSpliterator, so that calling
+     * parallel() on the returned stream spreads the parsing across threads.
+     * The returned stream should be closed to release the file.
+     */
+    public static Stream<String[]> splitLines(CsvConfig config, Path path) throws IOException {
+        return CsvFileSpliterator.open(config, path).stream();
+    }
+
+    /**
+     * Ends the field that was appended to the row buffer from start onwards,
+     * trimming leading and trailing whitespace.  For byte input the buffer
+     * holds one char per byte, so a field with any non-ASCII byte is decoded
+     * from UTF-8 in place here.
+     */
+    private void endField(int start, boolean quoted, int slot) {
+        char[] buf = row.buf;
+        int end = row.length;
+        while (start < end && buf[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buf[end - 1] <= ' ') {
+            end--;
+        }
+        if (byteInput && (highBits & 0x80) != 0) {
+            end = Utf8.decodeInPlace(buf, start, end);
+        }
+        if (slot < 0) {
+            row.addField(start, end, quoted);
+            slot = row.count - 1;
+        } else {
+            row.setField(slot, start, end, quoted);
+        }
+        if (handler != null) {
+            handler.field(slot, buf, start, end - start, quoted);
+        }
+    }
+
+    /**
+     * Parses a quoted field into the row buffer.  The field is added to the
+     * end of the row if slot is -1, otherwise it is stored at that position
+     * of the projected row.
+     */
+    private int parseQuotedField(int slot) {
+        int start = row.length;
+        this.highBits = 0;
         int ch = iter.nextInt();
         while (ch != -1) {
             if (ch == quote) {
@@ -120,121 +402,400 @@ public class CsvParser {
                     break;
                 } else if (ch == quote) {
                     // quote quote seen together, so this isn't the end of the field.
-                    sb.append(quote);
+                    row.append(quote);
                     ch = iter.nextInt();
                     continue;
                 }
                 // Technically an illegal quote, but we can just add it.
                 // still not the end of the field.
-                sb.append(quote);
+                row.append(quote);
+            }
+            row.append(ch);
+            highBits |= ch;
+            if (bytes != null && row.length - start >= SWAR_MIN_RUN) {
+                // everything up to the next quote is part of the field
+                highBits |= bytes.copyRun(row, quotePattern, quotePattern, quotePattern);
             }
-            sb.append((char)ch);
             ch = iter.nextInt();
         }
-        fields.add(sb.toString().trim());
+        endField(start, true, slot);
         return ch;
     }
 
-    private int parseField(int ch) {
-        this.sb.setLength(0);
+    private int parseField(int ch, int slot) {
+        int start = row.length;
+        this.highBits = 0;
 
         while (ch != delim && !isNewline(ch)  && ch != -1) {
-            sb.append((char)ch);
+            row.append(ch);
+            highBits |= ch;
+            if (bytes != null && row.length - start >= SWAR_MIN_RUN) {
+                highBits |= bytes.copyRun(row, delimPattern, CR_PATTERN, LF_PATTERN);
+            }
             ch = iter.nextInt();
         }
-        fields.add(sb.toString().trim());
+        endField(start, false, slot);
         return ch;//(ch != -1 && !isNewline(ch));
     }
 
-    private void consumeComment() {
+    /**
+     * Skips over a quoted field that is not part of the projection, following
+     * the same rules as parseQuotedField() but without copying anything.
+     */
+    private int skipQuotedField() {
+        int run = 0;
         int ch = iter.nextInt();
-        while (!isNewline(ch) && ch != -1) {
+        while (ch != -1) {
+            if (ch == quote) {
+                ch = iter.nextInt();
+                if (ch == delim || isNewline(ch) || !iter.hasNext()) {
+                    break;
+                }
+            }
+            if (bytes != null && ++run >= SWAR_MIN_RUN) {
+                bytes.skipRun(quotePattern, quotePattern, quotePattern);
+            }
             ch = iter.nextInt();
         }
+        return ch;
     }
 
-    public final String[] split() {
-        fields.clear();
-        sb.setLength(0);
+    private int skipField(int ch) {
+        int run = 0;
+        while (ch != delim && !isNewline(ch)  && ch != -1) {
+            if (bytes != null && ++run >= SWAR_MIN_RUN) {
+                bytes.skipRun(delimPattern, CR_PATTERN, LF_PATTERN);
+            }
+            ch = iter.nextInt();
+        }
+        return ch;
+    }
 
-        if (!iter.hasNext()) {
-            return null;
+    private void consumeComment() {
+        if (metrics != null) {
+            metrics.commentLines++;
         }
+        int ch = iter.nextInt();
+        while (!isNewline(ch) && ch != -1) {
+            ch = iter.nextInt();
+        }
+    }
 
+    /**
+     * Parses the fields of a row, ending it at any CR or LF.
+     */
+    private void readFields() {
         boolean moreFields = true;
+        int column = 0;
         while (moreFields) {
             int ch = iter.nextInt();
             if (enableComments && ch == comment) {
                 consumeComment();
-            } else if (ch == quote) {
-                ch = parseQuotedField();
+            } else if (slots == null) {
+                if (ch == openQuote) {
+                    ch = parseQuotedField(-1);
+                } else {
+                    ch = parseField(ch, -1);
+                }
             } else {
-                ch = parseField(ch);
+                int slot = column < slots.length ? slots[column] : -1;
+                if (slot >= 0) {
+                    ch = ch == openQuote ? parseQuotedField(slot) : parseField(ch, slot);
+                } else {
+                    ch = ch == openQuote ? skipQuotedField() : skipField(ch);
+                }
+                column++;
             }
 
             if (ch == -1 || isNewline(ch)) {
                 moreFields = false;
             }
         }
+    }
 
-        return fields.toArray(new String[fields.size()]);
+    /**
+     * Parses the fields of a row when the config guarantees a one char line
+     * ending and no quotes or comments, and nothing is projected: each char
+     * is only compared with the delimiter and the line ending.
+     */
+    private void readSimpleFields() {
+        int ch;
+        do {
+            int start = row.length;
+            this.highBits = 0;
+            ch = iter.nextInt();
+            while (ch != delim && ch != eol && ch != -1) {
+                row.append(ch);
+                highBits |= ch;
+                if (bytes != null && row.length - start >= SWAR_MIN_RUN) {
+                    highBits |= bytes.copyRun(row, delimPattern, eolPattern, eolPattern);
+                }
+                ch = iter.nextInt();
+            }
+            endField(start, false, -1);
+        } while (ch == delim);
     }
 
-    private Map<String, String> toMap(String[] header, String[] values) {
-        Map<String, String> map = new LinkedHashMap<>();
+    /**
+     * Parses the fields of a row that ends at the config's line ending.
+     */
+    private void readStrictFields() {
+        int column = 0;
+        int ch;
+        do {
+            ch = iter.nextInt();
+            if (enableComments && ch == comment) {
+                // as in readFields(), the row carries on after the comment
+                consumeStrictComment();
+                ch = delim;
+                continue;
+            }
+            if (slots == null) {
+                ch = ch == openQuote ? parseStrictQuotedField(-1) : parseStrictField(ch, -1);
+            } else {
+                int slot = column < slots.length ? slots[column] : -1;
+                if (slot >= 0) {
+                    ch = ch == openQuote ? parseStrictQuotedField(slot) : parseStrictField(ch, slot);
+                } else {
+                    ch = ch == openQuote ? parseStrictQuotedField(SKIP) : parseStrictField(ch, SKIP);
+                }
+                column++;
+            }
+        } while (ch == delim);
+    }
 
-        for (int i = 0; i < header.length; i++) {
-            // If the data line doesn't contain enough fields or doesn't match the header length,
-            // we are going to do our best to fill out a map that contains the entries that it does have.
-            if (i >= values.length) {
+    /**
+     * Returns true if ch is the config's line ending, reading the second char
+     * of a two char line ending.
+     */
+    private boolean endsRecord(int ch) {
+        if (ch != eol) {
+            return false;
+        }
+        if (eol2 == NO_CHAR) {
+            return true;
+        }
+        if (iter.hasNext() && iter.peekNext() == eol2) {
+            iter.nextInt();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Like parseField(), but only the config's line ending ends the row.  The
+     * field is skipped over without being copied if slot is SKIP.
+     *
+     * @return the delimiter, END_OF_RECORD or -1 at the end of the input
+     */
+    private int parseStrictField(int ch, int slot) {
+        int start = row.length;
+        this.highBits = 0;
+        int run = 0;
+        while (ch != delim && ch != -1) {
+            if (endsRecord(ch)) {
+                ch = END_OF_RECORD;
                 break;
             }
-            map.put(header[i], values[i]);
+            if (slot == SKIP) {
+                if (bytes != null && ++run >= SWAR_MIN_RUN) {
+                    bytes.skipRun(delimPattern, eolPattern, eolPattern);
+                }
+            } else {
+                row.append(ch);
+                highBits |= ch;
+                if (bytes != null && row.length - start >= SWAR_MIN_RUN) {
+                    highBits |= bytes.copyRun(row, delimPattern, eolPattern, eolPattern);
+                }
+            }
+            ch = iter.nextInt();
+        }
+        if (slot != SKIP) {
+            endField(start, false, slot);
         }
-        return map;
+        return ch;
     }
 
+    /**
+     * Like parseQuotedField(), but only the config's line ending ends the row.
+     * The field is skipped over without being copied if slot is SKIP.
+     *
+     * @return the delimiter, END_OF_RECORD or -1 at the end of the input
+     */
+    private int parseStrictQuotedField(int slot) {
+        int start = row.length;
+        this.highBits = 0;
+        boolean copy = slot != SKIP;
+        int ch = iter.nextInt();
+        while (ch != -1) {
+            if (ch == quote) {
+                ch = iter.nextInt();
+                if (ch == delim || ch == -1) {
+                    break;
+                }
+                if (endsRecord(ch)) {
+                    ch = END_OF_RECORD;
+                    break;
+                }
+                if (ch == quote) {
+                    // quote quote seen together, so this isn't the end of the field.
+                    if (copy) {
+                        row.append(quote);
+                    }
+                    ch = iter.nextInt();
+                    continue;
+                }
+                // an illegal quote, kept as part of the field
+                if (copy) {
+                    row.append(quote);
+                }
+            }
+            if (copy) {
+                row.append(ch);
+                highBits |= ch;
+                if (bytes != null && row.length - start >= SWAR_MIN_RUN) {
+                    highBits |= bytes.copyRun(row, quotePattern, quotePattern, quotePattern);
+                }
+            } else if (bytes != null) {
+                bytes.skipRun(quotePattern, quotePattern, quotePattern);
+            }
+            ch = iter.nextInt();
+        }
+        if (copy) {
+            endField(start, true, slot);
+        }
+        return ch;
+    }
+
+    private void consumeStrictComment() {
+        if (metrics != null) {
+            metrics.commentLines++;
+        }
+        int ch = iter.nextInt();
+        while (ch != -1 && !endsRecord(ch)) {
+            ch = iter.nextInt();
+        }
+    }
+
+    /**
+     * Parses the next row into the row buffer.
+     *
+     * @return false if there are no more rows
+     */
+    private boolean readRow() {
+        row.clear();
+
+        if (!iter.hasNext()) {
+            if (metrics != null) {
+                metrics.end();
+            }
+            return false;
+        }
+        if (handler != null) {
+            handler.startRow(rowCount);
+        }
+        if (slots != null) {
+            row.clearFields(projectedCount);
+        }
+
+        if (eol == NO_CHAR) {
+            readFields();
+        } else if (simple && slots == null) {
+            readSimpleFields();
+        } else {
+            readStrictFields();
+        }
+        if (handler != null) {
+            handler.endRow();
+        }
+        if (metrics != null) {
+            metrics.row(row);
+        }
+        rowCount++;
+        return true;
+    }
+
+    public final String[] split() {
+        if (!readRow()) {
+            return null;
+        }
+        return row.toArray();
+    }
+
+    /**
+     * Parses the next row without creating a String for any of its fields.
+     * The returned CsvRow is reused for every row, so it is only valid until
+     * the next call to nextRow() or split().
+     *
+     * @return the current row, or null if there are no more rows
+     */
+    public final CsvRow nextRow() {
+        return readRow() ? row : null;
+    }
+
+    /**
+     * Parses all of the remaining rows, pushing each row and field to the
+     * handler as soon as it has been parsed.  Apart from growing the row
+     * buffer for unusually long rows, this does not allocate anything per row.
+     *
+     * @return the number of rows parsed
+     */
+    public final long parse(CsvHandler handler) {
+        this.handler = handler;
+        try {
+            long rows = 0;
+            while (readRow()) {
+                rows++;
+            }
+            return rows;
+        } finally {
+            this.handler = null;
+        }
+    }
+
+    /**
+     * Returns a stream of the rows as read-only maps from the header names to
+     * the fields, in header order, or null if there is no header.  A short row
+     * only has entries for the columns it has.
+     *
+     * The maps only hold the row's fields; the header names and the lookup
+     * of their columns are shared by all of the rows.
+     */
     public Stream<Map<String, String>> mappify() {
         if (this.headerFields != null) {
+            RowMap.Header header = new RowMap.Header(this.headerFields);
             return this.splitLines()
-                    .map(fields -> toMap(this.headerFields, fields));
+                    .map(fields -> new RowMap(header, fields));
         } else {
             return null;
         }
     }
 
+    /**
+     * Returns a stream of the remaining rows bound to objects of the given
+     * class, matched to the header fields, see CsvBinder.
+     *
+     * @throws IllegalArgumentException if there is no header, or the class can't be bound
+     */
+    public <T> Stream<T> bind(Class<T> type) {
+        return CsvBinder.of(type, this).stream(this);
+    }
+
+    /**
+     * Splits one line on commas.  To split many lines, a LineSplitter avoids
+     * setting up a parser for each one.
+     */
     public static String[] split(String s) {
         return split(s, CsvConfig.DEFAULT_DELIMITER);
     }
 
     public static String[] split(String s, char delimiter) {
-        CsvConfig config = new CsvConfig(false, delimiter, CsvConfig.DEFAULT_COMMENT, CsvConfig.DEFAULT_QUOTE, false);
-        return split(config, s);
+        return split(LineSplitter.lineConfig(delimiter), s);
     }
 
     public static String[] split(CsvConfig config, String s) {
-        CsvParser p = new CsvParser(config, new StringReader(s));
-        return p.split();
+        CharSequenceInput input = new CharSequenceInput();
+        input.reset(s);
+        return new CsvParser(config, input, null).split();
     }
-
-    public static void main(String[] args) throws Exception {
-        long start = System.currentTimeMillis();
-        String fileName = "/Users/stephen/removed.csv";
-
-
-        Map<String, List<String[]>> data =
-                Files.readAllLines(Paths.get(fileName))
-                        .stream()
-                        .skip(1)
-                        .map(l -> CsvParser.split(l))
-                        .collect(Collectors.groupingBy(l -> l[0]));
-
-        System.out.println(data.size());
-
-        data = CsvParser.defaultParser(new FileReader(fileName))
-                .splitLines()
-                .collect(Collectors.groupingBy(l -> l[0]));
-        System.out.println(data.size());
-    }
-
 }
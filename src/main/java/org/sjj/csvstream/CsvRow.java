@@ -0,0 +1,447 @@
+package org.sjj.csvstream;
+
+/**
+ * A reusable view of the current row of a CsvParser.  The fields are not
+ * turned into Strings; instead each field is a slice (offset and length) of
+ * the parser's row buffer.  get() exposes a field as a CharSequence, and
+ * getString() creates a String only for the fields you actually want to keep.
+ *
+ * The same CsvRow instance is returned by every call to CsvParser.nextRow(),
+ * so its contents (including any CharSequence handed out by get()) are only
+ * valid until the next call to nextRow() or split().
+ *
+ * E.g.
+ *    CsvRow row;
+ *    while ((row = parser.nextRow()) != null) {
+ *        if (row.get(2).length() > 0) {
+ *            keep.add(row.getString(0));
+ *        }
+ *    }
+ */
+public final class CsvRow {
+    // Constants
+    static final int              INITIAL_BUFFER_SIZE = 1024;
+    private static final int      INITIAL_FIELD_COUNT = 16;
+
+    // Package bits - filled in by the CsvParser
+    char[]                        buf;
+    int                           length;
+    int[]                         starts = new int[INITIAL_FIELD_COUNT];
+    int[]                         ends = new int[INITIAL_FIELD_COUNT];
+    boolean[]                     quoted = new boolean[INITIAL_FIELD_COUNT];
+    int                           count;
+
+    // Private bits
+    private FieldSlice[]          slices = new FieldSlice[INITIAL_FIELD_COUNT];
+    private StringCache[]         caches;           // by column, or null if no column is cached
+    private int                   cacheSize;
+    private boolean               cacheAllColumns;
+
+    CsvRow() {
+        this(new char[INITIAL_BUFFER_SIZE]);
+    }
+
+    CsvRow(char[] buf) {
+        this.buf = buf;
+    }
+
+    void clear() {
+        length = 0;
+        count = 0;
+    }
+
+    /**
+     * Caches the Strings of the given columns, or of all columns if columns
+     * is null, see CsvConfig.withStringCache().
+     */
+    void enableStringCache(int size, int[] columns) {
+        this.cacheSize = size;
+        if (columns == null) {
+            cacheAllColumns = true;
+            caches = new StringCache[INITIAL_FIELD_COUNT];
+            return;
+        }
+        int width = 0;
+        for (int column : columns) {
+            width = Math.max(width, column + 1);
+        }
+        caches = new StringCache[width];
+        for (int column : columns) {
+            caches[column] = new StringCache(size);
+        }
+    }
+
+    /**
+     * Returns the cache of a column, or null if the column isn't cached.
+     */
+    StringCache getStringCache(int column) {
+        return caches != null && column >= 0 && column < caches.length ? caches[column] : null;
+    }
+
+    private StringCache cacheFor(int column) {
+        if (column >= caches.length) {
+            if (!cacheAllColumns) {
+                return null;
+            }
+            StringCache[] bigger = new StringCache[Math.max(caches.length * 2, column + 1)];
+            System.arraycopy(caches, 0, bigger, 0, caches.length);
+            caches = bigger;
+        }
+        StringCache cache = caches[column];
+        if (cache == null && cacheAllColumns) {
+            cache = caches[column] = new StringCache(cacheSize);
+        }
+        return cache;
+    }
+
+    private String string(int index) {
+        StringCache cache = caches == null ? null : cacheFor(index);
+        if (cache != null) {
+            return cache.get(buf, starts[index], ends[index] - starts[index]);
+        }
+        return new String(buf, starts[index], ends[index] - starts[index]);
+    }
+
+    /**
+     * Makes room for at least extra more chars in the row buffer.
+     */
+    void ensureCapacity(int extra) {
+        if (length + extra > buf.length) {
+            char[] bigger = new char[Math.max(buf.length * 2, length + extra)];
+            System.arraycopy(buf, 0, bigger, 0, length);
+            buf = bigger;
+        }
+    }
+
+    void append(int ch) {
+        if (length == buf.length) {
+            char[] bigger = new char[buf.length * 2];
+            System.arraycopy(buf, 0, bigger, 0, length);
+            buf = bigger;
+        }
+        buf[length++] = (char) ch;
+    }
+
+    /**
+     * Sets the row to the given number of empty fields, to be filled in with setField().
+     */
+    void clearFields(int fieldCount) {
+        ensureFields(fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            starts[i] = 0;
+            ends[i] = 0;
+            quoted[i] = false;
+        }
+        count = fieldCount;
+    }
+
+    void setField(int index, int start, int end, boolean isQuoted) {
+        starts[index] = start;
+        ends[index] = end;
+        quoted[index] = isQuoted;
+    }
+
+    private void ensureFields(int fieldCount) {
+        if (fieldCount > starts.length) {
+            int size = Math.max(fieldCount, starts.length * 2);
+            int[] s = new int[size];
+            int[] e = new int[size];
+            boolean[] q = new boolean[size];
+            System.arraycopy(starts, 0, s, 0, count);
+            System.arraycopy(ends, 0, e, 0, count);
+            System.arraycopy(quoted, 0, q, 0, count);
+            starts = s;
+            ends = e;
+            quoted = q;
+        }
+    }
+
+    void addField(int start, int end, boolean isQuoted) {
+        if (count == starts.length) {
+            ensureFields(count + 1);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        quoted[count] = isQuoted;
+        count++;
+    }
+
+    /**
+     * Returns the number of fields in the row.
+     */
+    public int size() {
+        return count;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Field " + index + " of a row with " + count + " fields");
+        }
+    }
+
+    /**
+     * Returns the field at the given index as a CharSequence over the row
+     * buffer.  The returned object is reused for the same index on every row.
+     */
+    public CharSequence get(int index) {
+        checkIndex(index);
+        if (index >= slices.length) {
+            FieldSlice[] bigger = new FieldSlice[Math.max(slices.length * 2, index + 1)];
+            System.arraycopy(slices, 0, bigger, 0, slices.length);
+            slices = bigger;
+        }
+        FieldSlice slice = slices[index];
+        if (slice == null) {
+            slice = new FieldSlice(this, index);
+            slices[index] = slice;
+        }
+        return slice;
+    }
+
+    /**
+     * Creates a String from the field at the given index, or takes it from the
+     * column's cache if CsvConfig.withStringCache() is on.
+     */
+    public String getString(int index) {
+        checkIndex(index);
+        return string(index);
+    }
+
+    /**
+     * Returns the buffer that holds the fields of the current row.  Use
+     * getOffset() and getLength() to find a field in it.
+     */
+    public char[] getBuffer() {
+        return buf;
+    }
+
+    public int getOffset(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    public int getLength(int index) {
+        checkIndex(index);
+        return ends[index] - starts[index];
+    }
+
+    /**
+     * True if the field at the given index was enclosed in quotes.
+     */
+    public boolean isQuoted(int index) {
+        checkIndex(index);
+        return quoted[index];
+    }
+
+    /**
+     * True if the field at the given index is empty (after trimming).
+     */
+    public boolean isEmpty(int index) {
+        checkIndex(index);
+        return ends[index] == starts[index];
+    }
+
+    /**
+     * Parses the field at the given index as an int, without creating a String.
+     *
+     * @throws NumberFormatException if the field is empty or not a valid int
+     */
+    public int getInt(int index) {
+        checkIndex(index);
+        return FieldParsers.parseInt(buf, starts[index], ends[index] - starts[index]);
+    }
+
+    /**
+     * Parses the field at the given index as an int, or returns defaultValue
+     * if the field is empty or not a valid int.
+     */
+    public int getInt(int index, int defaultValue) {
+        if (isEmpty(index)) {
+            return defaultValue;
+        }
+        try {
+            return getInt(index);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parses the field at the given index as a long, without creating a String.
+     *
+     * @throws NumberFormatException if the field is empty or not a valid long
+     */
+    public long getLong(int index) {
+        checkIndex(index);
+        return FieldParsers.parseLong(buf, starts[index], ends[index] - starts[index]);
+    }
+
+    /**
+     * Parses the field at the given index as a long, or returns defaultValue
+     * if the field is empty or not a valid long.
+     */
+    public long getLong(int index, long defaultValue) {
+        if (isEmpty(index)) {
+            return defaultValue;
+        }
+        try {
+            return getLong(index);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parses the field at the given index as a double.  Common decimal values
+     * are parsed without creating a String, and the result is always the same
+     * as Double.parseDouble() would give.
+     *
+     * @throws NumberFormatException if the field is empty or not a valid double
+     */
+    public double getDouble(int index) {
+        checkIndex(index);
+        return FieldParsers.parseDouble(buf, starts[index], ends[index] - starts[index]);
+    }
+
+    /**
+     * Parses the field at the given index as a double, or returns defaultValue
+     * if the field is empty or not a valid double.
+     */
+    public double getDouble(int index, double defaultValue) {
+        if (isEmpty(index)) {
+            return defaultValue;
+        }
+        try {
+            return getDouble(index);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parses the field at the given index as a boolean: true/false, yes/no,
+     * y/n, t/f or 1/0, ignoring case.
+     *
+     * @throws IllegalArgumentException if the field is empty or not one of the above
+     */
+    public boolean getBoolean(int index) {
+        checkIndex(index);
+        return FieldParsers.parseBoolean(buf, starts[index], ends[index] - starts[index]);
+    }
+
+    /**
+     * Parses the field at the given index as a boolean, or returns
+     * defaultValue if the field is empty or not a valid boolean.
+     */
+    public boolean getBoolean(int index, boolean defaultValue) {
+        if (isEmpty(index)) {
+            return defaultValue;
+        }
+        try {
+            return getBoolean(index);
+        } catch (IllegalArgumentException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parses the field at the given index as a timestamp of the form
+     * yyyy-MM-dd[( |T)HH:mm[:ss[.SSS]]][Z|(+|-)HH:mm] and returns it as
+     * milliseconds since the epoch.  Times without a zone are taken as UTC.
+     *
+     * @throws IllegalArgumentException if the field is empty or not in that format
+     */
+    public long getEpochMillis(int index) {
+        checkIndex(index);
+        return FieldParsers.parseEpochMillis(buf, starts[index], ends[index] - starts[index]);
+    }
+
+    /**
+     * Parses the field at the given index as a timestamp (see
+     * getEpochMillis(int)), or returns defaultValue if the field is empty or
+     * not in the expected format.
+     */
+    public long getEpochMillis(int index, long defaultValue) {
+        if (isEmpty(index)) {
+            return defaultValue;
+        }
+        try {
+            return getEpochMillis(index);
+        } catch (IllegalArgumentException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Copies all of the fields into a new String[], as returned by CsvParser.split().
+     */
+    public String[] toArray() {
+        String[] fields = new String[count];
+        for (int i = 0; i < count; i++) {
+            fields[i] = string(i);
+        }
+        return fields;
+    }
+
+    /**
+     * Like toArray(), but bypassing the string caches, e.g. for the header.
+     */
+    String[] toUncachedArray() {
+        String[] fields = new String[count];
+        for (int i = 0; i < count; i++) {
+            fields[i] = new String(buf, starts[i], ends[i] - starts[i]);
+        }
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(buf, starts[i], ends[i] - starts[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * A CharSequence over one field of the current row.
+     */
+    private static final class FieldSlice implements CharSequence {
+        private final CsvRow row;
+        private final int    index;
+
+        FieldSlice(CsvRow row, int index) {
+            this.row = row;
+            this.index = index;
+        }
+
+        @Override
+        public int length() {
+            return row.ends[index] - row.starts[index];
+        }
+
+        @Override
+        public char charAt(int i) {
+            if (i < 0 || i >= length()) {
+                throw new IndexOutOfBoundsException(Integer.toString(i));
+            }
+            return row.buf[row.starts[index] + i];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length() || start > end) {
+                throw new IndexOutOfBoundsException(start + ".." + end);
+            }
+            return new String(row.buf, row.starts[index] + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(row.buf, row.starts[index], length());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.sjj.csvstream;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the rows of a Reader to one subscriber, in batches, parsing only
+ * as many batches as the subscriber has requested.  Nothing waits for
+ * demand: when the subscriber has no outstanding requests no thread is
+ * parsing, and each request(n) schedules a run on the Executor that parses
+ * and delivers up to n batches.  Many inputs can thus share a small pool,
+ * instead of taking a thread each.
+ *
+ * The protocol follows Reactive Streams: onSubscribe(), then onNext() for at
+ * most as many batches as requested, then onComplete() or onError().
+ * Signals are never delivered concurrently.  cancel() stops the parsing and
+ * closes the Reader, as does the end of the input or a failure.  On Java 9
+ * and later, CsvFlowPublisher adapts this to java.util.concurrent.Flow.
+ *
+ * Reading from the Reader still blocks the parsing thread, so the Reader
+ * should be one that has its data at hand (e.g. a buffered upload).
+ *
+ * E.g.
+ *    new CsvRowPublisher(CsvConfig.DEFAULTS, reader, executor, 500).subscribe(new CsvRowPublisher.Subscriber() {
+ *        public void onSubscribe(CsvRowPublisher.Subscription s) { (subscription = s).request(1); }
+ *        public void onNext(List<String[]> rows) { store(rows); subscription.request(1); }
+ *        public void onError(Throwable t) { ... }
+ *        public void onComplete() { ... }
+ *    });
+ */
+public final class CsvRowPublisher {
+    // Constants
+    public static final int       DEFAULT_BATCH_SIZE = 256;
+    static final int              MAX_BATCHES_PER_RUN = 16;   // then let other inputs have the thread
+
+    // Private bits
+    private final CsvConfig       config;
+    private final Reader          reader;
+    private final Executor        executor;
+    private final int             batchSize;
+    private final AtomicBoolean   subscribed = new AtomicBoolean();
+
+    // Private bits - Mutable state
+    private volatile String[]     headerFields;
+
+    /**
+     * Receives the batches of rows, see java.util.concurrent.Flow.Subscriber.
+     */
+    public interface Subscriber {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(List<String[]> rows);
+
+        void onError(Throwable failure);
+
+        void onComplete();
+    }
+
+    /**
+     * Asks for more batches, or stops them, see java.util.concurrent.Flow.Subscription.
+     */
+    public interface Subscription {
+        void request(long n);
+
+        void cancel();
+    }
+
+    public CsvRowPublisher(CsvConfig config, Reader reader, Executor executor) {
+        this(config, reader, executor, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize the most rows in each batch
+     */
+    public CsvRowPublisher(CsvConfig config, Reader reader, Executor executor, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Invalid batch size " + batchSize);
+        }
+        this.config = config;
+        this.reader = reader;
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the header fields, or null before the first batch has been
+     * requested (the header is only read then) or if there is no header.
+     */
+    public String[] getHeaderFields() {
+        return headerFields;
+    }
+
+    /**
+     * Starts publishing to the subscriber.  A publisher has only one input,
+     * so a second subscriber is sent an IllegalStateException.
+     */
+    public void subscribe(Subscriber subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("A CsvRowPublisher only has one subscriber"));
+            return;
+        }
+        RowSubscription subscription = new RowSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * The demand of the subscriber, and the parsing it drives.  All of the
+     * parsing and signalling happens in drain(), which only ever runs on one
+     * thread at a time: request() and cancel() just record what they want
+     * and make sure a drain is scheduled.
+     */
+    private final class RowSubscription implements Subscription {
+        private final Subscriber  subscriber;
+        private final AtomicLong  requested = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean  cancelled;
+        private volatile Throwable badRequest;
+        private CsvParser         parser;           // only touched by drain()
+        private boolean           done;             // only touched by drain()
+
+        RowSubscription(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("Requested " + n + " batches, must be positive");
+                cancelled = true;
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!requested.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (work.getAndIncrement() == 0) {
+                executor.execute(() -> drain(1));
+            }
+        }
+
+        /**
+         * Delivers what has been requested, until missed, the number of
+         * schedule() calls it has seen to, covers all of them.
+         */
+        private void drain(int missed) {
+            int batches = 0;
+            while (true) {
+                while (!done) {
+                    if (cancelled) {
+                        finish(badRequest);
+                        break;
+                    }
+                    if (requested.get() == 0) {
+                        break;
+                    }
+                    if (batches == MAX_BATCHES_PER_RUN) {
+                        // give the thread to other work, and carry on in a new run
+                        int carried = missed;
+                        executor.execute(() -> drain(carried));
+                        return;
+                    }
+                    List<String[]> rows;
+                    try {
+                        rows = nextBatch();
+                    } catch (RuntimeException e) {
+                        finish(e);
+                        break;
+                    }
+                    if (!rows.isEmpty()) {
+                        requested.decrementAndGet();
+                        batches++;
+                        subscriber.onNext(rows);
+                    }
+                    if (rows.size() < batchSize && !done) {
+                        finish(null);
+                    }
+                }
+                missed = work.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private List<String[]> nextBatch() {
+            if (parser == null) {
+                parser = new CsvParser(config, reader);
+                headerFields = parser.getHeaderFields();
+            }
+            List<String[]> rows = new ArrayList<>(batchSize);
+            String[] row;
+            while (rows.size() < batchSize && (row = parser.split()) != null) {
+                rows.add(row);
+            }
+            return rows;
+        }
+
+        /**
+         * Closes the input, and signals the end unless cancelled.
+         */
+        private void finish(Throwable failure) {
+            done = true;
+            try {
+                if (parser != null) {
+                    parser.close();
+                } else {
+                    reader.close();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (failure == null && !cancelled) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                subscriber.onError(failure);
+            } else if (!cancelled) {
+                subscriber.onComplete();
+            }
+        }
+    }
+}
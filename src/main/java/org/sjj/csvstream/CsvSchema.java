@@ -0,0 +1,77 @@
+package org.sjj.csvstream;
+
+import java.util.Arrays;
+
+/**
+ * Names and types of the columns read by a CsvBatchReader.  When the parser
+ * has header fields, columns are matched to the CSV by name, otherwise by
+ * position.
+ *
+ * E.g.
+ *    CsvSchema schema = new CsvSchema(
+ *            new String[]{"symbol", "price", "volume"},
+ *            new ColumnType[]{ColumnType.DICTIONARY, ColumnType.DOUBLE, ColumnType.LONG});
+ */
+public class CsvSchema {
+    // Private bits
+    private final String[]        names;
+    private final ColumnType[]    types;
+
+    public CsvSchema(String[] names, ColumnType[] types) {
+        if (names.length != types.length) {
+            throw new IllegalArgumentException("Got " + names.length + " names but " + types.length + " types");
+        }
+        this.names = names.clone();
+        this.types = types.clone();
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int column) {
+        return names[column];
+    }
+
+    public ColumnType getType(int column) {
+        return types[column];
+    }
+
+    /**
+     * Returns the index of the column with the given name, or -1.
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("CsvSchema[");
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(names[i]).append(' ').append(types[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CsvSchema)) {
+            return false;
+        }
+        CsvSchema other = (CsvSchema) o;
+        return Arrays.equals(names, other.names) && Arrays.equals(types, other.types);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(names) + Arrays.hashCode(types);
+    }
+}
@@ -0,0 +1,313 @@
+package org.sjj.csvstream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a UTF-8 CSV file that another process is still appending to, like
+ * tail -f, and returns each record once it is complete.
+ *
+ * New bytes are fed to a RecordScanner that carries on from where the last
+ * poll stopped, so a record is only returned once its terminating newline has
+ * been written; a half written record at the end of the file (including one
+ * with an open quoted field) is left until the rest of it arrives.  The
+ * complete records found by a poll are then parsed together by one parser.
+ *
+ * getCheckpoint() tells where processing got to: the byte offset just after
+ * the last record returned, the number of rows returned so far and the
+ * header.  A checkpoint can be saved, and a new CsvTailer started from it
+ * (e.g. after a restart) carries on with the next record.
+ *
+ * E.g.
+ *    CsvTailer tailer = new CsvTailer(CsvConfig.DEFAULTS, path, CsvTailer.Checkpoint.load(checkpointPath));
+ *    while (running) {
+ *        String[] row = tailer.next(1, TimeUnit.SECONDS);
+ *        if (row != null) {
+ *            process(row);
+ *            tailer.getCheckpoint().save(checkpointPath);
+ *        }
+ *    }
+ */
+public final class CsvTailer implements Closeable {
+    // Constants
+    static final long             POLL_INTERVAL_MILLIS = 100;
+    private static final int      WINDOW_SIZE = 64 * 1024;
+    private static final int      MAX_BATCH_SIZE = 16 * 1024 * 1024;
+
+    // Private bits
+    private final CsvConfig       config;
+    private final FileChannel     channel;
+    private final RecordScanner   scanner;
+    private final ByteBuffer      window = ByteBuffer.allocate(WINDOW_SIZE);
+    private final ArrayDeque<String[]> ready = new ArrayDeque<>();
+    private final ArrayDeque<Long>     readyEnds = new ArrayDeque<>();
+
+    // Private bits - Mutable state
+    private String[]              header;
+    private boolean               headerPending;
+    private long                  offset;          // just after the last record returned
+    private long                  rowNumber;       // rows returned so far
+    private long                  scanPos;         // the next byte to scan
+    private long                  recordStart = -1;
+    private byte[]                bytes = new byte[WINDOW_SIZE];
+
+    /**
+     * Where a CsvTailer got to.  It can be saved to a file and loaded again
+     * to start a new CsvTailer at the same record.
+     */
+    public static final class Checkpoint {
+        private static final int  MAGIC = 0x43535654;    // "CSVT"
+
+        private final long        offset;
+        private final long        rowNumber;
+        private final String[]    header;
+
+        public Checkpoint(long offset, long rowNumber, String[] header) {
+            this.offset = offset;
+            this.rowNumber = rowNumber;
+            this.header = header == null ? null : header.clone();
+        }
+
+        /**
+         * The byte offset just after the last record that was returned.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * The number of rows returned so far, which is also the row number of
+         * the next one.
+         */
+        public long getRowNumber() {
+            return rowNumber;
+        }
+
+        public String[] getHeader() {
+            return header == null ? null : header.clone();
+        }
+
+        /**
+         * Saves the checkpoint, replacing the file in one step so that a crash
+         * never leaves half a checkpoint behind.
+         */
+        public void save(Path path) throws IOException {
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(offset);
+                out.writeLong(rowNumber);
+                out.writeInt(header == null ? -1 : header.length);
+                if (header != null) {
+                    for (String field : header) {
+                        out.writeUTF(field);
+                    }
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * Loads a saved checkpoint, or returns null if there is none yet.
+         */
+        public static Checkpoint load(Path path) throws IOException {
+            if (!Files.exists(path)) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a checkpoint file: " + path);
+                }
+                long offset = in.readLong();
+                long rowNumber = in.readLong();
+                int fields = in.readInt();
+                String[] header = null;
+                if (fields >= 0) {
+                    header = new String[fields];
+                    for (int i = 0; i < fields; i++) {
+                        header[i] = in.readUTF();
+                    }
+                }
+                return new Checkpoint(offset, rowNumber, header);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Checkpoint{offset=" + offset + ", rowNumber=" + rowNumber
+                    + ", header=" + Arrays.toString(header) + "}";
+        }
+    }
+
+    /**
+     * Follows a file from its start.
+     */
+    public CsvTailer(CsvConfig config, Path path) throws IOException {
+        this(config, path, null);
+    }
+
+    /**
+     * Follows a file from a checkpoint, or from its start if checkpoint is null.
+     */
+    public CsvTailer(CsvConfig config, Path path, Checkpoint checkpoint) throws IOException {
+        this.config = config;
+        this.scanner = new RecordScanner(config);
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        if (checkpoint != null) {
+            this.offset = checkpoint.getOffset();
+            this.rowNumber = checkpoint.getRowNumber();
+            this.header = checkpoint.getHeader();
+        }
+        this.headerPending = config.isHeaderFlag() && header == null;
+        this.scanPos = offset;
+        // a checkpoint is always just after a record's newline, and any CR or
+        // LF right after it belongs to that record, as in the parser
+        scanner.reset(offset > 0 ? RecordScanner.AFTER_NEWLINE : RecordScanner.FIELD_START);
+        if (offset == 0) {
+            recordStart = 0;
+        }
+    }
+
+    /**
+     * Returns the header fields, or null if there is no header or it hasn't
+     * been written yet.
+     */
+    public String[] getHeaderFields() {
+        return header == null ? null : CsvParser.projectHeader(header, CsvParser.resolveProjection(config, header));
+    }
+
+    public Checkpoint getCheckpoint() {
+        return new Checkpoint(offset, rowNumber, header);
+    }
+
+    /**
+     * Returns the next complete record, or null if there is none yet.
+     *
+     * @throws IOException if reading fails, or if the file has shrunk
+     */
+    public String[] poll() throws IOException {
+        if (ready.isEmpty()) {
+            readAppended();
+        }
+        String[] row = ready.poll();
+        if (row != null) {
+            offset = readyEnds.poll();
+            rowNumber++;
+        }
+        return row;
+    }
+
+    /**
+     * Returns the next complete record, waiting up to the timeout for one to
+     * be appended.
+     *
+     * @return the record, or null if none was complete in time
+     */
+    public String[] next(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            String[] row = poll();
+            if (row != null) {
+                return row;
+            }
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return null;
+            }
+            Thread.sleep(Math.min(POLL_INTERVAL_MILLIS, TimeUnit.NANOSECONDS.toMillis(left) + 1));
+        }
+    }
+
+    /**
+     * Scans the bytes appended since the last poll, and parses the records
+     * that are now complete.
+     */
+    private void readAppended() throws IOException {
+        long size = channel.size();
+        if (size < scanPos) {
+            throw new IOException("The file has shrunk from " + scanPos + " to " + size + " bytes");
+        }
+        long batchStart = -1;
+        long batchEnd = -1;
+        int records = 0;
+        while (scanPos < size && (batchStart < 0 || batchEnd - batchStart < MAX_BATCH_SIZE)) {
+            window.clear();
+            if (size - scanPos < window.capacity()) {
+                window.limit((int) (size - scanPos));
+            }
+            int n = channel.read(window, scanPos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                int before = scanner.getState();
+                boolean started = scanner.accept(window.get(i));
+                if (started) {
+                    recordStart = scanPos + i;
+                }
+                if (scanner.getState() == RecordScanner.AFTER_NEWLINE
+                        && (started || before != RecordScanner.AFTER_NEWLINE)) {
+                    // the newline that ends the record at recordStart
+                    long end = scanPos + i + 1;
+                    if (headerPending) {
+                        try (CsvParser parser = parser(recordStart, end,
+                                config.withHeaderFlag(false).withoutProjection(), null)) {
+                            header = parser.split();
+                        }
+                        headerPending = false;
+                        offset = end;
+                    } else {
+                        if (batchStart < 0) {
+                            batchStart = recordStart;
+                        }
+                        batchEnd = end;
+                        readyEnds.add(end);
+                        records++;
+                    }
+                }
+            }
+            scanPos += n;
+        }
+        if (records > 0) {
+            // closed, so that a pooled config gets its row buffer back
+            try (CsvParser parser = parser(batchStart, batchEnd, config.withHeaderFlag(false), header)) {
+                for (int i = 0; i < records; i++) {
+                    ready.add(parser.split());
+                }
+            }
+        }
+    }
+
+    private CsvParser parser(long from, long to, CsvConfig parserConfig, String[] headerFields) throws IOException {
+        int length = (int) (to - from);
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, from + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file at " + (from + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return new CsvParser(parserConfig, new ByteBufferIterator(buffer), headerFields);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,517 @@
+package org.sjj.csvstream;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Writes CSV rows straight into a Writer, an OutputStream or a ByteBuffer,
+ * without creating a String per row.  Rows are formatted into one reusable
+ * char buffer, which is handed to the output when it fills up, on flush() or
+ * on close().
+ *
+ * Fields are quoted with the same rules as CsvFormatter (when they contain
+ * the delimiter or the quote, which is doubled), and also when they contain
+ * a line break or start with the comment character, so that every row can
+ * be read back by a CsvParser with the same config.  Whether a field needs
+ * quotes is decided by scanning it before it is copied.
+ *
+ * Rows can be written whole with writeRow(), or a field at a time followed
+ * by endRow(); the field methods take CharSequences, char ranges and
+ * primitives, and don't allocate.
+ *
+ * E.g.
+ *    try (CsvWriter writer = new CsvWriter(outputStream, CsvConfig.DEFAULTS, StandardCharsets.UTF_8)) {
+ *        writer.writeRow("id", "name", "price");
+ *        for (Item item : items) {
+ *            writer.field(item.id).field(item.name).field(item.price).endRow();
+ *        }
+ *    }
+ *
+ * IOExceptions from the output are thrown as UncheckedIOExceptions, so that
+ * the writer can be used from a lambda, e.g. stream.forEach(writer::writeRow).
+ */
+public final class CsvWriter implements Closeable, Flushable {
+    // Constants
+    static final int              DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final char[]   TRUE = "true".toCharArray();
+    private static final char[]   FALSE = "false".toCharArray();
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+    private static final double   MAX_EXACT_LONG = 9007199254740992.0;   // 2^53
+    static final int              MAX_NUMBER_LENGTH = 32;     // longer than any long or double
+
+    // Private bits - immutable
+    private final char            quote;
+    private final char            delimiter;
+    private final char            comment;
+    private final boolean         commentsEnabled;
+    private final Writer          writer;
+    private final OutputStream    stream;
+    private final ByteBuffer      target;
+    private final CharsetEncoder  encoder;
+    private final ByteBuffer      bytes;       // encoded bytes on their way to the stream
+    private final char[]          buf;
+    private final CharBuffer      chars;       // a view of buf for the encoder
+
+    // Private bits - Mutable state
+    private int                   pos;
+    private int                   fieldIndex;
+    private char[]                newLine = {'\r', '\n'};
+    private boolean               closed;
+
+    public CsvWriter(Writer writer) {
+        this(writer, CsvConfig.DEFAULTS);
+    }
+
+    public CsvWriter(Writer writer, CsvConfig config) {
+        this(config, writer, null, null, null, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvWriter(OutputStream stream, CsvConfig config, Charset charset) {
+        this(config, null, stream, null, charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Writes UTF-8 encoded rows into the buffer, from its position.
+     * A BufferOverflowException is thrown when the buffer fills up.
+     */
+    public CsvWriter(ByteBuffer target, CsvConfig config) {
+        this(target, config, StandardCharsets.UTF_8);
+    }
+
+    public CsvWriter(ByteBuffer target, CsvConfig config, Charset charset) {
+        this(config, null, null, target, charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    CsvWriter(CsvConfig config, Writer writer, OutputStream stream, ByteBuffer target, Charset charset,
+              int bufferSize) {
+        this.quote = config.getQuote();
+        this.delimiter = config.getDelimiter();
+        this.comment = config.getComment();
+        this.commentsEnabled = config.getCommentsEnabled();
+        this.writer = writer;
+        this.stream = stream;
+        this.target = target;
+        this.buf = new char[bufferSize];
+        this.chars = CharBuffer.wrap(buf);
+        if (charset != null) {
+            this.encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.bytes = stream == null ? null
+                    : ByteBuffer.allocate((int) Math.ceil(bufferSize * (double) encoder.maxBytesPerChar()));
+        } else {
+            this.encoder = null;
+            this.bytes = null;
+        }
+    }
+
+    /**
+     * Writes all of the rows of a stream to a Writer, in encounter order, and
+     * flushes it.  If the stream is parallel, blocks of rows are formatted on
+     * the common ForkJoinPool while the calling thread writes the finished
+     * blocks out in order, so formatting is not limited to one thread.  The
+     * Writer is not closed.
+     *
+     * E.g.
+     *    CsvWriter.writeAll(records.parallel().map(this::enrich), writer, CsvConfig.DEFAULTS);
+     *
+     * @return the number of rows written
+     */
+    public static long writeAll(Stream<? extends CharSequence[]> rows, Writer writer, CsvConfig config) {
+        if (!rows.isParallel()) {
+            CsvWriter csv = new CsvWriter(writer, config);
+            long[] count = {0};
+            rows.forEachOrdered(row -> {
+                csv.writeRow(row);
+                count[0]++;
+            });
+            csv.flush();
+            return count[0];
+        }
+        return encoder(config, writer, null, null).write(rows);
+    }
+
+    /**
+     * Like writeAll(Stream, Writer, CsvConfig), but encodes the rows with the
+     * charset (also in parallel) and writes the bytes to an OutputStream.
+     * A charset whose encoder starts with a byte order mark (e.g. UTF-16) is
+     * encoded on the calling thread, so that there is only one of them.
+     */
+    public static long writeAll(Stream<? extends CharSequence[]> rows, OutputStream stream, CsvConfig config,
+                                Charset charset) {
+        if (!rows.isParallel() || writesByteOrderMark(charset)) {
+            CsvWriter csv = new CsvWriter(stream, config, charset);
+            long[] count = {0};
+            rows.forEachOrdered(row -> {
+                csv.writeRow(row);
+                count[0]++;
+            });
+            csv.flush();
+            return count[0];
+        }
+        return encoder(config, null, stream, charset).write(rows);
+    }
+
+    /**
+     * Tests whether the charset's encoder writes something before the first
+     * char, which each block of a parallel writeAll would repeat.
+     */
+    private static boolean writesByteOrderMark(Charset charset) {
+        return charset.encode("aa").remaining() != 2 * charset.encode("a").remaining();
+    }
+
+    private static OrderedEncoder encoder(CsvConfig config, Writer writer, OutputStream stream, Charset charset) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        // enough leaves in flight to keep every worker busy while the oldest one is written
+        int window = 2 * pool.getParallelism() + 1;
+        return new OrderedEncoder(config, writer, stream, charset, pool, window);
+    }
+
+    /**
+     * Sets the line break written at the end of each row, CRLF by default
+     * as in RFC 4180.
+     */
+    public CsvWriter setNewLineType(NewLineType type) {
+        switch (type) {
+            case CR:
+                newLine = new char[]{'\r'};
+                break;
+            case LF:
+                newLine = new char[]{'\n'};
+                break;
+            case CRLF:
+                newLine = new char[]{'\r', '\n'};
+                break;
+            case LFCR:
+                newLine = new char[]{'\n', '\r'};
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown new line type " + type);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a whole row.  A null field is written as an empty field.
+     */
+    public void writeRow(CharSequence... fields) {
+        for (CharSequence field : fields) {
+            field(field);
+        }
+        endRow();
+    }
+
+    public CsvWriter field(CharSequence value) {
+        startField();
+        if (value == null) {
+            return this;
+        }
+        int length = value.length();
+        if (needsQuotes(value, length)) {
+            put(quote);
+            for (int i = 0; i < length; i++) {
+                char ch = value.charAt(i);
+                if (ch == quote) {
+                    put(quote);
+                }
+                put(ch);
+            }
+            put(quote);
+        } else if (length <= buf.length - pos && value instanceof String) {
+            ((String) value).getChars(0, length, buf, pos);
+            pos += length;
+        } else {
+            for (int i = 0; i < length; i++) {
+                put(value.charAt(i));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes a field from a range of a char[], e.g. one passed to a CsvHandler.
+     */
+    public CsvWriter field(char[] value, int offset, int length) {
+        startField();
+        boolean needsQuotes = commentsEnabled && length > 0 && value[offset] == comment;
+        for (int i = offset; i < offset + length && !needsQuotes; i++) {
+            needsQuotes = isSpecial(value[i]);
+        }
+        if (needsQuotes) {
+            put(quote);
+            for (int i = offset; i < offset + length; i++) {
+                if (value[i] == quote) {
+                    put(quote);
+                }
+                put(value[i]);
+            }
+            put(quote);
+        } else if (length <= buf.length - pos) {
+            System.arraycopy(value, offset, buf, pos, length);
+            pos += length;
+        } else {
+            for (int i = offset; i < offset + length; i++) {
+                put(value[i]);
+            }
+        }
+        return this;
+    }
+
+    public CsvWriter field(long value) {
+        startField();
+        if (buf.length - pos < MAX_NUMBER_LENGTH) {
+            flushBuffer();
+        }
+        pos = formatLong(value, buf, pos);
+        return this;
+    }
+
+    /**
+     * Writes the digits of a long into buf at pos, which must have room for
+     * 20 chars.
+     *
+     * @return the position after the digits
+     */
+    static int formatLong(long value, char[] buf, int pos) {
+        if (value == Long.MIN_VALUE) {
+            // can't be negated
+            "-9223372036854775808".getChars(0, 20, buf, pos);
+            return pos + 20;
+        }
+        if (value < 0) {
+            buf[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = pos + digits;
+        for (int i = end - 1; i >= pos; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    public CsvWriter field(int value) {
+        return field((long) value);
+    }
+
+    /**
+     * Writes a double in a form that reads back as the same value.  Values
+     * with a short decimal form between 0.001 and 10^7 (the ones that
+     * Double.toString() writes without an exponent) are written without
+     * allocating, e.g. 12.5 or 0.25; anything else is written with
+     * Double.toString().
+     */
+    public CsvWriter field(double value) {
+        startField();
+        if (buf.length - pos < MAX_NUMBER_LENGTH) {
+            flushBuffer();
+        }
+        pos = formatDouble(value, buf, pos);
+        return this;
+    }
+
+    /**
+     * Writes a double into buf at pos, which must have room for
+     * MAX_NUMBER_LENGTH chars, see field(double).
+     *
+     * @return the position after the number
+     */
+    static int formatDouble(double value, char[] buf, int pos) {
+        double abs = Math.abs(value);
+        if (value == 0) {
+            return copy(Double.doubleToRawLongBits(value) < 0 ? "-0.0" : "0.0", buf, pos);
+        }
+        if (abs >= 1e-3 && abs < 1e7) {
+            for (int scale = 1; scale < POWERS_OF_TEN.length; scale++) {
+                double scaled = abs * POWERS_OF_TEN[scale];
+                if (scaled >= MAX_EXACT_LONG) {
+                    break;
+                }
+                long mantissa = Math.round(scaled);
+                if (mantissa / POWERS_OF_TEN[scale] == abs) {
+                    return formatDecimal(value < 0, mantissa, scale, buf, pos);
+                }
+            }
+        }
+        return copy(Double.toString(value), buf, pos);
+    }
+
+    private static int copy(String s, char[] buf, int pos) {
+        s.getChars(0, s.length(), buf, pos);
+        return pos + s.length();
+    }
+
+    private static int formatDecimal(boolean negative, long mantissa, int scale, char[] buf, int pos) {
+        if (negative) {
+            buf[pos++] = '-';
+        }
+        long unit = (long) POWERS_OF_TEN[scale];
+        long whole = mantissa / unit;
+        long fraction = mantissa % unit;
+        // strip the trailing zeros of the fraction, but keep one digit
+        while (scale > 1 && fraction % 10 == 0) {
+            fraction /= 10;
+            scale--;
+        }
+        pos = formatLong(whole, buf, pos);
+        buf[pos++] = '.';
+        int end = pos + scale;
+        for (int i = end - 1; i >= pos; i--) {
+            buf[i] = (char) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        return end;
+    }
+
+    public CsvWriter field(boolean value) {
+        char[] text = value ? TRUE : FALSE;
+        return field(text, 0, text.length);
+    }
+
+    /**
+     * Ends the current row.
+     */
+    public void endRow() {
+        if (buf.length - pos < newLine.length) {
+            flushBuffer();
+        }
+        for (char ch : newLine) {
+            buf[pos++] = ch;
+        }
+        fieldIndex = 0;
+    }
+
+    private void startField() {
+        if (fieldIndex++ > 0) {
+            put(delimiter);
+        }
+    }
+
+    private boolean isSpecial(char ch) {
+        return ch == delimiter || ch == quote || ch == '\n' || ch == '\r';
+    }
+
+    private boolean needsQuotes(CharSequence value, int length) {
+        if (commentsEnabled && length > 0 && value.charAt(0) == comment) {
+            // would be read back as a comment line
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            if (isSpecial(value.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void put(char ch) {
+        if (pos == buf.length) {
+            flushBuffer();
+        }
+        buf[pos++] = ch;
+    }
+
+    /**
+     * Hands the buffered chars to the output.
+     */
+    private void flushBuffer() {
+        try {
+            if (writer != null) {
+                writer.write(buf, 0, pos);
+                pos = 0;
+                return;
+            }
+            encode(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+        chars.limit(pos).position(0);
+        ByteBuffer out = stream != null ? bytes : target;
+        while (true) {
+            CoderResult result = encoder.encode(chars, out, endOfInput);
+            if (result.isUnderflow() && endOfInput) {
+                result = encoder.flush(out);
+            }
+            if (stream != null) {
+                stream.write(bytes.array(), 0, bytes.position());
+                bytes.clear();
+            }
+            if (result.isUnderflow()) {
+                break;
+            }
+            if (stream == null) {
+                throw new BufferOverflowException();
+            }
+        }
+        // a high surrogate at the end waits for the rest of its pair
+        int left = chars.remaining();
+        System.arraycopy(buf, chars.position(), buf, 0, left);
+        pos = left;
+    }
+
+    /**
+     * Writes out everything buffered so far, and flushes the Writer or
+     * OutputStream.
+     */
+    @Override
+    public void flush() {
+        flushBuffer();
+        try {
+            if (writer != null) {
+                writer.flush();
+            } else if (stream != null) {
+                stream.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flushes and closes the Writer or OutputStream.  A ByteBuffer is left
+     * positioned after the last byte written.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (writer != null) {
+                flushBuffer();
+                writer.close();
+            } else {
+                encode(true);
+                if (stream != null) {
+                    stream.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package org.sjj.csvstream;
+
+/**
+ * Parses primitive values straight out of a range of a char[], without
+ * creating a String first.  These are used by the typed getters of CsvRow,
+ * and can be used the same way on the buffer ranges passed to a CsvHandler.
+ *
+ * All of the methods throw a NumberFormatException (or for booleans and
+ * timestamps an IllegalArgumentException) if the range is empty or does not
+ * hold a valid value.
+ */
+public final class FieldParsers {
+    // Constants
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int      MAX_EXACT_DIGITS = 15;
+    private static final long     MILLIS_PER_DAY = 86400000L;
+
+    private FieldParsers() {
+    }
+
+    private static NumberFormatException malformed(char[] buf, int offset, int length) {
+        return new NumberFormatException("For input string: \"" + new String(buf, offset, length) + "\"");
+    }
+
+    public static int parseInt(char[] buf, int offset, int length) {
+        long value = parseLong(buf, offset, length);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw malformed(buf, offset, length);
+        }
+        return (int) value;
+    }
+
+    public static long parseLong(char[] buf, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        if (i == end) {
+            throw malformed(buf, offset, length);
+        }
+        boolean negative = false;
+        char first = buf[i];
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == end) {
+                throw malformed(buf, offset, length);
+            }
+        }
+
+        // Accumulate negatively, like Long.parseLong, so that Long.MIN_VALUE fits.
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multLimit = limit / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9 || result < multLimit) {
+                throw malformed(buf, offset, length);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw malformed(buf, offset, length);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Parses a double.  Plain decimal numbers with up to 15 significant digits
+     * and a small exponent are converted exactly without any allocation;
+     * anything else is handed to Double.parseDouble(), so the result is always
+     * the same as Double.parseDouble() would give.
+     */
+    public static double parseDouble(char[] buf, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            char ch = buf[i];
+            if (ch >= '0' && ch <= '9') {
+                seenDigit = true;
+                if (mantissa == 0 && ch == '0') {
+                    // leading zeros are not significant
+                    if (seenPoint) {
+                        scale--;
+                    }
+                    continue;
+                }
+                if (++digits > MAX_EXACT_DIGITS) {
+                    return slowParseDouble(buf, offset, length);
+                }
+                mantissa = mantissa * 10 + (ch - '0');
+                if (seenPoint) {
+                    scale--;
+                }
+            } else if (ch == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (!seenDigit) {
+            return slowParseDouble(buf, offset, length);
+        }
+
+        if (i < end) {
+            if (buf[i] != 'e' && buf[i] != 'E') {
+                return slowParseDouble(buf, offset, length);
+            }
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+                negativeExponent = buf[i] == '-';
+                i++;
+            }
+            if (i == end) {
+                return slowParseDouble(buf, offset, length);
+            }
+            int exponent = 0;
+            for (; i < end; i++) {
+                int digit = buf[i] - '0';
+                if (digit < 0 || digit > 9 || exponent > 1000) {
+                    return slowParseDouble(buf, offset, length);
+                }
+                exponent = exponent * 10 + digit;
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if (scale >= 0 && scale < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[scale];
+        } else if (scale < 0 && -scale < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-scale];
+        } else {
+            return slowParseDouble(buf, offset, length);
+        }
+        return negative ? -value : value;
+    }
+
+    private static double slowParseDouble(char[] buf, int offset, int length) {
+        return Double.parseDouble(new String(buf, offset, length));
+    }
+
+    /**
+     * Parses true/false, yes/no, y/n, t/f or 1/0, ignoring case.
+     */
+    public static boolean parseBoolean(char[] buf, int offset, int length) {
+        switch (length) {
+            case 1:
+                switch (Character.toLowerCase(buf[offset])) {
+                    case '1': case 't': case 'y':
+                        return true;
+                    case '0': case 'f': case 'n':
+                        return false;
+                    default:
+                        break;
+                }
+                break;
+            case 2:
+                if (equalsIgnoreCase(buf, offset, "no")) {
+                    return false;
+                }
+                break;
+            case 3:
+                if (equalsIgnoreCase(buf, offset, "yes")) {
+                    return true;
+                }
+                break;
+            case 4:
+                if (equalsIgnoreCase(buf, offset, "true")) {
+                    return true;
+                }
+                break;
+            case 5:
+                if (equalsIgnoreCase(buf, offset, "false")) {
+                    return false;
+                }
+                break;
+            default:
+                break;
+        }
+        throw new IllegalArgumentException("Not a boolean: \"" + new String(buf, offset, length) + "\"");
+    }
+
+    private static boolean equalsIgnoreCase(char[] buf, int offset, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.toLowerCase(buf[offset + i]) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a timestamp in the fixed ISO-8601 style format
+     * yyyy-MM-dd[( |T)HH:mm[:ss[.fraction]]][Z|(+|-)HH:mm] into milliseconds
+     * since the epoch.  Without a zone the time is taken to be UTC.  Digits of
+     * the fraction beyond milliseconds are ignored.
+     */
+    public static long parseEpochMillis(char[] buf, int offset, int length) {
+        int end = offset + length;
+        if (length < 10 || buf[offset + 4] != '-' || buf[offset + 7] != '-') {
+            throw badTimestamp(buf, offset, length);
+        }
+        int year = digits(buf, offset, 4, end);
+        int month = digits(buf, offset + 5, 2, end);
+        int day = digits(buf, offset + 8, 2, end);
+        if (month < 1 || month > 12 || day < 1 || day > 31) {
+            throw badTimestamp(buf, offset, length);
+        }
+
+        int i = offset + 10;
+        long millis = 0;
+        if (i < end && (buf[i] == 'T' || buf[i] == ' ')) {
+            if (end - i < 6 || buf[i + 3] != ':') {
+                throw badTimestamp(buf, offset, length);
+            }
+            int hour = digits(buf, i + 1, 2, end);
+            int minute = digits(buf, i + 4, 2, end);
+            int second = 0;
+            i += 6;
+            if (i < end && buf[i] == ':') {
+                second = digits(buf, i + 1, 2, end);
+                i += 3;
+                if (i < end && buf[i] == '.') {
+                    i++;
+                    int fractionStart = i;
+                    int fraction = 0;
+                    while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+                        if (i - fractionStart < 3) {
+                            fraction = fraction * 10 + (buf[i] - '0');
+                        }
+                        i++;
+                    }
+                    if (i == fractionStart) {
+                        throw badTimestamp(buf, offset, length);
+                    }
+                    for (int n = i - fractionStart; n < 3; n++) {
+                        fraction *= 10;
+                    }
+                    millis += fraction;
+                }
+            }
+            if (hour > 23 || minute > 59 || second > 60) {
+                throw badTimestamp(buf, offset, length);
+            }
+            millis += ((hour * 60L + minute) * 60L + second) * 1000L;
+
+            if (i < end) {
+                if (buf[i] == 'Z' && i + 1 == end) {
+                    i++;
+                } else if ((buf[i] == '+' || buf[i] == '-') && end - i == 6 && buf[i + 3] == ':') {
+                    int offsetHours = digits(buf, i + 1, 2, end);
+                    int offsetMinutes = digits(buf, i + 4, 2, end);
+                    // at most +-18:00, as in ZoneOffset
+                    if (offsetMinutes > 59 || offsetHours * 60 + offsetMinutes > 18 * 60) {
+                        throw badTimestamp(buf, offset, length);
+                    }
+                    long offsetMillis = (offsetHours * 60L + offsetMinutes) * 60000L;
+                    millis -= buf[i] == '+' ? offsetMillis : -offsetMillis;
+                    i = end;
+                }
+            }
+        }
+        if (i != end) {
+            throw badTimestamp(buf, offset, length);
+        }
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY + millis;
+    }
+
+    private static int digits(char[] buf, int from, int count, int end) {
+        if (from + count > end) {
+            throw badTimestamp(buf, from, end - from);
+        }
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw badTimestamp(buf, from, end - from);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Days since 1970-01-01 for a date in the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400L);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static IllegalArgumentException badTimestamp(char[] buf, int offset, int length) {
+        return new IllegalArgumentException("Not a timestamp: \"" + new String(buf, offset, length) + "\"");
+    }
+}
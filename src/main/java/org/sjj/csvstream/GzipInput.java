@@ -0,0 +1,350 @@
+package org.sjj.csvstream;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a gzip file into a sequence of ByteBuffers for the byte
+ * parser, so that decompression runs alongside parsing instead of in front of
+ * it on the same thread.
+ *
+ * Block gzip files (BGZF, as written by bgzip) are a series of small gzip
+ * members, each of which records its own compressed size in a "BC" extra
+ * field.  The member boundaries can be found by hopping from header to
+ * header, so the members are inflated in parallel on an Executor, a bounded
+ * window of them ahead of the parser, and handed over in file order.
+ *
+ * Any other gzip file, whether one member or several concatenated ones, is
+ * inflated on a dedicated thread into a small ring of buffers.  The member
+ * boundaries of such a file are only found by inflating it, so it can't be
+ * split up for the pool.
+ */
+abstract class GzipInput implements Iterator<ByteBuffer>, Closeable {
+    // Constants
+    static final int              BUFFER_SIZE = 64 * 1024;
+    private static final int      HEADER_SIZE = 12;         // up to and including XLEN
+    private static final int      TRAILER_SIZE = 8;         // CRC32 and ISIZE
+    private static final int      FEXTRA = 4;
+    private static final int      BUFFER_COUNT = 4;
+    private static final int      MAX_BLOCK_DATA = 64 * 1024;  // uncompressed size limit of a BGZF block
+
+    /**
+     * Opens a gzip file, picking the parallel reader for BGZF files.
+     */
+    static GzipInput open(Path path, Executor executor) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            if (header.position() < HEADER_SIZE || !isGzipHeader(header)) {
+                throw new ZipException("Not in gzip format: " + path);
+            }
+            if (BgzfInput.blockSize(channel, 0) > 0) {
+                return new BgzfInput(channel, executor);
+            }
+            channel.close();
+            return new StreamInput(Files.newInputStream(path));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Inflates BGZF members in parallel, in file order.
+     */
+    private static final class BgzfInput extends GzipInput {
+        // Private bits
+        private final FileChannel     channel;
+        private final Executor        executor;
+        private final int             window;
+        private final long            size;
+        private final ArrayDeque<CompletableFuture<ByteBuffer>> pending = new ArrayDeque<>();
+
+        // Private bits - Mutable state
+        private long                  next;          // offset of the next block to submit
+        private ByteBuffer            ready;
+
+        BgzfInput(FileChannel channel, Executor executor) throws IOException {
+            this.channel = channel;
+            this.executor = executor;
+            this.window = 2 * Runtime.getRuntime().availableProcessors() + 2;
+            this.size = channel.size();
+        }
+
+        /**
+         * Returns the total size of the BGZF block at offset, or -1 if there
+         * is no BGZF header there.
+         */
+        static int blockSize(FileChannel channel, long offset) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, offset);
+            if (header.position() < HEADER_SIZE || !isGzipHeader(header) || (header.get(3) & FEXTRA) == 0) {
+                return -1;
+            }
+            ByteBuffer extra = ByteBuffer.allocate(unsignedShort(header, 10));
+            readFully(channel, extra, offset + HEADER_SIZE);
+            // the extra field is a list of subfields: SI1, SI2, LEN and LEN bytes
+            for (int i = 0; i + 4 <= extra.position(); i += 4 + unsignedShort(extra, i + 2)) {
+                if (extra.get(i) == 'B' && extra.get(i + 1) == 'C' && unsignedShort(extra, i + 2) == 2
+                        && i + 6 <= extra.position()) {
+                    return unsignedShort(extra, i + 4) + 1;
+                }
+            }
+            return -1;
+        }
+
+        private void fill() {
+            try {
+                while (pending.size() < window && next < size) {
+                    long offset = next;
+                    int blockSize = blockSize(channel, offset);
+                    if (blockSize <= 0) {
+                        throw new ZipException("No BGZF block header at offset " + offset);
+                    }
+                    next += blockSize;
+                    pending.add(CompletableFuture.supplyAsync(() -> inflate(offset, blockSize), executor));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private ByteBuffer inflate(long offset, int blockSize) {
+            ByteBuffer block = ByteBuffer.allocate(blockSize);
+            Inflater inflater = new Inflater(true);
+            try {
+                readFully(channel, block, offset);
+                if (block.position() < blockSize) {
+                    throw new ZipException("Truncated BGZF block at offset " + offset);
+                }
+                block.order(ByteOrder.LITTLE_ENDIAN);
+                int dataStart = HEADER_SIZE + unsignedShort(block, 10);
+                int dataEnd = blockSize - TRAILER_SIZE;
+                int expected = block.getInt(dataEnd + 4);
+                if (dataStart > dataEnd || expected < 0 || expected > MAX_BLOCK_DATA) {
+                    throw new ZipException("Corrupt BGZF block at offset " + offset);
+                }
+                byte[] out = new byte[expected];
+                inflater.setInput(block.array(), dataStart, dataEnd - dataStart);
+                int length = 0;
+                while (length < out.length && !inflater.finished()) {
+                    int n = inflater.inflate(out, length, out.length - length);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += n;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(out, 0, length);
+                if (length != out.length || (int) crc.getValue() != block.getInt(dataEnd)) {
+                    throw new ZipException("Corrupt BGZF block at offset " + offset);
+                }
+                return ByteBuffer.wrap(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (DataFormatException e) {
+                throw new UncheckedIOException(new ZipException("Corrupt BGZF block at offset " + offset + ": "
+                        + e.getMessage()));
+            } finally {
+                inflater.end();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (ready == null) {
+                fill();
+                CompletableFuture<ByteBuffer> block = pending.poll();
+                if (block == null) {
+                    closeQuietly();
+                    return false;
+                }
+                try {
+                    ByteBuffer buffer = block.join();
+                    if (buffer.hasRemaining()) {
+                        ready = buffer;    // the empty end of file marker block is skipped
+                    }
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public ByteBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ByteBuffer buffer = ready;
+            ready = null;
+            return buffer;
+        }
+
+        private void closeQuietly() {
+            try {
+                close();
+            } catch (IOException e) {
+                // every block has been read already
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (CompletableFuture<ByteBuffer> block : pending) {
+                block.cancel(false);
+            }
+            pending.clear();
+            next = size;
+            channel.close();
+        }
+    }
+
+    /**
+     * Inflates an ordinary gzip stream on its own thread.  The buffers go
+     * round between the two threads, so no garbage is made once they exist.
+     */
+    private static final class StreamInput extends GzipInput implements Runnable {
+        private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+        // Private bits
+        private final InputStream     in;
+        private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(BUFFER_COUNT + 1);
+        private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFER_COUNT);
+        private final Thread          thread;
+
+        // Private bits - Mutable state
+        private volatile IOException  error;
+        private ByteBuffer            current;       // handed to the parser, recycled on the next call
+        private ByteBuffer            ready;
+        private boolean               ended;
+
+        StreamInput(InputStream in) {
+            this.in = in;
+            for (int i = 0; i < BUFFER_COUNT; i++) {
+                free.add(ByteBuffer.allocate(BUFFER_SIZE));
+            }
+            this.thread = new Thread(this, "csv-gzip");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try (InputStream gzip = new GZIPInputStream(new BufferedInputStream(in, BUFFER_SIZE), BUFFER_SIZE)) {
+                while (true) {
+                    ByteBuffer buffer = free.take();
+                    byte[] bytes = buffer.array();
+                    int length = 0;
+                    int n = 0;
+                    while (length < bytes.length && (n = gzip.read(bytes, length, bytes.length - length)) >= 0) {
+                        length += n;
+                    }
+                    if (length > 0) {
+                        buffer.clear();
+                        buffer.limit(length);
+                        filled.put(buffer);
+                    }
+                    if (n < 0) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                error = e;
+            } catch (InterruptedException e) {
+                // closed
+                return;
+            }
+            try {
+                filled.put(END);
+            } catch (InterruptedException e) {
+                // closed
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (ready == null && !ended) {
+                ByteBuffer buffer;
+                try {
+                    buffer = filled.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new IOException("Interrupted while waiting for gzip data", e));
+                }
+                if (buffer == END) {
+                    ended = true;
+                    if (error != null) {
+                        throw new UncheckedIOException(error);
+                    }
+                } else {
+                    ready = buffer;
+                }
+            }
+            return ready != null;
+        }
+
+        @Override
+        public ByteBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            // the caller is done with the previous buffer once it asks for the next one
+            if (current != null) {
+                free.add(current);
+            }
+            current = ready;
+            ready = null;
+            return current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            ended = true;
+            thread.interrupt();
+            in.close();
+        }
+    }
+
+    private static boolean isGzipHeader(ByteBuffer header) {
+        return (header.get(0) & 0xff) == 0x1f && (header.get(1) & 0xff) == 0x8b && header.get(2) == 8;
+    }
+
+    private static int unsignedShort(ByteBuffer buffer, int index) {
+        return (buffer.get(index) & 0xff) | (buffer.get(index + 1) & 0xff) << 8;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                break;
+            }
+        }
+    }
+}
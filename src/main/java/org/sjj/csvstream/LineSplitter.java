@@ -0,0 +1,85 @@
+package org.sjj.csvstream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits lines that have already been read (e.g. message payloads, or the
+ * lines of Files.readAllLines) into fields, with the same results as
+ * CsvParser.split(String).
+ *
+ * CsvParser.split(String) sets up a new parser, Reader and buffer for every
+ * line.  A LineSplitter sets up one parser and points it at each line in
+ * turn, reading the chars of the line directly, so the only allocations per
+ * line are the Strings of the fields and the array holding them.
+ *
+ * A LineSplitter is not thread-safe; give each thread its own.  The config's
+ * header flag is ignored, every line is a row.  If a line holds more than one
+ * record (e.g. a quoted field with a line break is not closed), only the
+ * first one is returned.
+ *
+ * E.g.
+ *    LineSplitter splitter = new LineSplitter();
+ *    for (ConsumerRecord<String, String> message : messages) {
+ *        String[] fields = splitter.split(message.value());
+ *        ...
+ *    }
+ */
+public final class LineSplitter {
+    // Private bits
+    private final CharSequenceInput input = new CharSequenceInput();
+    private final CsvParser       parser;
+
+    /**
+     * Splits on commas, without comments, like CsvParser.split(String).
+     */
+    public LineSplitter() {
+        this(CsvConfig.DEFAULT_DELIMITER);
+    }
+
+    /**
+     * Splits on the delimiter, without comments, like CsvParser.split(String, char).
+     */
+    public LineSplitter(char delimiter) {
+        this(lineConfig(delimiter));
+    }
+
+    public LineSplitter(CsvConfig config) {
+        this.parser = new CsvParser(config.withHeaderFlag(false), input, null);
+    }
+
+    static CsvConfig lineConfig(char delimiter) {
+        return new CsvConfig(false, delimiter, CsvConfig.DEFAULT_COMMENT, CsvConfig.DEFAULT_QUOTE, false);
+    }
+
+    /**
+     * Returns the fields of the line, or null if it is empty.
+     */
+    public String[] split(CharSequence line) {
+        input.reset(line);
+        return parser.split();
+    }
+
+    /**
+     * Splits the line without creating any Strings.  The returned CsvRow is
+     * reused, so it is only valid until the next call.
+     *
+     * @return the row, or null if the line is empty
+     */
+    public CsvRow splitRow(CharSequence line) {
+        input.reset(line);
+        return parser.nextRow();
+    }
+
+    /**
+     * Splits every line, in order.  An empty line gives a null entry, as
+     * split() would return.
+     */
+    public List<String[]> splitAll(List<? extends CharSequence> lines) {
+        List<String[]> rows = new ArrayList<>(lines.size());
+        for (CharSequence line : lines) {
+            rows.add(split(line));
+        }
+        return rows;
+    }
+}
@@ -2,10 +2,35 @@ package org.sjj.csvstream;
 
 /**
  * Created by stephen on 2/19/16.
+ *
+ * A line ending, for CsvWriter.setNewLineType() and CsvConfig.withNewLineType().
  */
 public enum NewLineType {
-    CR,
-    LF,
-    CRLF,
-    LFCR
+    CR('\r', -1),
+    LF('\n', -1),
+    CRLF('\r', '\n'),
+    LFCR('\n', '\r');
+
+    // Private bits
+    private final char            first;
+    private final int             second;
+
+    NewLineType(char first, int second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * The first (or only) char of the line ending.
+     */
+    char first() {
+        return first;
+    }
+
+    /**
+     * The second char of the line ending, or -1 if it is a single char.
+     */
+    int second() {
+        return second;
+    }
 }
@@ -0,0 +1,204 @@
+package org.sjj.csvstream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * Formats the rows of a parallel stream on several threads, and writes them
+ * out in encounter order on the calling thread.
+ *
+ * The stream's spliterator is split lazily, in order, into leaves of about
+ * LEAF_SIZE rows.  Each leaf is formatted by its own CsvWriter into a private
+ * block, on the executor, and the calling thread writes the blocks out in the
+ * order the leaves were split off.  At most window leaves are in flight at a
+ * time, so memory use stays bounded however long the stream is.  Blocks (and
+ * their CsvWriters) are recycled once they have been written.
+ */
+final class OrderedEncoder {
+    // Constants
+    static final int              LEAF_SIZE = 4096;
+
+    // Private bits
+    private final CsvConfig       config;
+    private final Writer          writer;
+    private final OutputStream    stream;
+    private final Charset         charset;
+    private final Executor        executor;
+    private final int             window;
+    private final ConcurrentLinkedQueue<Block> pool = new ConcurrentLinkedQueue<>();
+
+    OrderedEncoder(CsvConfig config, Writer writer, OutputStream stream, Charset charset,
+                   Executor executor, int window) {
+        this.config = config;
+        this.writer = writer;
+        this.stream = stream;
+        this.charset = charset;
+        this.executor = executor;
+        this.window = window;
+    }
+
+    /**
+     * A growable buffer that a CsvWriter formats one leaf into.
+     */
+    private final class Block {
+        final CsvWriter     csv;
+        char[]              chars;
+        byte[]              bytes;
+        int                 size;
+        long                rows;
+
+        Block() {
+            if (writer != null) {
+                chars = new char[CsvWriter.DEFAULT_BUFFER_SIZE];
+                csv = new CsvWriter(config, new Writer() {
+                    @Override
+                    public void write(char[] cbuf, int off, int len) {
+                        ensureCapacity(len);
+                        System.arraycopy(cbuf, off, chars, size, len);
+                        size += len;
+                    }
+
+                    @Override
+                    public void flush() {
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                }, null, null, null, CsvWriter.DEFAULT_BUFFER_SIZE);
+            } else {
+                bytes = new byte[CsvWriter.DEFAULT_BUFFER_SIZE];
+                csv = new CsvWriter(config, null, new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                        ensureCapacity(1);
+                        bytes[size++] = (byte) b;
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        ensureCapacity(len);
+                        System.arraycopy(b, off, bytes, size, len);
+                        size += len;
+                    }
+                }, null, charset, CsvWriter.DEFAULT_BUFFER_SIZE);
+            }
+        }
+
+        private void ensureCapacity(int extra) {
+            if (chars != null && size + extra > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, size + extra));
+            } else if (bytes != null && size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        Block format(Spliterator<? extends CharSequence[]> leaf) {
+            leaf.forEachRemaining(row -> {
+                csv.writeRow(row);
+                rows++;
+            });
+            // only moves the chars into this block, the encoder state is kept
+            csv.flush();
+            return this;
+        }
+
+        void writeOut() throws IOException {
+            if (writer != null) {
+                writer.write(chars, 0, size);
+            } else {
+                stream.write(bytes, 0, size);
+            }
+            size = 0;
+            rows = 0;
+            pool.offer(this);
+        }
+    }
+
+    private Block takeBlock() {
+        Block block = pool.poll();
+        return block != null ? block : new Block();
+    }
+
+    /**
+     * Splits off the next leaf of the remaining rows, or returns null.  The
+     * deque holds the not yet split suffixes, next one first.
+     */
+    private static <T> Spliterator<T> nextLeaf(Deque<Spliterator<T>> remaining) {
+        Spliterator<T> current = remaining.pollFirst();
+        if (current == null) {
+            return null;
+        }
+        Spliterator<T> prefix;
+        while (current.estimateSize() > LEAF_SIZE && (prefix = current.trySplit()) != null) {
+            remaining.addFirst(current);
+            current = prefix;
+        }
+        return current;
+    }
+
+    @SuppressWarnings("unchecked")
+    long write(Stream<? extends CharSequence[]> rows) {
+        // the rows are only read, so any subtype of CharSequence[] will do
+        Deque<Spliterator<CharSequence[]>> remaining = new ArrayDeque<>();
+        remaining.add((Spliterator<CharSequence[]>) rows.spliterator());
+        Deque<CompletableFuture<Block>> inFlight = new ArrayDeque<>();
+        long count = 0;
+        try {
+            Spliterator<CharSequence[]> leaf;
+            while ((leaf = nextLeaf(remaining)) != null) {
+                Spliterator<CharSequence[]> rowsOfLeaf = leaf;
+                Block block = takeBlock();
+                inFlight.add(CompletableFuture.supplyAsync(() -> block.format(rowsOfLeaf), executor));
+                if (inFlight.size() >= window) {
+                    count += writeOut(inFlight.poll());
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                count += writeOut(inFlight.poll());
+            }
+            if (writer != null) {
+                writer.flush();
+            } else {
+                stream.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (CompletableFuture<Block> future : inFlight) {
+                future.cancel(false);
+            }
+        }
+        return count;
+    }
+
+    private static long writeOut(CompletableFuture<Block> future) throws IOException {
+        Block block;
+        try {
+            block = future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+        long rows = block.rows;
+        block.writeOut();
+        return rows;
+    }
+}
@@ -0,0 +1,35 @@
+package org.sjj.csvstream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.PrimitiveIterator;
+
+/**
+ * The source of characters (or bytes) that a CsvParser reads from.
+ * nextInt() returns -1 once the input is exhausted.  close() releases
+ * whatever the input holds on to (a Reader, a thread, pooled buffers).
+ */
+interface ParserInput extends PrimitiveIterator.OfInt, Closeable {
+    /**
+     * Returns the next value without consuming it, or -1 at the end of the input.
+     */
+    int peekNext();
+
+    /**
+     * True if the values are raw UTF-8 bytes rather than chars, in which case
+     * fields containing bytes above 0x7f have to be decoded by the parser.
+     */
+    default boolean isByteInput() {
+        return false;
+    }
+
+    /**
+     * Starts counting input and refills into the metrics.
+     */
+    default void setMetrics(CsvMetrics metrics) {
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+}
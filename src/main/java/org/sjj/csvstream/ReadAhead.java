@@ -0,0 +1,172 @@
+package org.sjj.csvstream;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads a Reader into a ring of char buffers on a background thread, so that
+ * the next buffer is (usually) already full when the parser needs it.
+ *
+ * There is exactly one producer (the read-ahead thread) and one consumer (the
+ * parsing thread), so the handoff is just two counters: filled is only written
+ * by the producer and released only by the consumer.  Neither side takes a
+ * lock; a side that has to wait spins briefly and then parks until the other
+ * side publishes.
+ */
+final class ReadAhead implements Runnable {
+    // Constants
+    private static final int      SPINS = 64;
+
+    // Private bits
+    private final Reader          reader;
+    private final char[][]        buffers;
+    private final int[]           lengths;
+
+    // Private bits - Mutable state shared by the two threads
+    private volatile long         filled;          // buffers published by the producer
+    private volatile long         released;        // buffers handed back by the consumer
+    private volatile boolean      closed;
+    private volatile IOException  error;
+    private volatile Thread       waitingConsumer;
+    private volatile Thread       waitingProducer;
+
+    // Private bits - consumer state
+    private boolean               holding;         // the consumer has buffer released % count
+
+    ReadAhead(Reader reader, int bufferSize, int bufferCount) {
+        if (bufferSize <= 0 || bufferCount < 2) {
+            throw new IllegalArgumentException("Read-ahead needs a positive buffer size and at least 2 buffers");
+        }
+        this.reader = reader;
+        this.buffers = new char[bufferCount][bufferSize];
+        this.lengths = new int[bufferCount];
+    }
+
+    void start() {
+        Thread thread = new Thread(this, "csv-read-ahead");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        int count = buffers.length;
+        long next = 0;
+        try {
+            while (true) {
+                // leave the consumer's current buffer alone
+                int spins = 0;
+                while (next - released >= count) {
+                    if (closed) {
+                        return;
+                    }
+                    if (++spins < SPINS) {
+                        Thread.yield();
+                    } else {
+                        waitingProducer = Thread.currentThread();
+                        if (next - released >= count && !closed) {
+                            LockSupport.park(this);
+                        }
+                        waitingProducer = null;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                int slot = (int) (next % count);
+                int n;
+                try {
+                    do {
+                        n = reader.read(buffers[slot]);
+                    } while (n == 0);
+                } catch (IOException e) {
+                    error = e;
+                    n = -1;
+                }
+                lengths[slot] = n;
+                filled = ++next;
+                Thread consumer = waitingConsumer;
+                if (consumer != null) {
+                    LockSupport.unpark(consumer);
+                }
+                if (n == -1) {
+                    return;
+                }
+            }
+        } finally {
+            if (closed) {
+                closeReader();
+            }
+        }
+    }
+
+    /**
+     * Hands back the buffer returned by the previous call and waits for the
+     * next one to be filled.
+     *
+     * @return the number of chars in the buffer, or -1 at the end of the input
+     * @throws UncheckedIOException if reading the input failed
+     */
+    int next() {
+        long current = released;
+        if (holding) {
+            released = ++current;
+            Thread producer = waitingProducer;
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            }
+        }
+        int spins = 0;
+        while (filled <= current) {
+            if (++spins < SPINS) {
+                Thread.yield();
+            } else {
+                waitingConsumer = Thread.currentThread();
+                if (filled <= current) {
+                    LockSupport.park(this);
+                }
+                waitingConsumer = null;
+            }
+        }
+        holding = true;
+        int length = lengths[(int) (current % buffers.length)];
+        if (length == -1 && error != null) {
+            IOException e = error;
+            error = null;
+            throw new UncheckedIOException(e);
+        }
+        return length;
+    }
+
+    /**
+     * The buffer returned by the last call to next().
+     */
+    char[] buffer() {
+        return buffers[(int) (released % buffers.length)];
+    }
+
+    /**
+     * Stops reading ahead.  The reader is closed by the read-ahead thread once
+     * it stops, or straight away if it has already finished.
+     */
+    void close() {
+        closed = true;
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+        if (filled > 0 && lengths[(int) ((filled - 1) % buffers.length)] == -1) {
+            closeReader();
+        }
+    }
+
+    private void closeReader() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            // nothing more to read from it anyway
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.sjj.csvstream;
+
+/**
+ * A batch of rows stored by column, as filled in by a CsvBatchReader.  Each
+ * column keeps its values in a primitive array for its ColumnType, plus a
+ * bitmap of the rows that were empty or could not be parsed (nulls).  The
+ * arrays are sized for the capacity of the batch, only the first size()
+ * entries belong to the current batch.
+ *
+ * A RecordBatch is reused by the reader, so its contents are only valid
+ * until the next batch is read into it.
+ *
+ * E.g.
+ *    long[] volume = batch.getLongs(2);
+ *    for (int row = 0; row < batch.size(); row++) {
+ *        if (!batch.isNull(2, row)) {
+ *            total += volume[row];
+ *        }
+ *    }
+ */
+public final class RecordBatch {
+    // Private bits
+    private final CsvSchema       schema;
+    private final int             capacity;
+    private final ColumnVector[]  columns;
+
+    // Private bits - Mutable state
+    private int                   size;
+
+    RecordBatch(CsvSchema schema, int capacity, ColumnVector.Dictionary[] dictionaries) {
+        this.schema = schema;
+        this.capacity = capacity;
+        this.columns = new ColumnVector[schema.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new ColumnVector(schema.getType(i), capacity, dictionaries[i]);
+        }
+    }
+
+    void clear() {
+        size = 0;
+        for (ColumnVector column : columns) {
+            column.clear();
+        }
+    }
+
+    ColumnVector column(int column) {
+        return columns[column];
+    }
+
+    void setSize(int size) {
+        this.size = size;
+    }
+
+    public CsvSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Returns the number of rows in the batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the maximum number of rows the batch can hold.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    public int columnCount() {
+        return columns.length;
+    }
+
+    private ColumnVector typed(int column, ColumnType type) {
+        ColumnVector vector = columns[column];
+        if (vector.type != type) {
+            throw new IllegalStateException("Column " + schema.getName(column) + " is " + vector.type + ", not " + type);
+        }
+        return vector;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of a batch with " + size + " rows");
+        }
+    }
+
+    /**
+     * True if the value of the column was empty or could not be parsed.
+     */
+    public boolean isNull(int column, int row) {
+        checkRow(row);
+        return columns[column].isNull(row);
+    }
+
+    /**
+     * Returns the values of a LONG column.  Null rows hold 0.
+     */
+    public long[] getLongs(int column) {
+        return typed(column, ColumnType.LONG).longs;
+    }
+
+    /**
+     * Returns the values of a DOUBLE column.  Null rows hold 0.0.
+     */
+    public double[] getDoubles(int column) {
+        return typed(column, ColumnType.DOUBLE).doubles;
+    }
+
+    /**
+     * Returns the dictionary codes of a DICTIONARY column.  Null rows hold -1.
+     * Codes are stable across all batches of the same reader.
+     */
+    public int[] getDictionaryCodes(int column) {
+        return typed(column, ColumnType.DICTIONARY).codes;
+    }
+
+    public int getDictionarySize(int column) {
+        return typed(column, ColumnType.DICTIONARY).getDictionary().size();
+    }
+
+    public String getDictionaryValue(int column, int code) {
+        return typed(column, ColumnType.DICTIONARY).getDictionary().get(code);
+    }
+
+    /**
+     * Returns the packed chars of a STRING column.  The value of row r is the
+     * range [offsets[r], offsets[r + 1]) of this array, see getOffsets().
+     */
+    public char[] getChars(int column) {
+        return typed(column, ColumnType.STRING).chars;
+    }
+
+    public int[] getOffsets(int column) {
+        return typed(column, ColumnType.STRING).offsets;
+    }
+
+    public long getLong(int column, int row) {
+        checkRow(row);
+        return getLongs(column)[row];
+    }
+
+    public double getDouble(int column, int row) {
+        checkRow(row);
+        return getDoubles(column)[row];
+    }
+
+    /**
+     * Returns the value of a STRING or DICTIONARY column as a String, or null.
+     */
+    public String getString(int column, int row) {
+        checkRow(row);
+        ColumnVector vector = columns[column];
+        if (vector.type != ColumnType.STRING && vector.type != ColumnType.DICTIONARY) {
+            throw new IllegalStateException("Column " + schema.getName(column) + " is " + vector.type);
+        }
+        return vector.getString(row);
+    }
+}
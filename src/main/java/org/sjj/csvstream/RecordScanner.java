@@ -0,0 +1,427 @@
+package org.sjj.csvstream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.LongConsumer;
+
+/**
+ * A byte-level state machine that finds record boundaries without building
+ * any fields.  It mirrors the record rules used by CsvParser: a quote only
+ * opens a quoted field at the start of a field, newlines inside a quoted
+ * field are content, a comment at the start of a field runs to the end of the
+ * line, and up to two CR/LF characters directly after a record terminator
+ * are swallowed along with it.  With a NewLineType in the config, only that
+ * line ending ends a record (or a comment) and nothing is swallowed, and
+ * with quotes disabled the quote is ordinary data, again as in CsvParser.
+ *
+ * The delimiter, quote and comment characters must be ASCII so that they can
+ * be matched against raw bytes of any ASCII compatible encoding (e.g. UTF-8).
+ */
+final class RecordScanner {
+    // Constants
+    static final int         FIELD_START = 0;
+    static final int         UNQUOTED = 1;
+    static final int         QUOTED = 2;
+    static final int         QUOTE_IN_QUOTED = 3;
+    static final int         COMMENT = 4;
+    static final int         AFTER_NEWLINE = 5;
+    static final int         PENDING_NEWLINE = 6;     // seen the first char of a two char line ending
+
+    private static final byte LF_BYTE = '\n';
+    private static final byte CR_BYTE = '\r';
+    private static final int  WINDOW_SIZE = 64 * 1024;
+
+    // Private bits
+    private final byte       delim;
+    private final byte       quote;
+    private final byte       comment;
+    private final boolean    enableComments;
+    private final boolean    enableQuotes;
+    private final int        eol;               // the line ending's first byte, or -1 for any CR or LF
+    private final int        eol2;              // its second byte, or -1
+
+    // Private bits - Mutable state
+    private int              state = FIELD_START;
+    private int              swallowed;
+    private int              pending;           // the state to go back to if a line ending is not completed
+
+    RecordScanner(CsvConfig config) {
+        this.delim = toByte(config.getDelimiter());
+        this.quote = toByte(config.getQuote());
+        this.comment = toByte(config.getComment());
+        this.enableComments = config.getCommentsEnabled();
+        this.enableQuotes = config.getQuotesEnabled();
+        NewLineType newLineType = config.getNewLineType();
+        this.eol = newLineType == null ? -1 : newLineType.first();
+        this.eol2 = newLineType == null ? -1 : newLineType.second();
+    }
+
+    private static byte toByte(char ch) {
+        if (ch > 0x7f) {
+            throw new IllegalArgumentException("Byte level scanning requires ASCII control characters: " + ch);
+        }
+        return (byte) ch;
+    }
+
+    private static boolean isNewline(byte b) {
+        return b == LF_BYTE || b == CR_BYTE;
+    }
+
+    int getState() {
+        return state;
+    }
+
+    void reset(int state) {
+        this.state = state;
+        this.swallowed = 0;
+    }
+
+    /**
+     * Moves on from the given state if b is (the start of) a line ending:
+     * to after the comment if the state is COMMENT, otherwise to the end of
+     * the record.
+     *
+     * @return false if b is not a line ending
+     */
+    private boolean newline(byte b, int from) {
+        if (eol < 0) {
+            if (!isNewline(b)) {
+                return false;
+            }
+            state = from == COMMENT ? FIELD_START : AFTER_NEWLINE;
+        } else if (b != eol) {
+            return false;
+        } else if (eol2 < 0) {
+            state = from == COMMENT ? FIELD_START : AFTER_NEWLINE;
+        } else {
+            state = PENDING_NEWLINE;
+            pending = from;
+        }
+        return true;
+    }
+
+    /**
+     * Feeds one byte to the state machine.
+     *
+     * @return true if a new record starts at this byte, i.e. this byte is the
+     *         first one following a complete record and its terminator.
+     */
+    boolean accept(byte b) {
+        switch (state) {
+            case AFTER_NEWLINE:
+                if (eol < 0 && swallowed < 2 && isNewline(b)) {
+                    swallowed++;
+                    return false;
+                }
+                state = FIELD_START;
+                swallowed = 0;
+                acceptFieldStart(b);
+                return true;
+            case FIELD_START:
+                acceptFieldStart(b);
+                return false;
+            case UNQUOTED:
+                if (b == delim) {
+                    state = FIELD_START;
+                } else {
+                    newline(b, UNQUOTED);
+                }
+                return false;
+            case QUOTED:
+                if (b == quote) {
+                    state = QUOTE_IN_QUOTED;
+                }
+                return false;
+            case QUOTE_IN_QUOTED:
+                if (b == delim) {
+                    state = FIELD_START;
+                } else if (!newline(b, QUOTED)) {
+                    // either an escaped quote or an illegal one, both stay in the field.
+                    state = QUOTED;
+                }
+                return false;
+            case COMMENT:
+                if (newline(b, COMMENT) && eol < 0) {
+                    // A comment does not end the record, but the parser does
+                    // swallow one extra CR or LF after it.
+                    swallowed = -1;
+                }
+                return false;
+            case PENDING_NEWLINE:
+                if (b == eol2) {
+                    state = pending == COMMENT ? FIELD_START : AFTER_NEWLINE;
+                    return false;
+                }
+                // only half a line ending, so it was data after all
+                state = pending;
+                return accept(b);
+            default:
+                throw new IllegalStateException("Unknown scanner state " + state);
+        }
+    }
+
+    private void acceptFieldStart(byte b) {
+        if (swallowed == -1) {
+            swallowed = 0;
+            if (isNewline(b)) {
+                return;
+            }
+        }
+        if (enableComments && b == comment) {
+            state = COMMENT;
+        } else if (enableQuotes && b == quote) {
+            state = QUOTED;
+        } else if (b == delim) {
+            state = FIELD_START;
+        } else if (!newline(b, UNQUOTED)) {
+            state = UNQUOTED;
+        }
+    }
+
+    boolean isInsideQuotes() {
+        return state == QUOTED || state == QUOTE_IN_QUOTED;
+    }
+
+    /**
+     * Scans from a known record boundary and returns the offset at which the
+     * next record starts, or the end offset if the input ends first.
+     */
+    long skipRecord(FileChannel channel, long start, long end) throws IOException {
+        reset(FIELD_START);
+        ByteBuffer buffer = ByteBuffer.allocate(WINDOW_SIZE);
+        long pos = start;
+        while (pos < end) {
+            int n = read(channel, buffer, pos, end);
+            for (int i = 0; i < n; i++) {
+                if (accept(buffer.get(i))) {
+                    return pos + i;
+                }
+            }
+            pos += n;
+        }
+        return end;
+    }
+
+    /**
+     * Scans a range that starts at a known record boundary, and passes the
+     * offset of every interval-th record start to starts, beginning with the
+     * record at start itself.
+     *
+     * @return the number of records that start in the range
+     */
+    long scan(FileChannel channel, long start, long end, int interval, LongConsumer starts) throws IOException {
+        if (start >= end) {
+            return 0;
+        }
+        reset(FIELD_START);
+        ByteBuffer buffer = ByteBuffer.allocate(WINDOW_SIZE);
+        starts.accept(start);
+        long records = 1;
+        long pos = start;
+        while (pos < end) {
+            int n = read(channel, buffer, pos, end);
+            if (n == 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (accept(buffer.get(i))) {
+                    if (records % interval == 0) {
+                        starts.accept(pos + i);
+                    }
+                    records++;
+                }
+            }
+            pos += n;
+        }
+        return records;
+    }
+
+    /**
+     * Skips count records from a known record boundary.
+     *
+     * @return the offset of the record after them, or end if the input ends first
+     */
+    long skipRecords(FileChannel channel, long start, long end, long count) throws IOException {
+        if (count <= 0) {
+            return start;
+        }
+        reset(FIELD_START);
+        ByteBuffer buffer = ByteBuffer.allocate(WINDOW_SIZE);
+        long skipped = 0;
+        long pos = start;
+        while (pos < end) {
+            int n = read(channel, buffer, pos, end);
+            if (n == 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (accept(buffer.get(i)) && ++skipped == count) {
+                    return pos + i;
+                }
+            }
+            pos += n;
+        }
+        return end;
+    }
+
+    /**
+     * Finds the first record boundary at or after pos, where pos is an
+     * arbitrary offset that is not known to be a record boundary.  The quote
+     * state at pos is unknown, so every possible starting state is tracked
+     * in lockstep through the look-ahead window until they all agree.  With
+     * comments enabled pos may also be inside a comment line, where a quote
+     * is just text, so COMMENT is always one of the starting states.
+     *
+     * If they do not agree within the window, e.g. because pos is inside a
+     * quoted field longer than the window, the state at pos is worked out
+     * from start instead: if there is no quote between start and pos it
+     * cannot be inside quotes, otherwise start to pos is scanned.
+     *
+     * @param start a known record boundary at or before pos
+     * @return the offset of the next record start, or -1 when no boundary
+     *         could be established before end.
+     */
+    long resync(FileChannel channel, long start, long pos, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(WINDOW_SIZE);
+        int n = read(channel, buffer, pos, end);
+        if (n <= 0) {
+            return -1;
+        }
+
+        int agreed = lockstep(candidates(enableQuotes), buffer, n);
+        if (agreed < 0 && enableQuotes && !contains(channel, buffer, start, pos, quote)) {
+            read(channel, buffer, pos, end);
+            agreed = lockstep(candidates(false), buffer, n);
+        }
+        if (agreed < 0) {
+            reset(FIELD_START);
+            long next = start;
+            while (next < pos) {
+                int m = read(channel, buffer, next, pos);
+                if (m == 0) {
+                    return -1;
+                }
+                for (int j = 0; j < m; j++) {
+                    accept(buffer.get(j));
+                }
+                next += m;
+            }
+            return nextRecord(channel, buffer, pos, end);
+        }
+        // Every possible history leads to the same state, so from here on the
+        // scan is exact.  Carry on to the next record start.
+        return nextRecord(channel, buffer, pos + agreed + 1, end);
+    }
+
+    private int[] candidates(boolean quoted) {
+        if (enableComments) {
+            return quoted
+                    ? new int[]{ FIELD_START, UNQUOTED, QUOTED, QUOTE_IN_QUOTED, COMMENT }
+                    : new int[]{ FIELD_START, UNQUOTED, COMMENT };
+        }
+        return quoted
+                ? new int[]{ FIELD_START, UNQUOTED, QUOTED, QUOTE_IN_QUOTED }
+                : new int[]{ FIELD_START, UNQUOTED };
+    }
+
+    /**
+     * Runs a scanner from each of the starting states over the first n bytes
+     * of buffer, and leaves this scanner in their common state once they all
+     * agree.
+     *
+     * @return the index of the byte after which they agree, or -1 if they
+     *         never do
+     */
+    private int lockstep(int[] candidates, ByteBuffer buffer, int n) {
+        RecordScanner[] scanners = new RecordScanner[candidates.length];
+        for (int c = 0; c < candidates.length; c++) {
+            scanners[c] = copy();
+            scanners[c].reset(candidates[c]);
+        }
+        for (int i = 0; i < n; i++) {
+            byte b = buffer.get(i);
+            boolean agreed = true;
+            for (RecordScanner scanner : scanners) {
+                scanner.accept(b);
+                agreed &= scanner.state == scanners[0].state && scanner.swallowed == scanners[0].swallowed
+                        && (scanner.state != PENDING_NEWLINE || scanner.pending == scanners[0].pending);
+            }
+            if (agreed) {
+                this.state = scanners[0].state;
+                this.swallowed = scanners[0].swallowed;
+                this.pending = scanners[0].pending;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Scans on from pos in the current state.
+     *
+     * @return the offset of the next record start, or -1 if the input ends first
+     */
+    private long nextRecord(FileChannel channel, ByteBuffer buffer, long pos, long end) throws IOException {
+        while (pos < end) {
+            int n = read(channel, buffer, pos, end);
+            if (n == 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (accept(buffer.get(i))) {
+                    return pos + i;
+                }
+            }
+            pos += n;
+        }
+        return -1;
+    }
+
+    /**
+     * Tests whether b occurs anywhere in [start, end), 8 bytes at a time.
+     */
+    private static boolean contains(FileChannel channel, ByteBuffer buffer, long start, long end, byte b)
+            throws IOException {
+        long pattern = Swar.pattern(b);
+        while (start < end) {
+            int n = read(channel, buffer, start, end);
+            if (n == 0) {
+                break;
+            }
+            if (Swar.indexOfAny(buffer, 0, n, pattern, pattern, pattern) < n) {
+                return true;
+            }
+            start += n;
+        }
+        return false;
+    }
+
+    private RecordScanner copy() {
+        return new RecordScanner(this);
+    }
+
+    private RecordScanner(RecordScanner other) {
+        this.delim = other.delim;
+        this.quote = other.quote;
+        this.comment = other.comment;
+        this.enableComments = other.enableComments;
+        this.enableQuotes = other.enableQuotes;
+        this.eol = other.eol;
+        this.eol2 = other.eol2;
+    }
+
+    private static int read(FileChannel channel, ByteBuffer buffer, long pos, long end) throws IOException {
+        buffer.clear();
+        if (end - pos < buffer.capacity()) {
+            buffer.limit((int) (end - pos));
+        }
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, pos + buffer.position());
+            if (n < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+}
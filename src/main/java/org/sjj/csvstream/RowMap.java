@@ -0,0 +1,143 @@
+package org.sjj.csvstream;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only Map view of one row, for CsvParser.mappify().  It holds just
+ * the row's values; the keys and the key to column lookup live in a Header
+ * that is built once and shared by all of the rows.
+ *
+ * It has the same entries, in the same order, as a LinkedHashMap filled by
+ * putting header[i] -> values[i] for each column the row has: a short row
+ * has no entries for its missing columns, and if the header repeats a name,
+ * the key stays at its first position and takes the value of the last of its
+ * columns that the row has.
+ */
+final class RowMap extends AbstractMap<String, String> {
+    // Private bits
+    private final Header          header;
+    private final String[]        values;
+
+    /**
+     * The distinct header names and where their values are, shared by all rows.
+     */
+    static final class Header {
+        private final String[]              keys;        // distinct, in order of first appearance
+        private final int[][]               columns;     // the columns of each key, ascending
+        private final int[]                 sizes;       // the map size for each row length
+        private final Map<String, Integer>  indexes = new HashMap<>();
+
+        Header(String[] fields) {
+            String[] keys = new String[fields.length];
+            int[][] columns = new int[fields.length][];
+            int count = 0;
+            for (int column = 0; column < fields.length; column++) {
+                Integer known = indexes.get(fields[column]);
+                if (known == null) {
+                    indexes.put(fields[column], count);
+                    keys[count] = fields[column];
+                    columns[count++] = new int[]{column};
+                } else {
+                    int[] previous = columns[known];
+                    columns[known] = Arrays.copyOf(previous, previous.length + 1);
+                    columns[known][previous.length] = column;
+                }
+            }
+            this.keys = Arrays.copyOf(keys, count);
+            this.columns = Arrays.copyOf(columns, count);
+
+            // a key is present once the row reaches its first column
+            this.sizes = new int[fields.length + 1];
+            for (int length = 1, key = 0; length <= fields.length; length++) {
+                while (key < count && this.columns[key][0] < length) {
+                    key++;
+                }
+                sizes[length] = key;
+            }
+        }
+
+        int size(int rowLength) {
+            return sizes[Math.min(rowLength, sizes.length - 1)];
+        }
+
+        /**
+         * The value of the key at position index for the row, the last of its
+         * columns that the row has.
+         */
+        String value(int index, String[] values) {
+            int[] cols = columns[index];
+            for (int i = cols.length - 1; i >= 0; i--) {
+                if (cols[i] < values.length) {
+                    return values[cols[i]];
+                }
+            }
+            return null;
+        }
+
+        int indexOf(Object key) {
+            Integer index = indexes.get(key);
+            return index == null ? -1 : index;
+        }
+    }
+
+    RowMap(Header header, String[] values) {
+        this.header = header;
+        this.values = values;
+    }
+
+    @Override
+    public int size() {
+        return header.size(values.length);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int index = header.indexOf(key);
+        return index >= 0 && index < size();
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = header.indexOf(key);
+        return index >= 0 && index < size() ? header.value(index, values) : null;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public int size() {
+                return RowMap.this.size();
+            }
+
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<Entry<String, String>>() {
+                    private final int size = RowMap.this.size();
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (next >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        int index = next++;
+                        return new SimpleImmutableEntry<>(header.keys[index], header.value(index, values));
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,146 @@
+package org.sjj.csvstream;
+
+/**
+ * A small cache of the Strings of one column, so that a value that repeats
+ * row after row (a country, a status, a currency code) is returned as the
+ * same String instance instead of a new one each time.
+ *
+ * Lookups hash the chars of the field in place, so a hit creates nothing.
+ * The table is a bounded open-addressing table: a value is looked for in a
+ * few slots after its hash, and when they are all taken by other values it
+ * replaces the one in its first slot.  If the hit rate over a window of
+ * lookups falls below MIN_HIT_RATE, the column is taken to have too many
+ * distinct values to be worth caching: the table is dropped and from then
+ * on every lookup just creates a String.
+ *
+ * Enabled with CsvConfig.withStringCache(), and read with
+ * CsvParser.getStringCache(column), e.g. to log getHitRate().
+ */
+public final class StringCache {
+    // Constants
+    static final int              MAX_LENGTH = 64;        // longer fields are not cached
+    static final int              WINDOW = 4096;          // lookups between hit rate checks
+    static final double           MIN_HIT_RATE = 0.25;
+    private static final int      PROBES = 4;
+
+    // Private bits
+    private final int             size;
+
+    // Private bits - Mutable state
+    private String[]              strings;
+    private int[]                 hashes;
+    private int                   count;
+    private long                  hits;
+    private long                  misses;
+    private int                   windowLookups;
+    private int                   windowHits;
+
+    StringCache(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid string cache size " + size);
+        }
+        this.size = size;
+        int tableSize = Integer.highestOneBit(Math.max(size, 2) - 1) << 2;   // at most half full
+        this.strings = new String[tableSize];
+        this.hashes = new int[tableSize];
+    }
+
+    /**
+     * Returns a String with the given chars, from the cache if it has one.
+     */
+    String get(char[] buf, int offset, int length) {
+        if (strings == null || length > MAX_LENGTH) {
+            return new String(buf, offset, length);
+        }
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buf[i];
+        }
+        hash ^= hash >>> 16;
+
+        int mask = strings.length - 1;
+        int home = hash & mask;
+        int free = -1;
+        for (int probe = 0; probe < PROBES; probe++) {
+            int slot = (home + probe) & mask;
+            String s = strings[slot];
+            if (s == null) {
+                free = slot;
+                break;
+            }
+            if (hashes[slot] == hash && matches(s, buf, offset, length)) {
+                hits++;
+                windowHits++;
+                checkWindow();
+                return s;
+            }
+        }
+
+        String s = new String(buf, offset, length);
+        misses++;
+        if (free >= 0 && count < size) {
+            count++;
+        } else {
+            // full, or no free slot nearby: replace the value in the home slot
+            free = home;
+        }
+        strings[free] = s;
+        hashes[free] = hash;
+        checkWindow();
+        return s;
+    }
+
+    private static boolean matches(String s, char[] buf, int offset, int length) {
+        if (s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != buf[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkWindow() {
+        if (++windowLookups == WINDOW) {
+            if (windowHits < WINDOW * MIN_HIT_RATE) {
+                strings = null;
+                hashes = null;
+                count = 0;
+            }
+            windowLookups = 0;
+            windowHits = 0;
+        }
+    }
+
+    /**
+     * Returns false once the column has been found to have too many distinct
+     * values, and the cache has been dropped.
+     */
+    public boolean isEnabled() {
+        return strings != null;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * The fraction of the cached lookups that returned an existing String,
+     * or 0 if there have been none.
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "StringCache{hits=" + hits + ", misses=" + misses + ", enabled=" + isEnabled() + "}";
+    }
+}
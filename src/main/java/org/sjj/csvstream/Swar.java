@@ -0,0 +1,64 @@
+package org.sjj.csvstream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * SWAR (SIMD within a register) helpers: test the 8 bytes of a long at once
+ * for a few byte values, using plain long arithmetic.
+ */
+final class Swar {
+    // Constants
+    private static final long LOW_SEVEN_BITS = 0x7f7f7f7f7f7f7f7fL;
+    private static final long ONES = 0x0101010101010101L;
+
+    private Swar() {
+    }
+
+    /**
+     * Returns a long with the byte b repeated in all 8 bytes.
+     */
+    static long pattern(int b) {
+        return (b & 0xffL) * ONES;
+    }
+
+    /**
+     * Returns a mask with the high bit set in every byte of word that is equal
+     * to the byte repeated in pattern.  Unlike the usual (x - 0x01..) & ~x trick
+     * this has no false positives, so the mask is exact for every byte.
+     */
+    static long matches(long word, long pattern) {
+        long x = word ^ pattern;
+        long y = (x & LOW_SEVEN_BITS) + LOW_SEVEN_BITS;
+        return ~(y | x | LOW_SEVEN_BITS);
+    }
+
+    /**
+     * Finds the first byte in buffer[from, limit) equal to any of the three
+     * patterns, 8 bytes at a time.
+     *
+     * @return the index of that byte, or limit if there is none
+     */
+    static int indexOfAny(ByteBuffer buffer, int from, int limit, long p1, long p2, long p3) {
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int i = from;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long word = buffer.getLong(i);
+            long mask = matches(word, p1) | matches(word, p2) | matches(word, p3);
+            if (mask != 0) {
+                int zeros = bigEndian ? Long.numberOfLeadingZeros(mask) : Long.numberOfTrailingZeros(mask);
+                return i + (zeros >>> 3);
+            }
+        }
+        byte b1 = (byte) p1;
+        byte b2 = (byte) p2;
+        byte b3 = (byte) p3;
+        for (; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == b1 || b == b2 || b == b3) {
+                return i;
+            }
+        }
+        return limit;
+    }
+}
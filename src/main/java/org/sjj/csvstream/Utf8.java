@@ -0,0 +1,74 @@
+package org.sjj.csvstream;
+
+/**
+ * UTF-8 helpers for the byte level input path.
+ */
+final class Utf8 {
+    // Constants
+    private static final char REPLACEMENT = '\uFFFD';
+    private static final int[] MIN_CODE_POINT = { 0, 0x80, 0x800, 0x10000 };
+
+    private Utf8() {
+    }
+
+    /**
+     * Decodes UTF-8 bytes that were stored one byte per char in buf[start, end)
+     * into chars, writing the result over the same range.  The decoded text is
+     * never longer than the bytes, so decoding in place is safe.  Malformed
+     * sequences are replaced with U+FFFD.
+     *
+     * @return the end of the decoded text
+     */
+    static int decodeInPlace(char[] buf, int start, int end) {
+        int out = start;
+        int i = start;
+        while (i < end) {
+            int b = buf[i];
+            if (b < 0x80) {
+                buf[out++] = (char) b;
+                i++;
+                continue;
+            }
+
+            int extra;
+            int cp;
+            if ((b & 0xe0) == 0xc0) {
+                extra = 1;
+                cp = b & 0x1f;
+            } else if ((b & 0xf0) == 0xe0) {
+                extra = 2;
+                cp = b & 0x0f;
+            } else if ((b & 0xf8) == 0xf0) {
+                extra = 3;
+                cp = b & 0x07;
+            } else {
+                buf[out++] = REPLACEMENT;
+                i++;
+                continue;
+            }
+
+            int k = 1;
+            while (k <= extra && i + k < end && (buf[i + k] & 0xc0) == 0x80) {
+                cp = (cp << 6) | (buf[i + k] & 0x3f);
+                k++;
+            }
+            if (k <= extra
+                    || cp < MIN_CODE_POINT[extra]
+                    || cp > Character.MAX_CODE_POINT
+                    || (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE)) {
+                // truncated, overlong or otherwise invalid sequence
+                buf[out++] = REPLACEMENT;
+                i += k;
+                continue;
+            }
+            i += k;
+            if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                buf[out++] = Character.highSurrogate(cp);
+                buf[out++] = Character.lowSurrogate(cp);
+            } else {
+                buf[out++] = (char) cp;
+            }
+        }
+        return out;
+    }
+}
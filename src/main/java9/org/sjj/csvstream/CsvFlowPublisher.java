@@ -0,0 +1,84 @@
+package org.sjj.csvstream;
+
+import java.io.Reader;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * A java.util.concurrent.Flow.Publisher of the rows of a Reader, in batches,
+ * for use with reactive libraries.  It is a CsvRowPublisher underneath, so it
+ * only parses as many batches as have been requested, and cancelling the
+ * subscription closes the Reader.
+ *
+ * This class is only in the Java 9 part of the multi-release jar.
+ *
+ * E.g.
+ *    Flow.Publisher<List<String[]>> rows = new CsvFlowPublisher(CsvConfig.DEFAULTS, reader, executor);
+ *    rows.subscribe(subscriber);
+ */
+public final class CsvFlowPublisher implements Flow.Publisher<List<String[]>> {
+    // Private bits
+    private final CsvRowPublisher publisher;
+
+    public CsvFlowPublisher(CsvConfig config, Reader reader, Executor executor) {
+        this(new CsvRowPublisher(config, reader, executor));
+    }
+
+    /**
+     * @param batchSize the most rows in each batch
+     */
+    public CsvFlowPublisher(CsvConfig config, Reader reader, Executor executor, int batchSize) {
+        this(new CsvRowPublisher(config, reader, executor, batchSize));
+    }
+
+    public CsvFlowPublisher(CsvRowPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    /**
+     * Returns the header fields, or null before the first batch has been
+     * requested or if there is no header.
+     */
+    public String[] getHeaderFields() {
+        return publisher.getHeaderFields();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<String[]>> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        publisher.subscribe(new CsvRowPublisher.Subscriber() {
+            @Override
+            public void onSubscribe(CsvRowPublisher.Subscription subscription) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                        subscription.request(n);
+                    }
+
+                    @Override
+                    public void cancel() {
+                        subscription.cancel();
+                    }
+                });
+            }
+
+            @Override
+            public void onNext(List<String[]> rows) {
+                subscriber.onNext(rows);
+            }
+
+            @Override
+            public void onError(Throwable failure) {
+                subscriber.onError(failure);
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        });
+    }
+}
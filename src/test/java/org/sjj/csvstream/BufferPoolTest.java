@@ -0,0 +1,159 @@
+package org.sjj.csvstream;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BufferPoolTest {
+    /**
+     * A Reader that remembers being closed.
+     */
+    private static final class TrackedReader extends StringReader {
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        TrackedReader(String s) {
+            super(s);
+        }
+
+        @Override
+        public void close() {
+            closed.set(true);
+            super.close();
+        }
+    }
+
+    @Test
+    public void testBorrowAndRelease() {
+        BufferPool pool = new BufferPool(2);
+        char[] buffer = pool.borrow(100);
+        assertEquals(100, buffer.length);
+        assertEquals(0, pool.size());
+        pool.release(buffer);
+        assertEquals(1, pool.size());
+
+        // too small for a bigger request, so a new one is made
+        char[] bigger = pool.borrow(200);
+        assertEquals(200, bigger.length);
+        assertSame(buffer, pool.borrow(50));
+        assertEquals(0, pool.size());
+
+        // a full stripe drops what is returned to it
+        pool.release(new char[10]);
+        pool.release(new char[10]);
+        pool.release(new char[10]);
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testConcurrentUse() {
+        BufferPool pool = new BufferPool();
+        IntStream.range(0, 10000).parallel().forEach(i -> {
+            char[] buffer = pool.borrow(64);
+            // nobody else may hold the same buffer while it is borrowed
+            buffer[0] = (char) i;
+            Thread.yield();
+            assertEquals((char) i, buffer[0]);
+            pool.release(buffer);
+        });
+        assertTrue(pool.size() > 0);
+    }
+
+    @Test
+    public void testParserReturnsBuffersOnClose() {
+        BufferPool pool = new BufferPool();
+        CsvConfig config = CsvConfig.DEFAULTS.withBufferSize(256).withBufferPool(pool);
+        assertSame(pool, config.getBufferPool());
+        assertEquals(256, config.getBufferSize());
+
+        TrackedReader reader = new TrackedReader("a,b\n1,2\n");
+        CsvParser parser = new CsvParser(config, reader);
+        assertArrayEquals(new String[] { "1", "2" }, parser.split());
+        parser.close();
+        assertTrue(reader.closed.get());
+        // the read buffer and the row buffer
+        assertEquals(2, pool.size());
+        assertNull(parser.split());
+        parser.close();
+        assertEquals(2, pool.size());
+
+        // the next parser takes them again
+        try (CsvParser next = new CsvParser(config, new StringReader("a,b\n3,4\n"))) {
+            assertEquals(0, pool.size());
+            assertArrayEquals(new String[] { "3", "4" }, next.split());
+        }
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testReset() {
+        CsvConfig config = CsvConfig.DEFAULTS.withProjection("b", "c");
+        CsvParser parser = new CsvParser(config, new StringReader("a,b,c\n1,2,3\n4,5,6\n"));
+        assertArrayEquals(new String[] { "b", "c" }, parser.getHeaderFields());
+        assertArrayEquals(new String[] { "2", "3" }, parser.split());
+
+        // a different column order in the next file, read before the first is finished
+        TrackedReader second = new TrackedReader("c,b,a\n9,8,7\n");
+        parser.reset(second);
+        assertArrayEquals(new String[] { "b", "c" }, parser.getHeaderFields());
+        assertArrayEquals(new String[] { "8", "9" }, parser.split());
+        assertNull(parser.split());
+
+        parser.reset(new StringReader("# comment\nb,c\n\"x,y\",z\n"));
+        assertTrue(second.closed.get());
+        List<String[]> rows = new ArrayList<>();
+        String[] row;
+        while ((row = parser.split()) != null) {
+            rows.add(row);
+        }
+        assertEquals(1, rows.size());
+        assertArrayEquals(new String[] { "x,y", "z" }, rows.get(0));
+    }
+
+    @Test
+    public void testResetWithReadAhead() {
+        CsvConfig config = CsvConfig.DEFAULTS_WITHOUT_HEADER.withReadAhead(16, 3);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append(i).append(",x\n");
+        }
+        CsvParser parser = new CsvParser(config, new StringReader(sb.toString()));
+        assertArrayEquals(new String[] { "0", "x" }, parser.split());
+        for (int file = 0; file < 5; file++) {
+            parser.reset(new StringReader(sb.toString()));
+            assertEquals(100, parser.splitLines().count());
+        }
+        parser.close();
+    }
+
+    @Test
+    public void testResetErrors() {
+        CsvParser bytes = new CsvParser(CsvConfig.DEFAULTS, ByteBuffer.wrap("a\n1\n".getBytes(StandardCharsets.UTF_8)));
+        try {
+            bytes.reset(new StringReader("a\n"));
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS, new StringReader("a\n1\n"));
+        parser.close();
+        try {
+            parser.reset(new StringReader("a\n"));
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
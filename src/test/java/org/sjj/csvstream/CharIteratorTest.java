@@ -0,0 +1,129 @@
+package org.sjj.csvstream;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CharIteratorTest {
+
+    /**
+     * Returns a few chars at a time, then fails.
+     */
+    private static class FailingReader extends Reader {
+        private final Reader delegate;
+        private int remaining;
+        boolean closed;
+
+        FailingReader(String input, int failAfter) {
+            this.delegate = new StringReader(input);
+            this.remaining = failAfter;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                throw new IOException("disk on fire");
+            }
+            int n = delegate.read(cbuf, off, Math.min(len, Math.min(remaining, 7)));
+            remaining -= Math.max(n, 0);
+            return n;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private String buildInput(int rows) {
+        StringBuilder sb = new StringBuilder("id,name,notes\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append(i).append(",\"name ").append(i).append("\nsecond line\",").append(i % 13).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private String drain(CharIterator iter) {
+        StringBuilder sb = new StringBuilder();
+        while (iter.hasNext()) {
+            assertEquals(iter.peekNext(), iter.peekNext());
+            sb.append((char) iter.nextInt());
+        }
+        assertEquals(-1, iter.nextInt());
+        assertEquals(-1, iter.peekNext());
+        return sb.toString();
+    }
+
+    @Test
+    public void testChunkSizes() {
+        String input = buildInput(1000);
+        for (int size : new int[]{1, 3, 64, 8192}) {
+            assertEquals(input, drain(new CharIterator(new StringReader(input), size, 1)));
+        }
+    }
+
+    @Test
+    public void testReadAheadMatchesSynchronous() {
+        String input = buildInput(5000);
+        for (int count : new int[]{2, 3, 8}) {
+            for (int size : new int[]{1, 17, 4096}) {
+                assertEquals(input, drain(new CharIterator(new StringReader(input), size, count)));
+            }
+        }
+    }
+
+    @Test
+    public void testReadAheadParser() {
+        String input = buildInput(5000);
+        List<String[]> expected = CsvParser.defaultParser(new StringReader(input)).splitLines()
+                .collect(Collectors.toList());
+        List<String[]> actual = new CsvParser(CsvConfig.DEFAULTS.withReadAhead(100, 2), new StringReader(input))
+                .splitLines().collect(Collectors.toList());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testErrorIsThrown() {
+        for (int count : new int[]{1, 2}) {
+            CharIterator iter = new CharIterator(new FailingReader(buildInput(100), 500), 64, count);
+            int read = 0;
+            try {
+                while (iter.hasNext()) {
+                    iter.nextInt();
+                    read++;
+                }
+                fail("expected an exception");
+            } catch (UncheckedIOException e) {
+                assertEquals("disk on fire", e.getCause().getMessage());
+            }
+            assertEquals(500, read);
+            assertFalse(iter.hasNext());
+        }
+    }
+
+    @Test
+    public void testCloseStopsReadAhead() throws IOException, InterruptedException {
+        FailingReader reader = new FailingReader(buildInput(1000), Integer.MAX_VALUE);
+        CharIterator iter = new CharIterator(reader, 16, 2);
+        iter.nextInt();
+        iter.close();
+        for (int i = 0; i < 100 && !reader.closed; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(reader.closed);
+    }
+}
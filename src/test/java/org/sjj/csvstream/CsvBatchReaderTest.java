@@ -0,0 +1,108 @@
+package org.sjj.csvstream;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CsvBatchReaderTest {
+
+    private String buildInput(int rows) {
+        StringBuilder sb = new StringBuilder("id,symbol,price,note\n");
+        String[] symbols = { "AAPL", "MSFT", "IBM" };
+        for (int i = 0; i < rows; i++) {
+            sb.append(i).append(',')
+                    .append(symbols[i % symbols.length]).append(',')
+                    .append(i % 5 == 0 ? "" : (i + 0.25)).append(',')
+                    .append("\"note ").append(i).append("\"\n");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testInferredSchema() {
+        CsvParser parser = CsvParser.defaultParser(new StringReader(buildInput(100)));
+        CsvBatchReader reader = new CsvBatchReader(parser, 32);
+        CsvSchema schema = reader.getSchema();
+
+        assertEquals(4, schema.size());
+        assertEquals(ColumnType.LONG, schema.getType(0));
+        assertEquals(ColumnType.DICTIONARY, schema.getType(1));
+        assertEquals(ColumnType.DOUBLE, schema.getType(2));
+        assertEquals(ColumnType.STRING, schema.getType(3));
+        assertEquals("price", schema.getName(2));
+
+        int total = 0;
+        RecordBatch batch;
+        RecordBatch first = null;
+        while ((batch = reader.next()) != null) {
+            if (first == null) {
+                first = batch;
+            }
+            assertSame(first, batch);
+            long[] ids = batch.getLongs(0);
+            double[] prices = batch.getDoubles(2);
+            int[] codes = batch.getDictionaryCodes(1);
+            for (int row = 0; row < batch.size(); row++) {
+                int id = total + row;
+                assertEquals(id, ids[row]);
+                assertEquals(id % 5 == 0, batch.isNull(2, row));
+                if (id % 5 != 0) {
+                    assertEquals(id + 0.25, prices[row], 0.0);
+                }
+                assertEquals(id % 3, codes[row]);
+                assertEquals("note " + id, batch.getString(3, row));
+            }
+            total += batch.size();
+        }
+        assertEquals(100, total);
+        assertEquals(3, first.getDictionarySize(1));
+        assertEquals("MSFT", first.getDictionaryValue(1, 1));
+    }
+
+    @Test
+    public void testDeclaredSchemaByName() {
+        CsvSchema schema = new CsvSchema(
+                new String[]{"price", "id", "missing"},
+                new ColumnType[]{ColumnType.DOUBLE, ColumnType.LONG, ColumnType.STRING});
+        CsvParser parser = CsvParser.defaultParser(new StringReader(buildInput(10)));
+        CsvBatchReader reader = new CsvBatchReader(parser, schema, 4);
+
+        RecordBatch batch = reader.newBatch();
+        assertTrue(reader.read(batch));
+        assertEquals(4, batch.size());
+        assertEquals(1.25, batch.getDouble(0, 1), 0.0);
+        assertEquals(3L, batch.getLong(1, 3));
+        assertNull(batch.getString(2, 0));
+        assertNull(batch.getString(2, 1));
+        assertNull(batch.getString(2, 3));
+
+        assertTrue(reader.read(batch));
+        assertTrue(reader.read(batch));
+        assertEquals(2, batch.size());
+        assertFalse(reader.read(batch));
+    }
+
+    @Test
+    public void testMalformedValuesAreNull() {
+        String input = "a,b\n1,2.5\nx,y\n";
+        CsvSchema schema = new CsvSchema(new String[]{"a", "b"}, new ColumnType[]{ColumnType.LONG, ColumnType.DOUBLE});
+        CsvBatchReader reader = new CsvBatchReader(CsvParser.defaultParser(new StringReader(input)), schema, 10);
+        RecordBatch batch = reader.next();
+        assertEquals(2, batch.size());
+        assertFalse(batch.isNull(0, 0));
+        assertTrue(batch.isNull(0, 1));
+        assertTrue(batch.isNull(1, 1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWrongColumnType() {
+        CsvBatchReader reader = new CsvBatchReader(CsvParser.defaultParser(new StringReader(buildInput(3))), 10);
+        reader.next().getDoubles(0);
+    }
+}
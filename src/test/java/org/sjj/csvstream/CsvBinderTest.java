@@ -0,0 +1,159 @@
+package org.sjj.csvstream;
+
+import org.junit.Test;
+
+import java.beans.ConstructorProperties;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CsvBinderTest {
+    enum Side { BUY, SELL }
+
+    static class Base {
+        long id;
+    }
+
+    static class Trade extends Base {
+        String symbol;
+        int quantity;
+        double price;
+        boolean settled;
+        Side side;
+        BigDecimal fee;
+        LocalDate tradeDate;
+        Instant createdAt;
+        Integer rank;
+        char flag;
+        static int ignoredStatic;
+        final String ignoredFinal = "x";
+    }
+
+    static final class Quote {
+        private final String symbol;
+        private final long volume;
+        private final Double bid;
+
+        @ConstructorProperties({"symbol", "volume", "bid"})
+        Quote(String symbol, long volume, Double bid) {
+            this.symbol = symbol;
+            this.volume = volume;
+            this.bid = bid;
+        }
+    }
+
+    static final class NoWay {
+        NoWay(String a) {
+        }
+    }
+
+    private static CsvParser parser(String input) {
+        return new CsvParser(CsvConfig.DEFAULTS, new StringReader(input));
+    }
+
+    @Test
+    public void testBindFields() {
+        String input = "id,symbol,quantity,price,settled,side,fee,trade_date,Created At,rank,flag,unused\n"
+                + "1,ABC,100,12.5,true,BUY,0.10,2016-03-01,2016-03-01T10:00:00Z,3,Y,zzz\n"
+                + "2,XYZ,,,,,,,,,,\n"
+                + "3,SHORT\n";
+        List<Trade> trades = parser(input).bind(Trade.class).collect(Collectors.toList());
+        assertEquals(3, trades.size());
+
+        Trade t = trades.get(0);
+        assertEquals(1L, t.id);
+        assertEquals("ABC", t.symbol);
+        assertEquals(100, t.quantity);
+        assertEquals(12.5, t.price, 0.0);
+        assertTrue(t.settled);
+        assertEquals(Side.BUY, t.side);
+        assertEquals(new BigDecimal("0.10"), t.fee);
+        assertEquals(LocalDate.of(2016, 3, 1), t.tradeDate);
+        assertEquals(Instant.parse("2016-03-01T10:00:00Z"), t.createdAt);
+        assertEquals(Integer.valueOf(3), t.rank);
+        assertEquals('Y', t.flag);
+
+        Trade empty = trades.get(1);
+        assertEquals("XYZ", empty.symbol);
+        assertEquals(0, empty.quantity);
+        assertFalse(empty.settled);
+        assertNull(empty.side);
+        assertNull(empty.rank);
+        assertNull(empty.tradeDate);
+
+        Trade shortRow = trades.get(2);
+        assertEquals(3L, shortRow.id);
+        assertEquals("SHORT", shortRow.symbol);
+        assertNull(shortRow.fee);
+    }
+
+    @Test
+    public void testBindConstructor() {
+        CsvParser parser = parser("bid,volume,symbol\n1.5,1000,ABC\n,7,XYZ\n");
+        CsvBinder<Quote> binder = CsvBinder.of(Quote.class, parser);
+        Quote q = binder.bind(parser.nextRow());
+        assertEquals("ABC", q.symbol);
+        assertEquals(1000L, q.volume);
+        assertEquals(Double.valueOf(1.5), q.bid);
+        q = binder.bind(parser.nextRow());
+        assertEquals(7L, q.volume);
+        assertNull(q.bid);
+    }
+
+    @Test
+    public void testBindErrors() {
+        try {
+            CsvBinder.of(Quote.class, new String[]{"symbol", "volume"});
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("bid"));
+        }
+        try {
+            CsvBinder.of(NoWay.class, new String[]{"a"});
+            fail();
+        } catch (IllegalArgumentException e) {
+            // no constructor to bind to
+        }
+        try {
+            CsvBinder.of(Trade.class, new CsvParser(CsvConfig.DEFAULTS_WITHOUT_HEADER, new StringReader("1,2\n")));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // no header
+        }
+        CsvParser parser = parser("id,quantity\n1,lots\n");
+        try {
+            CsvBinder.of(Trade.class, parser).bind(parser.nextRow());
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("quantity"));
+        }
+    }
+
+    @Test
+    public void testBindWithProjectedHeader() {
+        CsvConfig config = CsvConfig.DEFAULTS.withProjection(2, 0);
+        CsvParser parser = new CsvParser(config, new StringReader("id,price,symbol\n1,2.5,ABC\n"));
+        Trade t = parser.bind(Trade.class).findFirst().get();
+        assertEquals(1L, t.id);
+        assertEquals("ABC", t.symbol);
+        assertEquals(0.0, t.price, 0.0);
+    }
+
+    @Test
+    public void testBindersAreShared() {
+        String[] header = {"symbol", "volume", "bid"};
+        assertSame(CsvBinder.of(Quote.class, header), CsvBinder.of(Quote.class, header.clone()));
+        assertNotSame(CsvBinder.of(Quote.class, header), CsvBinder.of(Quote.class, new String[]{"bid", "volume", "symbol"}));
+    }
+}
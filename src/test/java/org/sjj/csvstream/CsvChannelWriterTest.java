@@ -0,0 +1,220 @@
+package org.sjj.csvstream;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CsvChannelWriterTest {
+
+    private static final String[][] ROWS = {
+            {"hello", "this", "is a", "test"},
+            {"hello", "this", "is a", "test, okay?"},
+            {"and", "he said \"let there be light\"", "done"},
+            {"line\nbreak", "cr\rtoo", "", "#not a comment"},
+            {"caf\u00e9", "\u20ac12", "na\u00efve, \"quoted\"", "\u65e5\u672c\u8a9e"},
+            {"\ud83d\ude00 smile", "unpaired \ud83d", "\ude00 low first", "end"}
+    };
+
+    /**
+     * A channel that collects what is written, at most maxWrite bytes per
+     * write call, and counts the calls.
+     */
+    private static class CollectingChannel implements GatheringByteChannel {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final int maxWrite;
+        int writes;
+        int maxBuffers;
+        boolean open = true;
+
+        CollectingChannel(int maxWrite) {
+            this.maxWrite = maxWrite;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            writes++;
+            maxBuffers = Math.max(maxBuffers, length);
+            long written = 0;
+            for (int i = offset; i < offset + length && written < maxWrite; i++) {
+                while (srcs[i].hasRemaining() && written < maxWrite) {
+                    bytes.write(srcs[i].get());
+                    written++;
+                }
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return (int) write(new ByteBuffer[]{ src }, 0, 1);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    private static byte[] expected(CsvConfig config, String[][] rows) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CsvWriter writer = new CsvWriter(out, config, StandardCharsets.UTF_8)) {
+            for (String[] row : rows) {
+                writer.writeRow(row);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testMatchesCsvWriter() {
+        CollectingChannel channel = new CollectingChannel(Integer.MAX_VALUE);
+        try (CsvChannelWriter writer = new CsvChannelWriter(channel, CsvConfig.DEFAULTS)) {
+            for (String[] row : ROWS) {
+                writer.writeRow(row);
+            }
+        }
+        assertArrayEquals(expected(CsvConfig.DEFAULTS, ROWS), channel.bytes.toByteArray());
+        assertFalse(channel.open);
+    }
+
+    @Test
+    public void testCharArrayFields() {
+        CollectingChannel channel = new CollectingChannel(Integer.MAX_VALUE);
+        try (CsvChannelWriter writer = new CsvChannelWriter(channel, CsvConfig.DEFAULTS, 32, 2)) {
+            for (String[] row : ROWS) {
+                for (String field : row) {
+                    char[] chars = ("xx" + field + "yy").toCharArray();
+                    writer.field(chars, 2, field.length());
+                }
+                writer.endRow();
+            }
+        }
+        assertArrayEquals(expected(CsvConfig.DEFAULTS, ROWS), channel.bytes.toByteArray());
+    }
+
+    @Test
+    public void testSmallBuffersAndPartialWrites() {
+        // fields cross buffer boundaries, and the channel only takes 5 bytes at a time
+        CsvConfig config = CsvConfig.DEFAULTS.withDelimiter(';');
+        CollectingChannel channel = new CollectingChannel(5);
+        CsvChannelWriter writer = new CsvChannelWriter(channel, config, 32, 3);
+        for (int i = 0; i < 50; i++) {
+            for (String[] row : ROWS) {
+                writer.writeRow(row);
+            }
+        }
+        writer.close();
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            rows.addAll(Arrays.asList(ROWS));
+        }
+        byte[] expected = expected(config, rows.toArray(new String[0][]));
+        assertArrayEquals(expected, channel.bytes.toByteArray());
+        assertEquals(expected.length, writer.getBytesWritten());
+        assertTrue(channel.maxBuffers <= 3);
+    }
+
+    @Test
+    public void testBatchedWrites() {
+        CollectingChannel channel = new CollectingChannel(Integer.MAX_VALUE);
+        CsvChannelWriter writer = new CsvChannelWriter(channel, CsvConfig.DEFAULTS, 32, 4);
+        for (int i = 0; i < 16; i++) {
+            writer.field("0123456789abcdefghijklmnopqrstu").endRow();  // 33 bytes a row
+        }
+        // nothing written until 4 buffers are full
+        assertTrue(channel.writes <= 4);
+        writer.flush();
+        assertEquals(33 * 16, channel.bytes.size());
+        assertEquals(4, channel.maxBuffers);
+        writer.close();
+    }
+
+    @Test
+    public void testNumbersAndBooleans() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CollectingChannel channel = new CollectingChannel(Integer.MAX_VALUE);
+        try (CsvWriter expected = new CsvWriter(out, CsvConfig.DEFAULTS, StandardCharsets.UTF_8);
+             CsvChannelWriter writer = new CsvChannelWriter(channel, CsvConfig.DEFAULTS, 32, 2)) {
+            long[] longs = { 0, 7, -42, Long.MAX_VALUE, Long.MIN_VALUE };
+            double[] doubles = { 0.0, -0.0, 1.5, -0.001, 123456.789, 1e-10, 6.02e23, Double.NaN };
+            for (long value : longs) {
+                expected.field(value).field((int) value).field(value % 2 == 0);
+                writer.field(value).field((int) value).field(value % 2 == 0);
+            }
+            expected.endRow();
+            writer.endRow();
+            for (double value : doubles) {
+                expected.field(value);
+                writer.field(value);
+            }
+            expected.endRow();
+            writer.endRow();
+        }
+        assertArrayEquals(out.toByteArray(), channel.bytes.toByteArray());
+    }
+
+    @Test
+    public void testNewLineType() {
+        CollectingChannel channel = new CollectingChannel(Integer.MAX_VALUE);
+        try (CsvChannelWriter writer = new CsvChannelWriter(channel, CsvConfig.DEFAULTS)) {
+            writer.setNewLineType(NewLineType.LF);
+            writer.writeRow("a", "b");
+            writer.writeRow("c", null);
+        }
+        assertEquals("a,b\nc,\n", new String(channel.bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonAsciiDelimiter() {
+        new CsvChannelWriter(new CollectingChannel(1), CsvConfig.DEFAULTS.withDelimiter('\u00a7'));
+    }
+
+    @Test
+    public void testFileChannelRoundTrip() throws IOException {
+        Path file = Files.createTempFile("channel-writer", ".csv");
+        try {
+            try (CsvChannelWriter writer = new CsvChannelWriter(
+                    FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING),
+                    CsvConfig.DEFAULTS_WITHOUT_HEADER)) {
+                for (int i = 0; i < 20000; i++) {
+                    writer.field(i).field("row " + i).field("caf\u00e9, \"" + i + "\"").endRow();
+                }
+            }
+            try (Stream<String[]> rows = CsvParser.open(CsvConfig.DEFAULTS_WITHOUT_HEADER, file).splitLines()) {
+                List<String[]> parsed = rows.collect(Collectors.toList());
+                assertEquals(20000, parsed.size());
+                assertArrayEquals(new String[]{"12345", "row 12345", "caf\u00e9, \"12345\""}, parsed.get(12345));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
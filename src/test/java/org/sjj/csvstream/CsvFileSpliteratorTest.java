@@ -0,0 +1,141 @@
+package org.sjj.csvstream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class CsvFileSpliteratorTest {
+    private static final TestInput INPUT = new TestInput();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path writeFile(String input) throws IOException {
+        Path path = folder.newFile().toPath();
+        Files.write(path, input.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private List<String[]> serial(String input) {
+        CsvParser parser = CsvParser.defaultParser(new StringReader(input));
+        return parser.splitLines().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testParallelMatchesSerial() throws IOException {
+        String input = INPUT.build(5000);
+        Path path = writeFile(input);
+        List<String[]> expected = serial(input);
+
+        CsvFileSpliterator spliterator = new CsvFileSpliterator(CsvConfig.DEFAULTS, path, StandardCharsets.UTF_8, 1024);
+        assertArrayEquals(new String[]{"id", "name", "notes"}, spliterator.getHeaderFields());
+        try (Stream<String[]> records = spliterator.stream()) {
+            List<String[]> actual = records.parallel().collect(Collectors.toList());
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i), actual.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testSplitsAtRecordBoundaries() throws IOException {
+        String input = INPUT.build(2000);
+        Path path = writeFile(input);
+        List<String[]> expected = serial(input);
+
+        CsvFileSpliterator spliterator = new CsvFileSpliterator(CsvConfig.DEFAULTS, path, StandardCharsets.UTF_8, 1024);
+        long estimate = spliterator.estimateSize();
+        assertTrue(estimate > 0);
+
+        Spliterator<String[]> prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        List<String[]> first = StreamSupport.stream(prefix, false).collect(Collectors.toList());
+        List<String[]> second = StreamSupport.stream(spliterator, false).collect(Collectors.toList());
+        assertTrue(first.size() > 0);
+        assertTrue(second.size() > 0);
+        assertEquals(expected.size(), first.size() + second.size());
+        assertArrayEquals(expected.get(first.size()), second.get(0));
+    }
+
+    @Test
+    public void testSmallFileWithoutHeader() throws IOException {
+        String input = "one,two,three\nfour,five,\"six\nseven\"\neight,nine,ten";
+        Path path = writeFile(input);
+        try (Stream<String[]> records = CsvParser.splitLines(CsvConfig.DEFAULTS_WITHOUT_HEADER, path)) {
+            List<String[]> actual = records.parallel().collect(Collectors.toList());
+            assertEquals(3, actual.size());
+            assertArrayEquals(new String[]{"four", "five", "six\nseven"}, actual.get(1));
+        }
+    }
+
+    @Test
+    public void testProjectionByName() throws IOException {
+        String input = INPUT.build(3000);
+        Path path = writeFile(input);
+        List<String[]> expected = serial(input);
+
+        CsvConfig config = CsvConfig.DEFAULTS.withProjection("notes", "id");
+        CsvFileSpliterator spliterator = new CsvFileSpliterator(config, path, StandardCharsets.UTF_8, 1024);
+        assertArrayEquals(new String[]{"notes", "id"}, spliterator.getHeaderFields());
+        try (Stream<String[]> records = spliterator.stream()) {
+            List<String[]> actual = records.parallel().collect(Collectors.toList());
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(new String[]{expected.get(i)[2], expected.get(i)[0]}, actual.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testSplitInCommentWithQuote() throws IOException {
+        String input = TestInput.quoteInCommentAtMiddle("id,name\n");
+        Path path = writeFile(input);
+        List<String[]> expected = serial(input);
+        assertArrayEquals(new String[]{"20", "b"}, expected.get(50));
+
+        CsvFileSpliterator spliterator = new CsvFileSpliterator(CsvConfig.DEFAULTS, path, StandardCharsets.UTF_8, 16);
+        Spliterator<String[]> prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        List<String[]> actual = StreamSupport.stream(prefix, false).collect(Collectors.toList());
+        actual.addAll(StreamSupport.stream(spliterator, false).collect(Collectors.toList()));
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("row " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testSplitInQuotedFieldLongerThanWindow() throws IOException {
+        String input = TestInput.longQuotedFieldAtMiddle("id,name\n");
+        Path path = writeFile(input);
+        List<String[]> expected = serial(input);
+        assertEquals(200, expected.size());
+
+        CsvFileSpliterator spliterator = new CsvFileSpliterator(CsvConfig.DEFAULTS, path, StandardCharsets.UTF_8,
+                16 * 1024);
+        try (Stream<String[]> records = spliterator.stream()) {
+            List<String[]> actual = records.parallel().collect(Collectors.toList());
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals("row " + i, expected.get(i), actual.get(i));
+            }
+        }
+    }
+}
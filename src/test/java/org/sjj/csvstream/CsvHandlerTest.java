@@ -0,0 +1,103 @@
+package org.sjj.csvstream;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CsvHandlerTest {
+
+    private static class RecordingHandler implements CsvHandler {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void startRow(long rowNum) {
+            events.add("start " + rowNum);
+        }
+
+        @Override
+        public void field(int index, char[] buffer, int offset, int length, boolean quoted) {
+            events.add(index + (quoted ? " quoted " : " ") + new String(buffer, offset, length));
+        }
+
+        @Override
+        public void endRow() {
+            events.add("end");
+        }
+    }
+
+    /**
+     * Sums the numeric values of one column without creating any objects.
+     */
+    private static class SummingHandler implements CsvHandler {
+        long sum;
+
+        @Override
+        public void field(int index, char[] buffer, int offset, int length, boolean quoted) {
+            if (index == 1) {
+                long value = 0;
+                for (int i = offset; i < offset + length; i++) {
+                    value = value * 10 + (buffer[i] - '0');
+                }
+                sum += value;
+            }
+        }
+    }
+
+    @Test
+    public void testEvents() {
+        String input = "name,age\nSteve,40\n\"Jim, Jr\",42";
+        CsvParser parser = CsvParser.defaultParser(new StringReader(input));
+        RecordingHandler handler = new RecordingHandler();
+        long rows = parser.parse(handler);
+
+        assertEquals(2, rows);
+        List<String> expected = new ArrayList<>();
+        expected.add("start 0");
+        expected.add("0 Steve");
+        expected.add("1 40");
+        expected.add("end");
+        expected.add("start 1");
+        expected.add("0 quoted Jim, Jr");
+        expected.add("1 42");
+        expected.add("end");
+        assertEquals(expected, handler.events);
+    }
+
+    @Test
+    public void testNoAllocationPerRow() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        int rowCount = 200000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rowCount; i++) {
+            sb.append("row").append(i).append(',').append(i % 100).append(",\"quoted, text\",tail\n");
+        }
+        String input = sb.toString();
+
+        // warm up so that the measured run is compiled code
+        for (int i = 0; i < 3; i++) {
+            CsvParser.defaultParser(new StringReader(input)).parse(new SummingHandler());
+        }
+
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS_WITHOUT_HEADER, new StringReader(input));
+        SummingHandler handler = new SummingHandler();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long rows = parser.parse(handler);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(rowCount, rows);
+        assertEquals(99L * 100 / 2 * (rowCount / 100), handler.sum);
+        assertTrue("allocated " + allocated + " bytes for " + rows + " rows", allocated < rows);
+    }
+}
@@ -0,0 +1,156 @@
+package org.sjj.csvstream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CsvIndexTest {
+    private static final TestInput INPUT = new TestInput().withComments();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path writeFile(String input) throws IOException {
+        Path path = folder.newFile("data.csv").toPath();
+        Files.write(path, input.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private List<String[]> serial(String input) {
+        return CsvParser.defaultParser(new StringReader(input)).splitLines().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testOpenAtEveryRow() throws IOException {
+        String input = INPUT.build(3000);
+        Path path = writeFile(input);
+        List<String[]> expected = serial(input);
+
+        // small chunks, so the index is built from several chunks in parallel
+        CsvIndex index = CsvIndex.build(CsvConfig.DEFAULTS, path, 100, 4096);
+        assertEquals(expected.size(), index.getRowCount());
+        for (int row = 0; row < expected.size(); row += 37) {
+            CsvParser parser = index.openAt(row);
+            assertArrayEquals(new String[]{"id", "name", "notes"}, parser.getHeaderFields());
+            for (int i = row; i < Math.min(row + 5, expected.size()); i++) {
+                assertArrayEquals("row " + i, expected.get(i), parser.split());
+            }
+        }
+        CsvParser last = index.openAt(expected.size() - 1);
+        assertArrayEquals(expected.get(expected.size() - 1), last.split());
+        assertNull(last.split());
+        assertNull(index.openAt(expected.size()).split());
+    }
+
+    @Test
+    public void testSameIndexSerialAndParallel() throws IOException {
+        String input = INPUT.build(2000);
+        Path path = writeFile(input);
+        CsvIndex serial = CsvIndex.build(CsvConfig.DEFAULTS, path, 64);
+        CsvIndex parallel = CsvIndex.build(CsvConfig.DEFAULTS, path, 64, 1024);
+        assertEquals(serial.getRowCount(), parallel.getRowCount());
+        for (long row = 0; row < serial.getRowCount(); row += 13) {
+            assertEquals(serial.offsetOf(row), parallel.offsetOf(row));
+        }
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        String input = INPUT.build(500);
+        Path path = writeFile(input);
+        assertNull(CsvIndex.load(CsvConfig.DEFAULTS, path));
+
+        CsvIndex built = CsvIndex.open(CsvConfig.DEFAULTS, path);
+        assertTrue(Files.exists(CsvIndex.indexPath(path)));
+        CsvIndex loaded = CsvIndex.load(CsvConfig.DEFAULTS, path);
+        assertNotNull(loaded);
+        assertEquals(built.getRowCount(), loaded.getRowCount());
+        assertEquals(built.offsetOf(321), loaded.offsetOf(321));
+        assertArrayEquals(serial(input).get(321), loaded.openAt(321).split());
+
+        // other settings, or a changed file, make the saved index useless
+        assertNull(CsvIndex.load(CsvConfig.DEFAULTS.withDelimiter('|'), path));
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() - 10000));
+        assertFalse(loaded.isCurrent());
+        assertNull(CsvIndex.load(CsvConfig.DEFAULTS, path));
+        assertTrue(CsvIndex.open(CsvConfig.DEFAULTS, path).isCurrent());
+    }
+
+    @Test
+    public void testTruncatedIndexIsRebuilt() throws IOException {
+        String input = INPUT.build(5000);
+        Path path = writeFile(input);
+        CsvIndex built = CsvIndex.open(CsvConfig.DEFAULTS, path);
+        Path indexPath = CsvIndex.indexPath(path);
+        byte[] saved = Files.readAllBytes(indexPath);
+
+        // cut off in the header, and in the entries
+        for (int length : new int[] { 0, 6, 30, saved.length - 5 }) {
+            Files.write(indexPath, Arrays.copyOf(saved, length));
+            assertNull(CsvIndex.load(CsvConfig.DEFAULTS, path));
+            assertEquals(built.getRowCount(), CsvIndex.open(CsvConfig.DEFAULTS, path).getRowCount());
+            assertArrayEquals(saved, Files.readAllBytes(indexPath));
+        }
+
+        // a bad magic number
+        saved[0] ^= 1;
+        Files.write(indexPath, saved);
+        assertNull(CsvIndex.load(CsvConfig.DEFAULTS, path));
+    }
+
+    @Test
+    public void testWithoutHeaderAndProjection() throws IOException {
+        String input = "a,b,c\nd,\"e\nf\",g\nh,i,j\n";
+        Path path = writeFile(input);
+        CsvConfig config = CsvConfig.DEFAULTS_WITHOUT_HEADER.withProjection(2, 0);
+        CsvIndex index = CsvIndex.build(config, path, 1);
+        assertEquals(3, index.getRowCount());
+        assertArrayEquals(new String[]{"g", "d"}, index.openAt(1).split());
+        assertArrayEquals(new String[]{"j", "h"}, index.openAt(2, StandardCharsets.ISO_8859_1).split());
+    }
+
+    @Test
+    public void testChunkCutInCommentWithQuote() throws IOException {
+        String input = TestInput.quoteInCommentAtMiddle("id,name\n");
+        Path path = writeFile(input);
+        List<String[]> expected = serial(input);
+
+        // two chunks, cut just after the # of the comment
+        long data = input.length() - "id,name\n".length();
+        CsvIndex index = CsvIndex.build(CsvConfig.DEFAULTS, path, 1, data / 2);
+        assertEquals(expected.size(), index.getRowCount());
+        for (int row = 0; row < expected.size(); row++) {
+            assertArrayEquals("row " + row, expected.get(row), index.openAt(row).split());
+        }
+    }
+
+    @Test
+    public void testChunkCutInQuotedFieldLongerThanWindow() throws IOException {
+        String input = TestInput.longQuotedFieldAtMiddle("id,name\n");
+        Path path = writeFile(input);
+        List<String[]> expected = serial(input);
+
+        CsvIndex index = CsvIndex.build(CsvConfig.DEFAULTS, path, 1, 16 * 1024);
+        assertEquals(expected.size(), index.getRowCount());
+        for (int row = 0; row < expected.size(); row++) {
+            assertArrayEquals("row " + row, expected.get(row), index.openAt(row).split());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.sjj.csvstream;
+
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CsvMetricsTest {
+    private static final String INPUT = "a,b,c\n"
+            + "1,\"two, quoted\",3\n"
+            + "# a comment\n"
+            + "4,five,\"six\"\n"
+            + "seven,8\n";
+
+    private static void drain(CsvParser parser) {
+        while (parser.split() != null) {
+            // just counting
+        }
+    }
+
+    private static void assertCounts(CsvMetrics.Snapshot snapshot) {
+        assertEquals(3, snapshot.getRows());
+        assertEquals(8, snapshot.getFields());
+        assertEquals(2, snapshot.getQuotedFields());
+        assertEquals(0.25, snapshot.getQuotedRatio(), 1e-9);
+        assertEquals("two, quoted".length(), snapshot.getMaxFieldLength());
+        assertEquals("1two, quoted3".length(), snapshot.getMaxRowLength());
+        assertEquals(1, snapshot.getCommentLines());
+    }
+
+    @Test
+    public void testReaderInput() {
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS, new StringReader(INPUT));
+        CsvMetrics metrics = new CsvMetrics();
+        parser.setMetrics(metrics);
+        drain(parser);
+        assertCounts(metrics.snapshot());
+        assertCounts(metrics.getPublished());
+        assertEquals(INPUT.length() - "a,b,c\n".length(), metrics.snapshot().getInputChars());
+        assertTrue(metrics.snapshot().getRefills() >= 1);
+    }
+
+    @Test
+    public void testByteInput() {
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS, ByteBuffer.wrap(INPUT.getBytes(StandardCharsets.UTF_8)));
+        CsvMetrics metrics = new CsvMetrics();
+        parser.setMetrics(metrics);
+        drain(parser);
+        assertCounts(metrics.snapshot());
+        assertEquals(INPUT.length(), metrics.getPublished().getInputChars());
+    }
+
+    @Test
+    public void testByteInputRefills() {
+        byte[] bytes = INPUT.getBytes(StandardCharsets.UTF_8);
+        int half = bytes.length / 2;
+        ByteBufferIterator input = new ByteBufferIterator(ByteBuffer.wrap(bytes, 0, half),
+                ByteBuffer.wrap(bytes, half, bytes.length - half));
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS, input, null);
+        CsvMetrics metrics = new CsvMetrics();
+        parser.setMetrics(metrics);
+        drain(parser);
+        assertNull(parser.split());
+        assertNull(parser.split());
+        // only the move to the second buffer, not every call at the end of the input
+        assertEquals(1, metrics.snapshot().getRefills());
+    }
+
+    @Test
+    public void testPublishInterval() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            sb.append(i).append(",x\n");
+        }
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS_WITHOUT_HEADER, new StringReader(sb.toString()));
+        CsvMetrics metrics = new CsvMetrics(10);
+        List<Long> published = new ArrayList<>();
+        metrics.addListener(snapshot -> published.add(snapshot.getRows()));
+        parser.setMetrics(metrics);
+
+        for (int i = 0; i < 15; i++) {
+            parser.split();
+        }
+        assertEquals(10, metrics.getPublished().getRows());
+        assertEquals(15, metrics.snapshot().getRows());
+        drain(parser);
+        assertNull(parser.split());
+        // published every 10 rows, and once at the end
+        assertEquals(Arrays.asList(10L, 20L, 25L), published);
+    }
+
+    @Test
+    public void testFormatter() {
+        CsvFormatter formatter = new CsvFormatter();
+        CsvMetrics metrics = new CsvMetrics();
+        formatter.setMetrics(metrics);
+        String line = formatter.format(new String[] { "1", "two, quoted", "3" });
+        formatter.format(new String[] { "4", "five" });
+        metrics.publish();
+
+        CsvMetrics.Snapshot snapshot = metrics.getPublished();
+        assertEquals(2, snapshot.getRows());
+        assertEquals(5, snapshot.getFields());
+        assertEquals(1, snapshot.getQuotedFields());
+        assertEquals(line.length() + "4,five".length(), snapshot.getInputChars());
+        assertEquals("two, quoted".length(), snapshot.getMaxFieldLength());
+    }
+
+    @Test
+    public void testMBean() throws JMException {
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS, new StringReader(INPUT));
+        CsvMetrics metrics = new CsvMetrics();
+        ObjectName name = metrics.registerMBean("metrics-test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            parser.setMetrics(metrics);
+            drain(parser);
+            assertEquals(3L, server.getAttribute(name, "Rows"));
+            assertEquals(0.25, (Double) server.getAttribute(name, "QuotedRatio"), 1e-9);
+            assertEquals(1L, server.getAttribute(name, "CommentLines"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
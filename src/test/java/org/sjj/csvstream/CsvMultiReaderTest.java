@@ -0,0 +1,133 @@
+package org.sjj.csvstream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CsvMultiReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Path> writeFiles(int count, int rows) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (int f = 0; f < count; f++) {
+            StringBuilder sb = new StringBuilder("day,id,note\n");
+            for (int i = 0; i < rows + f; i++) {
+                sb.append(f).append(',').append(i).append(",\"note, ").append(i).append("\"\n");
+            }
+            Path path = folder.getRoot().toPath().resolve(String.format("day-%02d.csv", f));
+            Files.write(path, sb.toString().getBytes(StandardCharsets.UTF_8));
+            files.add(path);
+        }
+        return files;
+    }
+
+    @Test
+    public void testTaggedRows() throws IOException {
+        List<Path> files = writeFiles(6, 1000);
+        Files.write(folder.getRoot().toPath().resolve("notes.txt"), new byte[] { 'x' });
+        assertEquals(files, CsvMultiReader.list(folder.getRoot().toPath(), "*.csv"));
+
+        Map<Path, Long> nextRow = new HashMap<>();
+        try (CsvMultiReader reader = new CsvMultiReader(CsvConfig.DEFAULTS, files).setThreads(3).setQueue(7, 2);
+             Stream<CsvMultiReader.Row> rows = reader.rows()) {
+            assertArrayEquals(new String[] { "day", "id", "note" }, reader.getHeaderFields());
+            rows.forEach(row -> {
+                long expected = nextRow.getOrDefault(row.getSource(), 0L);
+                // every file's rows arrive in order
+                assertEquals(expected, row.getRowNumber());
+                assertEquals(String.valueOf(files.indexOf(row.getSource())), row.getFields()[0]);
+                assertEquals(String.valueOf(expected), row.getFields()[1]);
+                assertEquals("note, " + expected, row.getFields()[2]);
+                nextRow.put(row.getSource(), expected + 1);
+            });
+        }
+        for (int f = 0; f < files.size(); f++) {
+            assertEquals(1000L + f, (long) nextRow.get(files.get(f)));
+        }
+    }
+
+    @Test
+    public void testStreamAndBatches() throws IOException {
+        List<Path> files = writeFiles(4, 500);
+        try (CsvMultiReader reader = new CsvMultiReader(CsvConfig.DEFAULTS, files)) {
+            assertEquals(4 * 500 + 6, reader.stream().count());
+        }
+
+        List<Integer> sizes = new ArrayList<>();
+        new CsvMultiReader(CsvConfig.DEFAULTS, files).setQueue(100, 4).forEachBatch(batch -> {
+            sizes.add(batch.size());
+            Path source = batch.get(0).getSource();
+            assertTrue(batch.stream().allMatch(row -> row.getSource().equals(source)));
+        });
+        assertEquals(4 * 500 + 6, sizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(sizes.stream().allMatch(size -> size <= 100));
+    }
+
+    @Test
+    public void testWithoutHeader() throws IOException {
+        List<Path> files = writeFiles(3, 10);
+        CsvMultiReader reader = new CsvMultiReader(CsvConfig.DEFAULTS_WITHOUT_HEADER, files);
+        List<String[]> rows = reader.stream().collect(Collectors.toList());
+        assertEquals(3 * 11 + 3, rows.size());
+        assertNull(reader.getHeaderFields());
+    }
+
+    @Test
+    public void testHeaderMismatch() throws IOException {
+        List<Path> files = writeFiles(3, 10);
+        Files.write(files.get(2), "day,id,comment\n1,2,3\n".getBytes(StandardCharsets.UTF_8));
+        try (Stream<String[]> rows = new CsvMultiReader(CsvConfig.DEFAULTS, files).stream()) {
+            rows.count();
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(files.get(2).toString()));
+        }
+    }
+
+    @Test
+    public void testMissingFile() throws IOException {
+        List<Path> files = writeFiles(2, 10);
+        files.add(folder.getRoot().toPath().resolve("missing.csv"));
+        try (Stream<String[]> rows = new CsvMultiReader(CsvConfig.DEFAULTS, files).stream()) {
+            rows.count();
+            fail();
+        } catch (UncheckedIOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEarlyClose() throws IOException {
+        List<Path> files = writeFiles(8, 5000);
+        CsvMultiReader reader = new CsvMultiReader(CsvConfig.DEFAULTS, files).setThreads(2).setQueue(16, 1);
+        try (Stream<String[]> rows = reader.stream()) {
+            // the parsers are blocked on the full queue when the stream is closed
+            assertEquals(10, rows.limit(10).count());
+        }
+        try {
+            reader.stream();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -3,7 +3,12 @@ package org.sjj.csvstream;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -256,4 +261,85 @@ public class CsvParserTest {
         checkHeaderResult(input, expectedHeader,
                 expectedData);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testByteBufferMatchesReader() {
+        String input = "name,city,note\n\"Zo\u00eb\",K\u00f8benhavn, caf\u00e9 \n\"a\nb\",\u6771\u4eac,\"x\"\"y\"\nplain,ascii,";
+        List<String[]> expected = CsvParser.defaultParser(new StringReader(input))
+                .splitLines().collect(Collectors.toList());
+
+        ByteBuffer buffer = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS, buffer);
+        assertArrayEquals(new String[]{"name", "city", "note"}, parser.getHeaderFields());
+        List<String[]> actual = parser.splitLines().collect(Collectors.toList());
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+        assertArrayEquals(new String[]{"Zo\u00eb", "K\u00f8benhavn", "caf\u00e9"}, actual.get(0));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testByteBufferNonAsciiDelimiter() {
+        // fine for a Reader, but the bytes of a UTF-8 input are matched one at a time
+        CsvConfig config = CsvConfig.DEFAULTS_WITHOUT_HEADER.withDelimiter('\u00a6');
+        String input = "a\u00a6b\u00a6c";
+        assertArrayEquals(new String[]{"a", "b", "c"}, new CsvParser(config, new StringReader(input)).split());
+        new CsvParser(config, ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testOpenMappedFile() throws IOException {
+        Path path = Files.createTempFile("csv-stream", ".csv");
+        try {
+            Files.write(path, "First,Last,Age\nBob,Smith,44\nJane,Doe,40\n".getBytes(StandardCharsets.UTF_8));
+            CsvParser parser = CsvParser.open(CsvConfig.DEFAULTS, path);
+            List<String[]> records = parser.splitLines().collect(Collectors.toList());
+            assertEquals(2, records.size());
+            assertArrayEquals(new String[]{"Jane", "Doe", "40"}, records.get(1));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testProjectionByIndex() {
+        String input = "one,\"two, 2\",three,four\nfive,six\n";
+        CsvConfig config = CsvConfig.DEFAULTS_WITHOUT_HEADER.withProjection(3, 0);
+        List<String[]> actual = new CsvParser(config, new StringReader(input))
+                .splitLines().collect(Collectors.toList());
+
+        assertEquals(2, actual.size());
+        assertArrayEquals(new String[]{"four", "one"}, actual.get(0));
+        // a short row still has every projected column
+        assertArrayEquals(new String[]{"", "five"}, actual.get(1));
+    }
+
+    @Test
+    public void testProjectionByName() {
+        String input = "name,age,phone\nSteve,40,\"555\n123\"\nJim,42,995";
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS.withProjection("phone", "name"), new StringReader(input));
+        assertArrayEquals(new String[]{"phone", "name"}, parser.getHeaderFields());
+
+        List<String[]> actual = parser.splitLines().collect(Collectors.toList());
+        assertArrayEquals(new String[]{"555\n123", "Steve"}, actual.get(0));
+        assertArrayEquals(new String[]{"995", "Jim"}, actual.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProjectionUnknownName() {
+        new CsvParser(CsvConfig.DEFAULTS.withProjection("nope"), new StringReader("a,b\n1,2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProjectionDuplicateIndex() {
+        CsvConfig.DEFAULTS.withProjection(0, 1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProjectionDuplicateName() {
+        CsvConfig.DEFAULTS.withProjection("id", "id");
+    }
+}
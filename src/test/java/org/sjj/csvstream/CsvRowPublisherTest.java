@@ -0,0 +1,256 @@
+package org.sjj.csvstream;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CsvRowPublisherTest {
+    /**
+     * Runs tasks only when asked, so a test can see exactly what each request
+     * leads to.
+     */
+    private static final class ManualExecutor implements Executor {
+        final ArrayDeque<Runnable> tasks = new java.util.ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static final class RecordingSubscriber implements CsvRowPublisher.Subscriber {
+        final List<List<String[]>> batches = new ArrayList<>();
+        CsvRowPublisher.Subscription subscription;
+        Throwable failure;
+        boolean complete;
+
+        @Override
+        public void onSubscribe(CsvRowPublisher.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(List<String[]> rows) {
+            batches.add(rows);
+        }
+
+        @Override
+        public void onError(Throwable failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+    }
+
+    private static final class TrackingReader extends StringReader {
+        final AtomicBoolean closed = new AtomicBoolean();
+        final AtomicInteger reads = new AtomicInteger();
+
+        TrackingReader(String s) {
+            super(s);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            reads.incrementAndGet();
+            return super.read(cbuf, off, len);
+        }
+
+        @Override
+        public void close() {
+            closed.set(true);
+            super.close();
+        }
+    }
+
+    private static String buildInput(int rows) {
+        StringBuilder sb = new StringBuilder("id,name\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append(i).append(",name").append(i).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testParsesOnlyWhatIsRequested() {
+        ManualExecutor executor = new ManualExecutor();
+        TrackingReader reader = new TrackingReader(buildInput(10));
+        CsvRowPublisher publisher = new CsvRowPublisher(CsvConfig.DEFAULTS, reader, executor, 4);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        executor.runAll();
+        assertEquals(0, reader.reads.get());
+        assertNull(publisher.getHeaderFields());
+
+        subscriber.subscription.request(1);
+        executor.runAll();
+        assertEquals(1, subscriber.batches.size());
+        assertEquals(4, subscriber.batches.get(0).size());
+        assertArrayEquals(new String[]{"id", "name"}, publisher.getHeaderFields());
+        assertArrayEquals(new String[]{"0", "name0"}, subscriber.batches.get(0).get(0));
+
+        subscriber.subscription.request(5);
+        executor.runAll();
+        assertEquals(3, subscriber.batches.size());
+        assertEquals(2, subscriber.batches.get(2).size());
+        assertArrayEquals(new String[]{"9", "name9"}, subscriber.batches.get(2).get(1));
+        assertTrue(subscriber.complete);
+        assertNull(subscriber.failure);
+        assertTrue(reader.closed.get());
+    }
+
+    @Test
+    public void testCancelClosesReader() {
+        ManualExecutor executor = new ManualExecutor();
+        TrackingReader reader = new TrackingReader(buildInput(100));
+        CsvRowPublisher publisher = new CsvRowPublisher(CsvConfig.DEFAULTS, reader, executor, 10);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(2);
+        executor.runAll();
+        assertEquals(2, subscriber.batches.size());
+
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(5);
+        executor.runAll();
+        assertEquals(2, subscriber.batches.size());
+        assertTrue(reader.closed.get());
+        assertFalse(subscriber.complete);
+        assertNull(subscriber.failure);
+    }
+
+    @Test
+    public void testInvalidRequest() {
+        ManualExecutor executor = new ManualExecutor();
+        TrackingReader reader = new TrackingReader(buildInput(5));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new CsvRowPublisher(CsvConfig.DEFAULTS, reader, executor).subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+        executor.runAll();
+        assertTrue(subscriber.failure instanceof IllegalArgumentException);
+        assertTrue(reader.closed.get());
+        assertTrue(subscriber.batches.isEmpty());
+    }
+
+    @Test
+    public void testOneSubscriberOnly() {
+        ManualExecutor executor = new ManualExecutor();
+        CsvRowPublisher publisher = new CsvRowPublisher(CsvConfig.DEFAULTS, new StringReader("a\n1\n"), executor);
+        publisher.subscribe(new RecordingSubscriber());
+        RecordingSubscriber second = new RecordingSubscriber();
+        publisher.subscribe(second);
+        assertTrue(second.failure instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testReadFailure() {
+        ManualExecutor executor = new ManualExecutor();
+        Reader failing = new Reader() {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("disk on fire");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new CsvRowPublisher(CsvConfig.DEFAULTS_WITHOUT_HEADER, failing, executor).subscribe(subscriber);
+        subscriber.subscription.request(1);
+        executor.runAll();
+        assertTrue(subscriber.failure != null);
+        assertFalse(subscriber.complete);
+    }
+
+    @Test
+    public void testLongRunsYieldTheThread() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new CsvRowPublisher(CsvConfig.DEFAULTS, new StringReader(buildInput(1000)), executor, 1).subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        executor.tasks.poll().run();
+        assertEquals(CsvRowPublisher.MAX_BATCHES_PER_RUN, subscriber.batches.size());
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals(1000, subscriber.batches.size());
+        assertTrue(subscriber.complete);
+    }
+
+    @Test
+    public void testManyPublishersOnASmallPool() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        int publishers = 50;
+        AtomicInteger rows = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int p = 0; p < publishers; p++) {
+            new CsvRowPublisher(CsvConfig.DEFAULTS, new StringReader(buildInput(500)), executor, 32)
+                    .subscribe(new CsvRowPublisher.Subscriber() {
+                        CsvRowPublisher.Subscription subscription;
+
+                        @Override
+                        public void onSubscribe(CsvRowPublisher.Subscription subscription) {
+                            (this.subscription = subscription).request(1);
+                        }
+
+                        @Override
+                        public void onNext(List<String[]> batch) {
+                            rows.addAndGet(batch.size());
+                            subscription.request(1);
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                            failure.set(t);
+                        }
+
+                        @Override
+                        public void onComplete() {
+                            completed.incrementAndGet();
+                        }
+                    });
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (completed.get() < publishers && failure.get() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        assertEquals(publishers, completed.get());
+        assertEquals(publishers * 500, rows.get());
+    }
+}
@@ -0,0 +1,105 @@
+package org.sjj.csvstream;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CsvRowTest {
+    @Test
+    public void testFieldSlices() {
+        String input = "name,age,phone\n Steve ,40,\"555, ext 1\"\nJim,42,995";
+        CsvParser parser = CsvParser.defaultParser(new StringReader(input));
+
+        CsvRow row = parser.nextRow();
+        assertEquals(3, row.size());
+        assertEquals("Steve", row.get(0).toString());
+        assertEquals(5, row.get(0).length());
+        assertEquals('S', row.get(0).charAt(0));
+        assertEquals("555, ext 1", row.getString(2));
+        assertEquals("ext", row.get(2).subSequence(5, 8).toString());
+        assertEquals("40", new String(row.getBuffer(), row.getOffset(1), row.getLength(1)));
+
+        CharSequence first = row.get(0);
+        CsvRow next = parser.nextRow();
+        assertSame(row, next);
+        assertSame(first, next.get(0));
+        assertEquals("Jim", first.toString());
+        assertArrayEquals(new String[]{"Jim", "42", "995"}, next.toArray());
+
+        assertNull(parser.nextRow());
+    }
+
+    @Test
+    public void testWideAndLongRows() {
+        StringBuilder sb = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String field = i % 10 == 0 ? new String(new char[500]).replace('\0', 'x') : "f" + i;
+            expected.add(field);
+            sb.append(field).append(i < 99 ? "," : "\n");
+        }
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS_WITHOUT_HEADER, new StringReader(sb.toString() + sb));
+        for (int r = 0; r < 2; r++) {
+            CsvRow row = parser.nextRow();
+            assertEquals(100, row.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(expected.get(i), row.getString(i));
+            }
+        }
+        assertNull(parser.nextRow());
+    }
+
+    @Test
+    public void testByteInputDecodesSlices() {
+        String input = "\u00e9t\u00e9,\"\u6771\u4eac\",\ud83d\ude00\n";
+        ByteBuffer buffer = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS_WITHOUT_HEADER, buffer);
+        CsvRow row = parser.nextRow();
+        assertEquals("\u00e9t\u00e9", row.get(0).toString());
+        assertEquals(2, row.get(1).length());
+        assertEquals("\ud83d\ude00", row.getString(2));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIndexOutOfBounds() {
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS_WITHOUT_HEADER, new StringReader("a,b"));
+        parser.nextRow().get(2);
+    }
+
+    @Test
+    public void testTypedGetters() {
+        String input = "id,price,active,when,count\n42,19.99,yes,2016-02-19 10:30:00,\nx,,maybe,soon,7\n";
+        CsvParser parser = CsvParser.defaultParser(new StringReader(input));
+
+        CsvRow row = parser.nextRow();
+        assertEquals(42, row.getInt(0));
+        assertEquals(42L, row.getLong(0));
+        assertEquals(19.99, row.getDouble(1), 0.0);
+        assertEquals(true, row.getBoolean(2));
+        assertEquals(1455877800000L, row.getEpochMillis(3));
+        assertEquals(true, row.isEmpty(4));
+        assertEquals(-1, row.getInt(4, -1));
+
+        row = parser.nextRow();
+        assertEquals(-1L, row.getLong(0, -1L));
+        assertEquals(0.0, row.getDouble(1, 0.0), 0.0);
+        assertEquals(false, row.getBoolean(2, false));
+        assertEquals(0L, row.getEpochMillis(3, 0L));
+        assertEquals(7, row.getInt(4, -1));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testStrictGetterRejectsEmpty() {
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS_WITHOUT_HEADER, new StringReader("1,,3"));
+        parser.nextRow().getLong(1);
+    }
+}
@@ -0,0 +1,153 @@
+package org.sjj.csvstream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CsvTailerTest {
+    private static final TestInput INPUT = new TestInput().withComments().withMixedNewLines();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void append(Path path, byte[] bytes, int from, int to) throws IOException {
+        byte[] piece = new byte[to - from];
+        System.arraycopy(bytes, from, piece, 0, piece.length);
+        Files.write(path, piece, StandardOpenOption.APPEND);
+    }
+
+    private static void drain(CsvTailer tailer, List<String[]> rows) throws IOException {
+        String[] row;
+        while ((row = tailer.poll()) != null) {
+            rows.add(row);
+        }
+    }
+
+    private void assertRows(List<String[]> expected, List<String[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("row " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testFollowAppendedPieces() throws IOException {
+        String input = INPUT.build(500);
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        List<String[]> expected = CsvParser.defaultParser(new StringReader(input)).splitLines()
+                .collect(Collectors.toList());
+
+        // every piece size cuts records, quoted fields and CRLF pairs in different places
+        for (int pieceSize : new int[] { 1, 2, 3, 17, 1000 }) {
+            Path path = folder.newFile("data" + pieceSize + ".csv").toPath();
+            List<String[]> rows = new ArrayList<>();
+            try (CsvTailer tailer = new CsvTailer(CsvConfig.DEFAULTS, path)) {
+                for (int from = 0; from < bytes.length; from += pieceSize) {
+                    append(path, bytes, from, Math.min(bytes.length, from + pieceSize));
+                    drain(tailer, rows);
+                }
+                assertArrayEquals(new String[] { "id", "name", "notes" }, tailer.getHeaderFields());
+                assertEquals(500, tailer.getCheckpoint().getRowNumber());
+            }
+            assertRows(expected, rows);
+        }
+    }
+
+    @Test
+    public void testBufferPoolIsNotDrained() throws IOException {
+        String input = INPUT.build(100);
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        BufferPool pool = new BufferPool();
+        Path path = folder.newFile("data.csv").toPath();
+        List<String[]> rows = new ArrayList<>();
+        try (CsvTailer tailer = new CsvTailer(CsvConfig.DEFAULTS.withBufferPool(pool), path)) {
+            for (int from = 0; from < bytes.length; from += 100) {
+                append(path, bytes, from, Math.min(bytes.length, from + 100));
+                drain(tailer, rows);
+            }
+        }
+        assertEquals(100, rows.size());
+        // every poll's parser gave its row buffer back, so they all shared one
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testHalfWrittenRecordIsNotReturned() throws IOException, InterruptedException {
+        Path path = folder.newFile("data.csv").toPath();
+        try (CsvTailer tailer = new CsvTailer(CsvConfig.DEFAULTS, path)) {
+            Files.write(path, "a,b\n1,2\n3,\"open\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            assertArrayEquals(new String[] { "1", "2" }, tailer.poll());
+            assertNull(tailer.next(10, TimeUnit.MILLISECONDS));
+
+            Files.write(path, "quote\"".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            assertNull(tailer.poll());
+            assertEquals(8, tailer.getCheckpoint().getOffset());
+
+            Files.write(path, "\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            assertArrayEquals(new String[] { "3", "open\nquote" }, tailer.next(1, TimeUnit.SECONDS));
+            assertEquals(2, tailer.getCheckpoint().getRowNumber());
+        }
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws IOException {
+        String input = INPUT.build(300);
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        List<String[]> expected = CsvParser.defaultParser(new StringReader(input)).splitLines()
+                .collect(Collectors.toList());
+        Path path = folder.newFile("data.csv").toPath();
+        Path checkpointPath = folder.getRoot().toPath().resolve("data.checkpoint");
+        assertNull(CsvTailer.Checkpoint.load(checkpointPath));
+
+        List<String[]> rows = new ArrayList<>();
+        int half = bytes.length / 2;
+        try (CsvTailer tailer = new CsvTailer(CsvConfig.DEFAULTS, path)) {
+            append(path, bytes, 0, half);
+            for (int i = 0; i < 100; i++) {
+                rows.add(tailer.poll());
+            }
+            tailer.getCheckpoint().save(checkpointPath);
+        }
+
+        CsvTailer.Checkpoint checkpoint = CsvTailer.Checkpoint.load(checkpointPath);
+        assertEquals(100, checkpoint.getRowNumber());
+        assertArrayEquals(new String[] { "id", "name", "notes" }, checkpoint.getHeader());
+        try (CsvTailer tailer = new CsvTailer(CsvConfig.DEFAULTS, path, checkpoint)) {
+            drain(tailer, rows);
+            append(path, bytes, half, bytes.length);
+            drain(tailer, rows);
+            assertEquals(300, tailer.getCheckpoint().getRowNumber());
+        }
+        assertRows(expected, rows);
+    }
+
+    @Test
+    public void testWithoutHeader() throws IOException {
+        Path path = folder.newFile("data.csv").toPath();
+        CsvConfig config = CsvConfig.DEFAULTS.withHeaderFlag(false);
+        Files.write(path, "1,2\r".getBytes(StandardCharsets.UTF_8));
+        try (CsvTailer tailer = new CsvTailer(config, path)) {
+            assertArrayEquals(new String[] { "1", "2" }, tailer.poll());
+            // the LF of a split CRLF belongs to the record before it
+            Files.write(path, "\n\n3,4\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            assertArrayEquals(new String[] { "3", "4" }, tailer.poll());
+            assertNull(tailer.poll());
+            assertNull(tailer.getHeaderFields());
+        }
+    }
+}
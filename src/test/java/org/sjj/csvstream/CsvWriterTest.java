@@ -0,0 +1,250 @@
+package org.sjj.csvstream;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CsvWriterTest {
+
+    private static class NullWriter extends Writer {
+        long chars;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            chars += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private List<String[]> parse(String csv) {
+        return new CsvParser(CsvConfig.DEFAULTS_WITHOUT_HEADER, new StringReader(csv))
+                .splitLines().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testMatchesFormatter() {
+        String[][] rows = {
+                {"hello", "this", "is a", "test"},
+                {"hello", "this", "is a", "test, okay?"},
+                {"and", "he said \"let there be light\"", "done"}
+        };
+        CsvFormatter formatter = new CsvFormatter();
+        StringWriter out = new StringWriter();
+        try (CsvWriter writer = new CsvWriter(out)) {
+            writer.setNewLineType(NewLineType.LF);
+            for (String[] row : rows) {
+                writer.writeRow(row);
+            }
+        }
+        StringBuilder expected = new StringBuilder();
+        for (String[] row : rows) {
+            expected.append(formatter.format(row)).append('\n');
+        }
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        String[][] rows = {
+                {"#not a comment", "two"},
+                {"line\nbreak", "cr\rlf\r\nend", "\"quoted\""},
+                {"a|b", "", "c"},
+                {"x", "# also quoted"}
+        };
+        StringWriter out = new StringWriter();
+        try (CsvWriter writer = new CsvWriter(out)) {
+            for (String[] row : rows) {
+                writer.writeRow(row);
+            }
+        }
+        List<String[]> actual = parse(out.toString());
+        assertEquals(rows.length, actual.size());
+        for (int i = 0; i < rows.length; i++) {
+            assertArrayEquals(rows[i], actual.get(i));
+        }
+        assertTrue(out.toString().startsWith("\"#not a comment\",two\r\n"));
+        assertTrue(out.toString().endsWith("x,\"# also quoted\"\r\n"));
+    }
+
+    @Test
+    public void testPrimitives() {
+        StringWriter out = new StringWriter();
+        try (CsvWriter writer = new CsvWriter(out)) {
+            writer.setNewLineType(NewLineType.LF);
+            writer.field(42).field(-7L).field(Long.MIN_VALUE).field(true).field(false).endRow();
+            writer.field(1.0).field(-12.5).field(0.1).field(0.0).field(-0.0).field(1234567.125).endRow();
+            writer.field(1e20).field(Double.NaN).field(1.0 / 3).endRow();
+            char[] chars = "xx,yy".toCharArray();
+            writer.field(chars, 1, 3).field(chars, 0, 1).endRow();
+        }
+        assertEquals("42,-7,-9223372036854775808,true,false\n"
+                        + "1.0,-12.5,0.1,0.0,-0.0,1234567.125\n"
+                        + "1.0E20,NaN," + (1.0 / 3) + "\n"
+                        + "\"x,y\",x\n",
+                out.toString());
+    }
+
+    @Test
+    public void testDoublesReadBack() {
+        Random random = new Random(7);
+        StringWriter out = new StringWriter();
+        double[] values = new double[10000];
+        try (CsvWriter writer = new CsvWriter(out)) {
+            for (int i = 0; i < values.length; i++) {
+                switch (i % 3) {
+                    case 0:
+                        values[i] = random.nextInt(1000000) / 100.0;
+                        break;
+                    case 1:
+                        values[i] = random.nextDouble() * 1e6;
+                        break;
+                    default:
+                        values[i] = -random.nextInt(1000) / 1000.0;
+                        break;
+                }
+                writer.field(values[i]).endRow();
+            }
+        }
+        List<String[]> rows = parse(out.toString());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(Double.toString(values[i]), values[i], Double.parseDouble(rows.get(i)[0]), 0.0);
+        }
+    }
+
+    @Test
+    public void testOutputStreamAcrossBufferBoundaries() {
+        // a tiny buffer, so fields and surrogate pairs are split across flushes
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder();
+        try (CsvWriter writer = new CsvWriter(CsvConfig.DEFAULTS, null, bytes, null, StandardCharsets.UTF_8, 5)) {
+            for (int i = 0; i < 200; i++) {
+                String name = "caf\u00e9 \ud83d\ude00 " + i;
+                writer.field(i).field(name).field("a, b").endRow();
+                expected.append(i).append(',').append(name).append(",\"a, b\"\r\n");
+            }
+        }
+        assertEquals(expected.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testByteBuffer() {
+        ByteBuffer target = ByteBuffer.allocate(64);
+        CsvWriter writer = new CsvWriter(target, CsvConfig.DEFAULTS);
+        writer.writeRow("one", "t\u00e9o");
+        writer.flush();
+        target.flip();
+        assertEquals("one,t\u00e9o\r\n", StandardCharsets.UTF_8.decode(target).toString());
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void testByteBufferOverflow() {
+        CsvWriter writer = new CsvWriter(ByteBuffer.allocate(8), CsvConfig.DEFAULTS);
+        writer.writeRow("more than", "eight bytes");
+        writer.close();
+    }
+
+    private Stream<String[]> numberedRows(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new String[]{Integer.toString(i), "name " + i, i % 5 == 0 ? "a, \"b\"" : "c"});
+    }
+
+    @Test
+    public void testWriteAllParallelKeepsOrder() {
+        int count = 100000;
+        StringWriter expected = new StringWriter();
+        assertEquals(count, CsvWriter.writeAll(numberedRows(count), expected, CsvConfig.DEFAULTS));
+
+        StringWriter actual = new StringWriter();
+        assertEquals(count, CsvWriter.writeAll(numberedRows(count).parallel(), actual, CsvConfig.DEFAULTS));
+        assertEquals(expected.toString(), actual.toString());
+
+        // a source of unknown size, split in batches
+        StringWriter fromParser = new StringWriter();
+        Stream<String[]> parsed = new CsvParser(CsvConfig.DEFAULTS_WITHOUT_HEADER, new StringReader(expected.toString()))
+                .splitLines().parallel();
+        assertEquals(count, CsvWriter.writeAll(parsed, fromParser, CsvConfig.DEFAULTS));
+        assertEquals(expected.toString(), fromParser.toString());
+    }
+
+    @Test
+    public void testWriteAllParallelToOutputStream() {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        CsvWriter.writeAll(numberedRows(50000), expected, CsvConfig.DEFAULTS, StandardCharsets.UTF_8);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        CsvWriter.writeAll(numberedRows(50000).parallel(), actual, CsvConfig.DEFAULTS, StandardCharsets.UTF_8);
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    public void testWriteAllParallelWithByteOrderMark() {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        CsvWriter.writeAll(numberedRows(50000), expected, CsvConfig.DEFAULTS, StandardCharsets.UTF_16);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        CsvWriter.writeAll(numberedRows(50000).parallel(), actual, CsvConfig.DEFAULTS, StandardCharsets.UTF_16);
+        // one BOM at the start, not one per block
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWriteAllParallelPropagatesErrors() {
+        Stream<String[]> rows = numberedRows(100000).parallel().peek(row -> {
+            if (row[0].equals("77777")) {
+                throw new IllegalStateException("bad row");
+            }
+        });
+        CsvWriter.writeAll(rows, new NullWriter(), CsvConfig.DEFAULTS);
+    }
+
+    @Test
+    public void testNoAllocationPerRow() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        int rowCount = 200000;
+        StringBuilder name = new StringBuilder("name, quoted");
+        NullWriter sink = new NullWriter();
+        for (int warmup = 0; warmup < 3; warmup++) {
+            CsvWriter writer = new CsvWriter(sink);
+            for (int i = 0; i < rowCount; i++) {
+                writer.field(i).field(name).field("plain").field(i * 0.25).endRow();
+            }
+            writer.close();
+        }
+
+        CsvWriter writer = new CsvWriter(sink);
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < rowCount; i++) {
+            writer.field(i).field(name).field("plain").field(i * 0.25).endRow();
+        }
+        writer.flush();
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("allocated " + allocated + " bytes for " + rowCount + " rows", allocated < rowCount);
+    }
+}
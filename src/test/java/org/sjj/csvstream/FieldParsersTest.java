@@ -0,0 +1,128 @@
+package org.sjj.csvstream;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FieldParsersTest {
+
+    private static long parseLong(String s) {
+        return FieldParsers.parseLong(s.toCharArray(), 0, s.length());
+    }
+
+    private static double parseDouble(String s) {
+        return FieldParsers.parseDouble(s.toCharArray(), 0, s.length());
+    }
+
+    private static long parseEpochMillis(String s) {
+        return FieldParsers.parseEpochMillis(s.toCharArray(), 0, s.length());
+    }
+
+    private static void assertMalformedLong(String s) {
+        try {
+            parseLong(s);
+            fail("expected a NumberFormatException for " + s);
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testParseLong() {
+        assertEquals(0L, parseLong("0"));
+        assertEquals(42L, parseLong("+42"));
+        assertEquals(-17L, parseLong("-17"));
+        assertEquals(Long.MAX_VALUE, parseLong(Long.toString(Long.MAX_VALUE)));
+        assertEquals(Long.MIN_VALUE, parseLong(Long.toString(Long.MIN_VALUE)));
+        assertMalformedLong("");
+        assertMalformedLong("-");
+        assertMalformedLong("12a");
+        assertMalformedLong("9223372036854775808");
+        assertMalformedLong("1.0");
+    }
+
+    @Test
+    public void testParseIntRange() {
+        char[] buf = "x2147483647x".toCharArray();
+        assertEquals(Integer.MAX_VALUE, FieldParsers.parseInt(buf, 1, 10));
+        try {
+            FieldParsers.parseInt("2147483648".toCharArray(), 0, 10);
+            fail("expected overflow");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testParseDoubleMatchesJdk() {
+        String[] samples = { "0", "-0", "1", "3.14", "-2.5e-3", ".5", "5.", "1E10", "0.000123",
+                "123456789012345", "1234567890123456789", "1e300", "4.9e-324", "NaN", "-Infinity", "1.5f" };
+        for (String s : samples) {
+            assertEquals(s, Double.parseDouble(s), parseDouble(s), 0.0);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            String s = Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(20) - 10));
+            assertEquals(s, Double.parseDouble(s), parseDouble(s), 0.0);
+            s = String.format("%.4f", random.nextDouble() * 100000);
+            assertEquals(s, Double.parseDouble(s), parseDouble(s), 0.0);
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseDoubleMalformed() {
+        parseDouble("1,5");
+    }
+
+    @Test
+    public void testParseBoolean() {
+        for (String s : new String[]{ "true", "TRUE", "yes", "Y", "t", "1" }) {
+            assertTrue(s, FieldParsers.parseBoolean(s.toCharArray(), 0, s.length()));
+        }
+        for (String s : new String[]{ "false", "No", "n", "F", "0" }) {
+            assertFalse(s, FieldParsers.parseBoolean(s.toCharArray(), 0, s.length()));
+        }
+    }
+
+    @Test
+    public void testParseEpochMillis() {
+        assertEquals(0L, parseEpochMillis("1970-01-01"));
+        assertEquals(Instant.parse("2016-02-29T13:45:30.123Z").toEpochMilli(),
+                parseEpochMillis("2016-02-29T13:45:30.123Z"));
+        assertEquals(Instant.parse("2016-02-29T13:45:30.120Z").toEpochMilli(),
+                parseEpochMillis("2016-02-29 13:45:30.12"));
+        assertEquals(Instant.parse("1969-07-20T20:17:00Z").toEpochMilli(),
+                parseEpochMillis("1969-07-20 20:17"));
+        assertEquals(OffsetDateTime.parse("2020-06-01T08:00:00+02:00").toInstant().toEpochMilli(),
+                parseEpochMillis("2020-06-01T08:00:00+02:00"));
+        assertEquals(Instant.parse("2020-06-01T08:00:00.999Z").toEpochMilli(),
+                parseEpochMillis("2020-06-01T08:00:00.999999"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseEpochMillisMalformed() {
+        parseEpochMillis("2020/06/01");
+    }
+
+    @Test
+    public void testParseEpochMillisZoneOffsetRange() {
+        assertEquals(OffsetDateTime.parse("2020-06-01T08:00:00-18:00").toInstant().toEpochMilli(),
+                parseEpochMillis("2020-06-01T08:00:00-18:00"));
+        for (String s : new String[] { "2020-06-01T08:00:00+99:99", "2020-06-01T08:00:00+19:00",
+                "2020-06-01T08:00:00-18:01", "2020-06-01T08:00:00+05:60" }) {
+            try {
+                parseEpochMillis(s);
+                fail("expected an IllegalArgumentException for " + s);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
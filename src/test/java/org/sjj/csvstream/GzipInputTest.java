@@ -0,0 +1,189 @@
+package org.sjj.csvstream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class GzipInputTest {
+    private static final TestInput INPUT = new TestInput().withName("n\u00e4me");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes data as BGZF blocks of at most blockData bytes, followed by the
+     * empty end of file block.
+     */
+    private static byte[] bgzf(byte[] data, int blockData) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int from = 0; from <= data.length; from += blockData) {
+            int length = Math.min(blockData, data.length - from);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(data, from, length);
+            deflater.finish();
+            byte[] compressed = new byte[length + 1024];
+            int size = deflater.deflate(compressed);
+            deflater.end();
+            CRC32 crc = new CRC32();
+            crc.update(data, from, length);
+
+            ByteBuffer block = ByteBuffer.allocate(18 + size + 8).order(ByteOrder.LITTLE_ENDIAN);
+            block.put(new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff });
+            block.putShort((short) 6).put((byte) 'B').put((byte) 'C').putShort((short) 2);
+            block.putShort((short) (block.capacity() - 1));
+            block.put(compressed, 0, size);
+            block.putInt((int) crc.getValue()).putInt(length);
+            out.write(block.array(), 0, block.capacity());
+            if (length == 0) {
+                break;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private Path write(String name, byte[] bytes) throws IOException {
+        Path path = folder.getRoot().toPath().resolve(name);
+        Files.write(path, bytes);
+        return path;
+    }
+
+    private static List<String[]> serial(String input) {
+        return CsvParser.defaultParser(new StringReader(input)).splitLines().collect(Collectors.toList());
+    }
+
+    private static void assertRows(List<String[]> expected, CsvParser parser) {
+        List<String[]> actual = parser.splitLines().collect(Collectors.toList());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("row " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testPlainGzip() throws IOException {
+        String input = INPUT.build(20000);
+        Path path = write("data.csv.gz", gzip(input.getBytes(StandardCharsets.UTF_8)));
+        CsvParser parser = CsvParser.openGzip(CsvConfig.DEFAULTS, path);
+        assertArrayEquals(new String[] { "id", "name", "notes" }, parser.getHeaderFields());
+        assertRows(serial(input), parser);
+    }
+
+    @Test
+    public void testMultiMemberGzip() throws IOException {
+        String input = INPUT.build(5000);
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        // members cut in the middle of records, quoted fields and UTF-8 sequences
+        int[] cuts = { 0, 1, 1000, 1001, 77777, bytes.length };
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        for (int i = 0; i + 1 < cuts.length; i++) {
+            members.write(gzip(Arrays.copyOfRange(bytes, cuts[i], cuts[i + 1])));
+        }
+        Path path = write("data.csv.gz", members.toByteArray());
+        assertRows(serial(input), CsvParser.openGzip(CsvConfig.DEFAULTS, path));
+    }
+
+    @Test
+    public void testBgzf() throws IOException {
+        String input = INPUT.build(20000);
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int blockData : new int[] { 1, 333, 65280 }) {
+                byte[] data = blockData == 1 ? Arrays.copyOf(bytes, 2000) : bytes;
+                Path path = write("data" + blockData + ".csv.gz", bgzf(data, blockData));
+                assertRows(serial(new String(data, StandardCharsets.UTF_8)),
+                        CsvParser.openGzip(CsvConfig.DEFAULTS, path, executor));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBgzfReadableAsGzip() throws IOException {
+        // BGZF is valid multi-member gzip, so the BGZF writer is checked against the JDK
+        String input = INPUT.build(3000);
+        byte[] bytes = bgzf(input.getBytes(StandardCharsets.UTF_8), 4096);
+        assertRows(serial(input), new CsvParser(CsvConfig.DEFAULTS, new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        CsvParser parser = CsvParser.openGzip(CsvConfig.DEFAULTS_WITHOUT_HEADER, write("empty.csv.gz", gzip(new byte[0])));
+        assertFalse(parser.splitLines().findAny().isPresent());
+        parser = CsvParser.openGzip(CsvConfig.DEFAULTS_WITHOUT_HEADER, write("empty.bgzf.gz", bgzf(new byte[0], 100)));
+        assertFalse(parser.splitLines().findAny().isPresent());
+    }
+
+    @Test
+    public void testNotGzip() throws IOException {
+        try {
+            CsvParser.openGzip(CsvConfig.DEFAULTS, write("data.csv", "a,b\n1,2\n".getBytes(StandardCharsets.UTF_8)));
+            fail();
+        } catch (ZipException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCorruptBgzfBlock() throws IOException {
+        byte[] bytes = bgzf(INPUT.build(3000).getBytes(StandardCharsets.UTF_8), 4096);
+        bytes[bytes.length / 2] ^= 0x55;
+        CsvParser parser = CsvParser.openGzip(CsvConfig.DEFAULTS, write("corrupt.csv.gz", bytes));
+        try {
+            parser.splitLines().count();
+            fail();
+        } catch (UncheckedIOException e) {
+            assertEquals(ZipException.class, e.getCause().getClass());
+        }
+    }
+
+    @Test
+    public void testTruncatedGzip() throws IOException {
+        byte[] bytes = gzip(INPUT.build(3000).getBytes(StandardCharsets.UTF_8));
+        Path path = write("truncated.csv.gz", Arrays.copyOf(bytes, bytes.length / 2));
+        try {
+            CsvParser.openGzip(CsvConfig.DEFAULTS, path).splitLines().count();
+            fail();
+        } catch (IOException | UncheckedIOException e) {
+            // expected, either while reading the header or later
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.sjj.csvstream;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LineSplitterTest {
+    private static final List<String> LINES = Arrays.asList(
+            "a,b,c",
+            "  padded , fields  ,x",
+            "\"quoted, with comma\",\"with \"\"quotes\"\"\",plain",
+            "\"unterminated, quote",
+            "trailing,",
+            ",leading",
+            "#not a comment,here",
+            "n\u00e4me,\u65e5\u672c,\ud83d\ude00",
+            "one",
+            "first\r\nsecond",
+            "\"multi\nline\",end",
+            "illegal\"quote,x\"y\"");
+
+    /**
+     * The old per line path, through a Reader.
+     */
+    private static String[] readerSplit(CsvConfig config, String line) {
+        return new CsvParser(config, new StringReader(line)).split();
+    }
+
+    @Test
+    public void testSameAsParser() {
+        LineSplitter splitter = new LineSplitter();
+        CsvConfig config = LineSplitter.lineConfig(',');
+        for (String line : LINES) {
+            assertArrayEquals(line, readerSplit(config, line), splitter.split(line));
+            assertArrayEquals(line, readerSplit(config, line), CsvParser.split(line));
+        }
+    }
+
+    @Test
+    public void testDelimiterAndConfig() {
+        LineSplitter tabs = new LineSplitter('\t');
+        assertArrayEquals(new String[] { "a,b", "c" }, tabs.split("a,b\tc"));
+        assertArrayEquals(new String[] { "a,b", "c" }, CsvParser.split("a,b\tc", '\t'));
+
+        LineSplitter comments = new LineSplitter(CsvConfig.DEFAULTS);
+        assertArrayEquals(readerSplit(CsvConfig.DEFAULTS_WITHOUT_HEADER, "1,#x"), comments.split("1,#x"));
+        assertArrayEquals(new String[] { "1", "2" }, comments.split("1,2"));
+    }
+
+    @Test
+    public void testEmptyLine() {
+        LineSplitter splitter = new LineSplitter();
+        assertNull(splitter.split(""));
+        assertNull(CsvParser.split(""));
+        assertArrayEquals(new String[] { "x" }, splitter.split("x"));
+    }
+
+    @Test
+    public void testSplitRowAndCharSequence() {
+        LineSplitter splitter = new LineSplitter();
+        CsvRow row = splitter.splitRow(new StringBuilder("1,\"two\",3.5"));
+        assertEquals(3, row.size());
+        assertEquals(1, row.getInt(0));
+        assertEquals("two", row.getString(1));
+        assertEquals(3.5, row.getDouble(2), 0);
+    }
+
+    @Test
+    public void testSplitAll() {
+        LineSplitter splitter = new LineSplitter();
+        List<String[]> rows = splitter.splitAll(LINES);
+        assertEquals(LINES.size(), rows.size());
+        for (int i = 0; i < LINES.size(); i++) {
+            assertArrayEquals(CsvParser.split(LINES.get(i)), rows.get(i));
+        }
+    }
+}
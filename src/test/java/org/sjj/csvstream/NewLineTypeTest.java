@@ -0,0 +1,158 @@
+package org.sjj.csvstream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NewLineTypeTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String[]> parseAll(CsvParser parser) {
+        List<String[]> rows = new ArrayList<>();
+        String[] row;
+        while ((row = parser.split()) != null) {
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static List<String[]> parse(CsvConfig config, String input) {
+        return parseAll(new CsvParser(config, new StringReader(input)));
+    }
+
+    private static List<String[]> parseBytes(CsvConfig config, String input) {
+        return parseAll(new CsvParser(config, ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private static void assertSameRows(List<String[]> expected, List<String[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("row " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    /**
+     * Random rows with LF line endings and no blank lines, on which the strict
+     * and lenient parsers must agree.
+     */
+    private static String randomInput(Random random, boolean quotes, boolean comments) {
+        String chars = quotes ? "ab, \"\u00e9\u20ac\n\r12345678901234567890" : "ab \u00e9\u20ac1234567890123456789";
+        StringBuilder sb = new StringBuilder("id,name,notes\n");
+        for (int r = 0; r < 300; r++) {
+            if (comments && random.nextInt(10) == 0) {
+                sb.append("# a comment\n");
+            }
+            sb.append(r);
+            for (int c = 0; c < 2; c++) {
+                sb.append(',');
+                int length = random.nextInt(30);
+                StringBuilder field = new StringBuilder();
+                for (int i = 0; i < length; i++) {
+                    field.append(chars.charAt(random.nextInt(chars.length())));
+                }
+                if (quotes && random.nextBoolean()) {
+                    sb.append('"').append(field.toString().replace("\"", "\"\"")).append('"');
+                } else {
+                    sb.append(field.toString().replaceAll("[,\"\r\n]", "x"));
+                }
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testStrictMatchesLenientOnPlainLfInput() {
+        Random random = new Random(42);
+        for (int combination = 0; combination < 4; combination++) {
+            boolean quotes = (combination & 1) != 0;
+            boolean comments = (combination & 2) != 0;
+            String input = randomInput(random, quotes, comments);
+            CsvConfig strict = CsvConfig.DEFAULTS.withNewLineType(NewLineType.LF)
+                    .withQuotesEnabled(quotes).withCommentsEnabled(comments);
+            List<String[]> expected = parse(CsvConfig.DEFAULTS, input);
+            assertSameRows(expected, parse(strict, input));
+            assertSameRows(expected, parseBytes(strict, input));
+
+            CsvConfig projected = CsvConfig.DEFAULTS.withProjection(2, 0);
+            assertSameRows(parse(projected, input), parse(strict.withProjection(2, 0), input));
+            assertSameRows(parse(projected, input), parseBytes(strict.withProjection(2, 0), input));
+        }
+    }
+
+    @Test
+    public void testOnlyTheConfiguredLineEndingEndsARecord() {
+        String input = "a,b\r\nc\rd,e\nf\r\n\r\n\"g\r\nh\",i\r\n";
+        CsvConfig crlf = CsvConfig.DEFAULTS_WITHOUT_HEADER.withNewLineType(NewLineType.CRLF);
+        List<String[]> rows = parse(crlf, input);
+        assertEquals(4, rows.size());
+        assertArrayEquals(new String[]{"a", "b"}, rows.get(0));
+        assertArrayEquals(new String[]{"c\rd", "e\nf"}, rows.get(1));
+        assertArrayEquals(new String[]{""}, rows.get(2));
+        assertArrayEquals(new String[]{"g\r\nh", "i"}, rows.get(3));
+        assertSameRows(rows, parseBytes(crlf, input));
+
+        CsvConfig cr = CsvConfig.DEFAULTS_WITHOUT_HEADER.withNewLineType(NewLineType.CR).withQuotesEnabled(false)
+                .withCommentsEnabled(false);
+        rows = parse(cr, "a,\"b\rc\nd\r");
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[]{"a", "\"b"}, rows.get(0));
+        assertArrayEquals(new String[]{"c\nd"}, rows.get(1));
+
+        CsvConfig lfcr = CsvConfig.DEFAULTS_WITHOUT_HEADER.withNewLineType(NewLineType.LFCR);
+        rows = parse(lfcr, "a\n\rb\nc\n\r");
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[]{"b\nc"}, rows.get(1));
+    }
+
+    @Test
+    public void testStrictLfTrimsCarriageReturns() {
+        CsvConfig lf = CsvConfig.DEFAULTS.withNewLineType(NewLineType.LF).withQuotesEnabled(false);
+        CsvParser parser = new CsvParser(lf, new StringReader("x,y\r\n1,2\r\n\n3,4\r\n"));
+        assertArrayEquals(new String[]{"x", "y"}, parser.getHeaderFields());
+        assertArrayEquals(new String[]{"1", "2"}, parser.split());
+        assertArrayEquals(new String[]{""}, parser.split());
+        assertArrayEquals(new String[]{"3", "4"}, parser.split());
+        assertNull(parser.split());
+    }
+
+    @Test
+    public void testQuotesDisabled() {
+        CsvConfig config = CsvConfig.DEFAULTS_WITHOUT_HEADER.withQuotesEnabled(false);
+        List<String[]> rows = parse(config, "\"a,b\"\n\"c\"\n");
+        assertArrayEquals(new String[]{"\"a", "b\""}, rows.get(0));
+        assertArrayEquals(new String[]{"\"c\""}, rows.get(1));
+    }
+
+    @Test
+    public void testIndexFollowsLineEnding() throws IOException {
+        StringBuilder sb = new StringBuilder("id,text\r\n");
+        for (int i = 0; i < 500; i++) {
+            sb.append(i).append(",line\rwith\nbreaks ").append(i).append("\r\n");
+        }
+        Path path = folder.newFile("crlf.csv").toPath();
+        Files.write(path, sb.toString().getBytes(StandardCharsets.UTF_8));
+        CsvConfig config = CsvConfig.DEFAULTS.withNewLineType(NewLineType.CRLF);
+        CsvIndex index = CsvIndex.build(config, path, 7, 256);
+        assertEquals(500, index.getRowCount());
+        assertArrayEquals(new String[]{"321", "line\rwith\nbreaks 321"}, index.openAt(321).split());
+        index.save();
+        assertNull(CsvIndex.load(CsvConfig.DEFAULTS, path));
+        assertEquals(500, CsvIndex.load(config, path).getRowCount());
+    }
+}
@@ -0,0 +1,89 @@
+package org.sjj.csvstream;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RowMapTest {
+
+    /**
+     * What mappify() used to build for every row.
+     */
+    private static Map<String, String> linkedMap(String[] header, String[] values) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < header.length && i < values.length; i++) {
+            map.put(header[i], values[i]);
+        }
+        return map;
+    }
+
+    private static void assertSameMap(Map<String, String> expected, Map<String, String> actual) {
+        assertEquals(expected, actual);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+        assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(actual.values()));
+        for (String key : expected.keySet()) {
+            assertTrue(actual.containsKey(key));
+            assertEquals(expected.get(key), actual.get(key));
+        }
+    }
+
+    @Test
+    public void testMatchesLinkedHashMap() {
+        String[][] headers = {
+                {"name", "age", "phone"},
+                {"a", "b", "a", "c", "a"},
+                {"x", "x"},
+                {}
+        };
+        String[][] rows = {
+                {}, {"1"}, {"1", "2"}, {"1", "2", "3"}, {"1", "2", "3", "4"}, {"1", "2", "3", "4", "5", "6"}
+        };
+        for (String[] header : headers) {
+            RowMap.Header shared = new RowMap.Header(header);
+            for (String[] values : rows) {
+                assertSameMap(linkedMap(header, values), new RowMap(shared, values));
+            }
+        }
+    }
+
+    @Test
+    public void testMissingKeys() {
+        RowMap.Header header = new RowMap.Header(new String[]{"name", "age", "phone"});
+        Map<String, String> map = new RowMap(header, new String[]{"Colin", "42"});
+        assertEquals(2, map.size());
+        assertFalse(map.containsKey("phone"));
+        assertNull(map.get("phone"));
+        assertNull(map.get("nope"));
+        assertNull(map.get(null));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() {
+        RowMap.Header header = new RowMap.Header(new String[]{"name"});
+        new RowMap(header, new String[]{"Steve"}).put("name", "Jim");
+    }
+
+    @Test
+    public void testMappify() {
+        String input = "name,age,phone,age\nSteve,40,555,41\nColin,42\n\"Jim, Jr\",43,999";
+        String[] header = {"name", "age", "phone", "age"};
+        List<Map<String, String>> actual = CsvParser.defaultParser(new StringReader(input)).mappify()
+                .collect(Collectors.toList());
+        assertEquals(3, actual.size());
+        assertSameMap(linkedMap(header, new String[]{"Steve", "40", "555", "41"}), actual.get(0));
+        assertSameMap(linkedMap(header, new String[]{"Colin", "42"}), actual.get(1));
+        assertSameMap(linkedMap(header, new String[]{"Jim, Jr", "43", "999"}), actual.get(2));
+    }
+}
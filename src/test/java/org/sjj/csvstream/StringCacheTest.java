@@ -0,0 +1,114 @@
+package org.sjj.csvstream;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StringCacheTest {
+
+    private String buildInput(int rows) {
+        String[] countries = {"US", "GB", "FR", "DE", "JP"};
+        StringBuilder sb = new StringBuilder("id,country,status\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append(i).append(',').append(countries[i % countries.length]).append(',')
+                    .append(i % 3 == 0 ? "\"open, pending\"" : "closed").append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testHitsReturnSameInstance() {
+        StringCache cache = new StringCache(16);
+        char[] buf = "xxUSxxUS".toCharArray();
+        String first = cache.get(buf, 2, 2);
+        String second = cache.get(buf, 6, 2);
+        assertEquals("US", first);
+        assertSame(first, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 0.0);
+    }
+
+    @Test
+    public void testLongValuesAreNotCached() {
+        StringCache cache = new StringCache(16);
+        char[] buf = new char[StringCache.MAX_LENGTH + 1];
+        assertNotSame(cache.get(buf, 0, buf.length), cache.get(buf, 0, buf.length));
+        assertEquals(0, cache.getHits() + cache.getMisses());
+    }
+
+    @Test
+    public void testFullCacheKeepsWorking() {
+        StringCache cache = new StringCache(4);
+        for (int i = 0; i < 1000; i++) {
+            char[] value = Integer.toString(i % 50).toCharArray();
+            assertEquals(new String(value), cache.get(value, 0, value.length));
+        }
+    }
+
+    @Test
+    public void testHighCardinalityDisables() {
+        StringCache cache = new StringCache(64);
+        for (int i = 0; i < StringCache.WINDOW; i++) {
+            char[] value = Integer.toString(i).toCharArray();
+            cache.get(value, 0, value.length);
+        }
+        assertFalse(cache.isEnabled());
+        char[] value = "1".toCharArray();
+        assertNotSame(cache.get(value, 0, 1), cache.get(value, 0, 1));
+    }
+
+    @Test
+    public void testParserColumns() {
+        String input = buildInput(20000);
+        List<String[]> expected = CsvParser.defaultParser(new StringReader(input)).splitLines()
+                .collect(Collectors.toList());
+
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS.withStringCache(64, 1, 2), new StringReader(input));
+        List<String[]> actual = parser.splitLines().collect(Collectors.toList());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+        assertSame(actual.get(0)[1], actual.get(5)[1]);
+        assertSame(actual.get(0)[2], actual.get(3)[2]);
+        assertNotSame(actual.get(0)[0], actual.get(5)[0]);
+
+        assertNull(parser.getStringCache(0));
+        StringCache country = parser.getStringCache(1);
+        assertTrue(country.isEnabled());
+        assertEquals(5, country.getMisses());
+        assertTrue(country.getHitRate() > 0.99);
+    }
+
+    @Test
+    public void testAllColumnsDropsUniqueColumn() {
+        String input = buildInput(20000);
+        CsvParser parser = new CsvParser(CsvConfig.DEFAULTS.withStringCache(64), new StringReader(input));
+        assertEquals(20000, parser.splitLines().count());
+        assertFalse(parser.getStringCache(0).isEnabled());
+        assertTrue(parser.getStringCache(1).isEnabled());
+        assertTrue(parser.getStringCache(2).isEnabled());
+        assertNull(parser.getStringCache(3));
+    }
+
+    @Test
+    public void testProjectedColumns() {
+        String input = buildInput(100);
+        CsvConfig config = CsvConfig.DEFAULTS.withProjection("country", "id").withStringCache(64, 0);
+        List<String[]> rows = new CsvParser(config, new StringReader(input)).splitLines()
+                .collect(Collectors.toList());
+        assertArrayEquals(new String[]{"US", "0"}, rows.get(0));
+        assertSame(rows.get(0)[0], rows.get(5)[0]);
+    }
+}
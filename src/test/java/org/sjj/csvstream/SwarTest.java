@@ -0,0 +1,85 @@
+package org.sjj.csvstream;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SwarTest {
+
+    private static int naiveIndexOf(ByteBuffer buffer, int from, int limit, int b1, int b2, int b3) {
+        for (int i = from; i < limit; i++) {
+            int b = buffer.get(i) & 0xff;
+            if (b == b1 || b == b2 || b == b3) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    @Test
+    public void testMatchesIsExact() {
+        long word = 0x2c0a0d2c80ff2b2dL;
+        assertEquals(0x8000008000000000L, Swar.matches(word, Swar.pattern(',')));
+        assertEquals(0x0000000000800000L, Swar.matches(word, Swar.pattern(0xff)));
+        assertEquals(0L, Swar.matches(word, Swar.pattern('"')));
+    }
+
+    @Test
+    public void testIndexOfAnyMatchesNaiveScan() {
+        Random random = new Random(42);
+        byte[] alphabet = "abc,\"\r\n\u00e9".getBytes(StandardCharsets.UTF_8);
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            for (int n = 0; n < 2000; n++) {
+                byte[] bytes = new byte[random.nextInt(40)];
+                for (int i = 0; i < bytes.length; i++) {
+                    // mostly plain bytes, so that runs span several words
+                    bytes[i] = random.nextInt(8) == 0 ? alphabet[random.nextInt(alphabet.length)] : (byte) 'x';
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(bytes).order(order);
+                int from = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+                assertEquals(naiveIndexOf(buffer, from, bytes.length, ',', '\r', '\n'),
+                        Swar.indexOfAny(buffer, from, bytes.length,
+                                Swar.pattern(','), Swar.pattern('\r'), Swar.pattern('\n')));
+                assertEquals(naiveIndexOf(buffer, from, bytes.length, '"', '"', '"'),
+                        Swar.indexOfAny(buffer, from, bytes.length,
+                                Swar.pattern('"'), Swar.pattern('"'), Swar.pattern('"')));
+            }
+        }
+    }
+
+    @Test
+    public void testLongFieldsAcrossBuffers() {
+        StringBuilder sb = new StringBuilder("a,b,c\n");
+        for (int i = 0; i < 500; i++) {
+            sb.append("field number ").append(i).append(" with some padding,");
+            sb.append("\"quoted, with \"\"quotes\"\" and\nnewline ").append(i).append("\",");
+            sb.append("caf\u00e9 ").append(i).append("\r\n");
+        }
+        String input = sb.toString();
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+
+        // split the input over several small buffers, so runs stop at buffer ends
+        int window = 1000;
+        ByteBuffer[] buffers = new ByteBuffer[(bytes.length + window - 1) / window];
+        for (int i = 0; i < buffers.length; i++) {
+            int start = i * window;
+            buffers[i] = ByteBuffer.wrap(bytes, start, Math.min(window, bytes.length - start)).slice();
+        }
+
+        CsvParser expected = new CsvParser(CsvConfig.DEFAULTS, new StringReader(input));
+        CsvParser actual = new CsvParser(CsvConfig.DEFAULTS, new ByteBufferIterator(buffers), null);
+        String[] row;
+        while ((row = expected.split()) != null) {
+            assertArrayEquals(row, actual.split());
+        }
+        assertNull(actual.split());
+    }
+}
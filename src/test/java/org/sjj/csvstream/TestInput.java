@@ -0,0 +1,97 @@
+package org.sjj.csvstream;
+
+/**
+ * Generated CSV input for the tests that cut, index, tail or compress files.
+ * Every row is id,name,notes, and every 7th name is a quoted field with
+ * embedded newlines, delimiters and escaped quotes.
+ *
+ * E.g.
+ *    String input = new TestInput().withComments().withMixedNewLines().build(500);
+ */
+final class TestInput {
+    // Private bits - Mutable state
+    private boolean               comments;
+    private boolean               mixedNewLines;
+    private String                name = "name";
+
+    /**
+     * Adds a comment line before the header, and after every 11th row.
+     */
+    TestInput withComments() {
+        comments = true;
+        return this;
+    }
+
+    /**
+     * Ends every 5th row with LF instead of CRLF.
+     */
+    TestInput withMixedNewLines() {
+        mixedNewLines = true;
+        return this;
+    }
+
+    /**
+     * The prefix of the unquoted names, e.g. one with non-ASCII chars.
+     */
+    TestInput withName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    String build(int rows) {
+        StringBuilder sb = new StringBuilder(comments ? "# generated\nid,name,notes\r\n" : "id,name,notes\r\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append(i).append(',');
+            if (i % 7 == 0) {
+                sb.append("\"line one,\nline \"\"two\"\"\r\nline three\"");
+            } else {
+                sb.append(name).append(i);
+            }
+            sb.append(",note ").append(i % 13).append(mixedNewLines && i % 5 == 0 ? "\n" : "\r\n");
+            if (comments && i % 11 == 0) {
+                sb.append("# a comment between rows\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds data rows where the middle of the data falls just after the #
+     * of a comment line holding a quote, followed by a quoted field with a
+     * newline in it, i.e. where a split or an index chunk is cut.
+     */
+    static String quoteInCommentAtMiddle(String header) {
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            prefix.append(i).append(",x\n");
+        }
+        String rest = "#abc,\"def\n20,\"\nb\"\n";
+        int suffix = prefix.length() + 2 - rest.length();
+        StringBuilder sb = new StringBuilder(header).append(prefix).append(rest).append("99,");
+        for (int i = 3; i < suffix; i++) {
+            sb.append('y');
+        }
+        return sb.append('\n').toString();
+    }
+
+    /**
+     * Builds data rows with a quoted field in the middle that is longer than
+     * the look-ahead window used to find a record boundary, and whose lines
+     * look like records, so that a cut in the middle falls inside quotes.
+     */
+    static String longQuotedFieldAtMiddle(String header) {
+        StringBuilder sb = new StringBuilder(header);
+        for (int i = 0; i < 100; i++) {
+            sb.append(i).append(",x\n");
+        }
+        sb.append("100,\"");
+        for (int i = 0; i < 30000; i++) {
+            sb.append("a,b,c\n");
+        }
+        sb.append("\"\n");
+        for (int i = 101; i < 200; i++) {
+            sb.append(i).append(",x\n");
+        }
+        return sb.toString();
+    }
+}